@@ -0,0 +1,331 @@
+package org.ut.biolab.savant.analytics.analyticsreporter;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of the usage events, kept so that each run only has to download the
+ * events logged since the previous one.  The raw events are kept in an append-only
+ * file; when loaded, they're split into one column per key, with each column's
+ * values dictionary-encoded.  Each dictionary value also keeps the list of rows
+ * in which it appears, so that reports can look up events by value.
+ *
+ * The columns are saved to a snapshot file after each download, so that a run only
+ * has to parse the event text which was appended since the snapshot was taken.
+ *
+ * @author mfiume
+ */
+class EventStore {
+
+    private static final String EVENTS_FILE = "events.txt";
+    private static final String SNAPSHOT_FILE = "columns.bin";
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final File eventsFile;
+    private final File snapshotFile;
+
+    /** Server-side id of each event.  Batched events share the id of their batch. */
+    private int[] ids = new int[1024];
+    private int size;
+    private int lastID;
+
+    private final Map<String, Column> columns = new HashMap<String, Column>();
+
+    /** Length of the events file covered by the snapshot. */
+    private long snapshotOffset;
+
+    private Writer writer;
+
+    EventStore(File dir) throws IOException {
+        dir.mkdirs();
+        eventsFile = new File(dir, EVENTS_FILE);
+        snapshotFile = new File(dir, SNAPSHOT_FILE);
+        load();
+    }
+
+    private void load() throws IOException {
+        long offset = 0;
+        if (snapshotFile.exists()) {
+            try {
+                offset = loadSnapshot();
+            } catch (IOException x) {
+                System.err.println("Unable to read " + snapshotFile + "; re-reading events: " + x);
+                offset = 0;
+            }
+            if (offset > eventsFile.length()) {
+                System.err.println(snapshotFile + " is newer than " + eventsFile + "; re-reading events.");
+                offset = 0;
+            }
+            if (offset == 0) {
+                clear();
+            }
+        }
+        snapshotOffset = offset;
+        if (eventsFile.exists() && offset < eventsFile.length()) {
+            InputStream input = new FileInputStream(eventsFile);
+            try {
+                long skipped = 0;
+                while (skipped < offset) {
+                    skipped += input.skip(offset - skipped);
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        addEvent(Integer.parseInt(line.substring(0, tab)), line.substring(tab + 1));
+                    }
+                }
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    private void clear() {
+        ids = new int[1024];
+        size = 0;
+        lastID = 0;
+        columns.clear();
+    }
+
+    /**
+     * Add an event to the store, recording it in the events file.  Must be bracketed
+     * by calls to <code>beginAppend</code> and <code>endAppend</code>.
+     */
+    void append(int id, String eventText) throws IOException {
+        eventText = eventText.replace('\n', ' ').replace('\t', ' ');
+        writer.write(id + "\t" + eventText + "\n");
+        addEvent(id, eventText);
+    }
+
+    void beginAppend() throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(eventsFile, true), "UTF-8"));
+    }
+
+    /**
+     * Close the events file, and snapshot the columns so that the next run doesn't have
+     * to parse the events again.
+     */
+    void endAppend() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (eventsFile.length() != snapshotOffset) {
+            try {
+                saveSnapshot();
+            } catch (IOException x) {
+                // Not fatal; the next run will just have to parse more of the events file.
+                System.err.println("Unable to write " + snapshotFile + ": " + x);
+            }
+        }
+    }
+
+    private void addEvent(int id, String eventText) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int row = size++;
+        ids[row] = id;
+        lastID = Math.max(lastID, id);
+        for (Map.Entry<String, String> kvp: SavantEvent.parseKeyValueMapFromEventText(eventText).entrySet()) {
+            getColumn(kvp.getKey()).add(row, kvp.getValue());
+        }
+    }
+
+    private Column getColumn(String key) {
+        Column col = columns.get(key);
+        if (col == null) {
+            col = new Column();
+            columns.put(key, col);
+        }
+        return col;
+    }
+
+    /**
+     * Number of events in the store.  Events are identified by row numbers from 0 to size() - 1,
+     * in the order in which they were logged.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Id of the most recent event downloaded from the server.
+     */
+    int getLastID() {
+        return lastID;
+    }
+
+    /**
+     * @return the value for the given key, or null if the event doesn't have that key
+     */
+    String getValue(int row, String key) {
+        Column col = columns.get(key);
+        return col != null ? col.get(row) : null;
+    }
+
+    /**
+     * Get the rows of all events having the given value for the given key, in increasing order.
+     */
+    int[] getRows(String key, String value) {
+        Column col = columns.get(key);
+        if (col == null) {
+            return new int[0];
+        }
+        Integer valueID = col.dictionaryIndex.get(value);
+        if (valueID == null) {
+            return new int[0];
+        }
+        return Arrays.copyOf(col.postings[valueID], col.postingCounts[valueID]);
+    }
+
+    /**
+     * Write the columns to the snapshot file, along with the length of the events file which they cover.
+     */
+    private void saveSnapshot() throws IOException {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(eventsFile.length());
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(ids[i]);
+            }
+            out.writeInt(columns.size());
+            for (Map.Entry<String, Column> e: columns.entrySet()) {
+                out.writeUTF(e.getKey());
+                Column col = e.getValue();
+                out.writeInt(col.dictionary.size());
+                for (String v: col.dictionary) {
+                    writeString(out, v);
+                }
+                out.writeInt(col.count);
+                for (int i = 0; i < col.count; i++) {
+                    out.writeInt(col.rows[i]);
+                    out.writeInt(col.values[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        snapshotFile.delete();
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Unable to rename " + tmp + " to " + snapshotFile);
+        }
+        snapshotOffset = eventsFile.length();
+    }
+
+    /**
+     * Load the columns from the snapshot file.
+     *
+     * @return the length of the events file covered by the snapshot
+     */
+    private long loadSnapshot() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+        try {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return 0;
+            }
+            long offset = in.readLong();
+            size = in.readInt();
+            ids = new int[Math.max(size, 1024)];
+            for (int i = 0; i < size; i++) {
+                ids[i] = in.readInt();
+                lastID = Math.max(lastID, ids[i]);
+            }
+            int numColumns = in.readInt();
+            for (int c = 0; c < numColumns; c++) {
+                Column col = getColumn(in.readUTF());
+                int dictSize = in.readInt();
+                for (int i = 0; i < dictSize; i++) {
+                    col.addValue(readString(in));
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int row = in.readInt();
+                    col.add(row, in.readInt());
+                }
+            }
+            return offset;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Values can exceed the 64K limit of <code>writeUTF</code>, so we write them as length-prefixed UTF-8.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Values for a single key.  Stored sparsely, as parallel arrays of row numbers and
+     * dictionary ids, since many keys appear in only a few events.  For each dictionary
+     * id, <code>postings</code> lists the rows having that value.
+     */
+    private static class Column {
+        int[] rows = new int[16];
+        int[] values = new int[16];
+        int count;
+        final List<String> dictionary = new ArrayList<String>();
+        final Map<String, Integer> dictionaryIndex = new HashMap<String, Integer>();
+        int[][] postings = new int[16][];
+        int[] postingCounts = new int[16];
+
+        void add(int row, String value) {
+            Integer valueID = dictionaryIndex.get(value);
+            add(row, valueID != null ? valueID : addValue(value));
+        }
+
+        int addValue(String value) {
+            int valueID = dictionary.size();
+            dictionary.add(value);
+            dictionaryIndex.put(value, valueID);
+            if (valueID == postings.length) {
+                postings = Arrays.copyOf(postings, valueID * 2);
+                postingCounts = Arrays.copyOf(postingCounts, valueID * 2);
+            }
+            postings[valueID] = new int[4];
+            return valueID;
+        }
+
+        void add(int row, int valueID) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            rows[count] = row;
+            values[count] = valueID;
+            count++;
+
+            int n = postingCounts[valueID];
+            if (n == postings[valueID].length) {
+                postings[valueID] = Arrays.copyOf(postings[valueID], n * 2);
+            }
+            postings[valueID][n] = row;
+            postingCounts[valueID] = n + 1;
+        }
+
+        String get(int row) {
+            // Rows are added in increasing order, so we can binary search.
+            int i = Arrays.binarySearch(rows, 0, count, row);
+            return i >= 0 ? dictionary.get(values[i]) : null;
+        }
+    }
+}
@@ -3,6 +3,10 @@
 import java.util.ArrayList;
 
 /**
+ * A report is computed in a single pass over the event store.  The suite calls
+ * <code>start</code>, then <code>processEvent</code> for each event in the order
+ * in which they were logged, then <code>finish</code>.  Reports which only care
+ * about a few kinds of event can instead look them up by value in <code>start</code>.
  *
  * @author mfiume
  */
@@ -15,7 +19,16 @@ public Report(String name) {
         logs = new ArrayList<ReportLog>();
     }
 
-    abstract void runReport();
+    String getName() {
+        return name;
+    }
+
+    void start(EventStore store) {
+    }
+
+    abstract void processEvent(EventStore store, int row);
+
+    abstract void finish();
 
     void addErrorLog(String msg) {
         logs.add(new ReportLog(ReportLog.Type.ERROR,msg));
@@ -1,7 +1,8 @@
 package org.ut.biolab.savant.analytics.analyticsreporter;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
 
 /**
  *
@@ -24,12 +25,57 @@ private void initReports() {
     }
 
     public void runReports() {
+        EventStore store;
+        try {
+            store = new EventStore(getStoreDirectory());
+            SavantEvents.downloadNewEvents(store);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
         System.out.println("Running " + reports.size() + " reports");
+        for (Report r : reports) {
+            r.start(store);
+        }
+
+        // All reports share a single pass over the events.
+        int n = store.size();
+        for (int row = 0; row < n; row++) {
+            Iterator<Report> it = reports.iterator();
+            while (it.hasNext()) {
+                Report r = it.next();
+                try {
+                    r.processEvent(store, row);
+                } catch (Exception e) {
+                    r.addErrorLog(e.getLocalizedMessage());
+                    e.printStackTrace();
+                    it.remove();
+                }
+            }
+        }
+
         for (Report r : reports) {
             try {
-                r.runReport();
-            } catch (Exception e) {}
+                r.finish();
+            } catch (Exception e) {
+                r.addErrorLog(e.getLocalizedMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Directory for the local event store.  This is per-user rather than relative to the
+     * working directory, so that every run shares the same store.  It can be overridden
+     * with the <code>analytics.store</code> system property.
+     */
+    private static File getStoreDirectory() {
+        String dir = System.getProperty("analytics.store");
+        if (dir != null) {
+            return new File(dir);
         }
+        return new File(new File(System.getProperty("user.home"), ".savant"), "analytics-store");
     }
 
 }
@@ -1,9 +1,7 @@
 package org.ut.biolab.savant.analytics.analyticsreporter;
 
-import java.sql.SQLException;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -11,36 +9,75 @@
  */
 class RunTimeReport extends Report {
 
+    private final String softwareName;
+
+    /** Start times of sessions which haven't ended yet, keyed by session-id. */
+    private final Map<String, Long> startTimes = new HashMap<String, Long>();
+
+    private int numSessions;
+    private long totalTime;
+
     public RunTimeReport(String softwareName) {
         super("RunTime - " + softwareName);
+        this.softwareName = softwareName;
     }
 
+    /**
+     * Only session start and end events matter to us, so rather than looking at every
+     * event, we fetch just those rows from the store's value index.  The two row lists are
+     * merged so that the events are still seen in the order in which they were logged.
+     */
     @Override
-    void runReport() {
-        try {
-            addInfoLog("Downloading events");
-            List<SavantEvent> startEvents = SavantEvents.getEventsFromDatabase(SavantEvents.KEY_MESSAGE,SavantEvents.VALUE_ONSESSIONSTART);
-            List<SavantEvent> endEvents = SavantEvents.getEventsFromDatabase(SavantEvents.KEY_MESSAGE,SavantEvents.VALUE_ONSESSIONEND);
-
-            for (SavantEvent startEvent : startEvents) {
-                String sessionID = startEvent.getEventValueForKey(SavantEvents.KEY_SESSIONID);
-                SavantEvent matchingEndEvent = SavantEvents.getFirstEventFromSet(SavantEvents.KEY_SESSIONID, sessionID, endEvents);
-                if (matchingEndEvent != null) {
-
-                    // compute session time
-                    long endTime = Long.parseLong(matchingEndEvent.getEventValueForKey(SavantEvents.KEY_SERVERTIME));
-                    long startTime = Long.parseLong(startEvent.getEventValueForKey(SavantEvents.KEY_SERVERTIME));
-
-                    System.out.println("Time " + (endTime-startTime));
-                }
+    void start(EventStore store) {
+        int[] starts = store.getRows(SavantEvents.KEY_MESSAGE, SavantEvents.VALUE_ONSESSIONSTART);
+        int[] ends = store.getRows(SavantEvents.KEY_MESSAGE, SavantEvents.VALUE_ONSESSIONEND);
+        int i = 0, j = 0;
+        while (i < starts.length || j < ends.length) {
+            if (j == ends.length || (i < starts.length && starts[i] < ends[j])) {
+                processSessionEvent(store, starts[i++], true);
+            } else {
+                processSessionEvent(store, ends[j++], false);
             }
+        }
+    }
 
-            addInfoLog("Done downloading events");
+    @Override
+    void processEvent(EventStore store, int row) {
+        // Everything was done in start().
+    }
 
-        } catch (Exception ex) {
-            addErrorLog(ex.getLocalizedMessage());
-            ex.printStackTrace();
+    private void processSessionEvent(EventStore store, int row, boolean isStart) {
+        String software = store.getValue(row, SavantEvents.KEY_SOFTWARENAME);
+        if (software != null && !software.equals(softwareName)) {
+            return;
+        }
+        String sessionID = store.getValue(row, SavantEvents.KEY_SESSIONID);
+        String time = store.getValue(row, SavantEvents.KEY_SERVERTIME);
+        if (sessionID == null || time == null) {
             return;
         }
+
+        if (isStart) {
+            if (!startTimes.containsKey(sessionID)) {
+                startTimes.put(sessionID, Long.parseLong(time));
+            }
+        } else {
+            Long startTime = startTimes.remove(sessionID);
+            if (startTime != null) {
+                // compute session time
+                long endTime = Long.parseLong(time);
+                System.out.println("Time " + (endTime - startTime));
+                numSessions++;
+                totalTime += endTime - startTime;
+            }
+        }
+    }
+
+    @Override
+    void finish() {
+        addInfoLog(numSessions + " completed sessions, " + startTimes.size() + " without an end event");
+        if (numSessions > 0) {
+            addInfoLog("Mean session time " + (totalTime / numSessions));
+        }
     }
 }
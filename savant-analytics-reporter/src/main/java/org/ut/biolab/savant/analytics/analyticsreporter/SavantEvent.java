@@ -36,13 +36,13 @@ public String getEventValueForKey(String key) throws NoKeyForEeventException {
         }
     }
 
-    private static Map<String, String> parseKeyValueMapFromEventText(String eventText) {
+    static Map<String, String> parseKeyValueMapFromEventText(String eventText) {
         Map<String,String> map = new HashMap<String,String>();
         String pairSep = "\\|";
         String kvpSep = "=>";
 
         for (String kvp : eventText.split(pairSep,-1)) {
-            String[] components = kvp.split(kvpSep);
+            String[] components = kvp.split(kvpSep, 2);
             map.put(components[0], components.length > 1 ? components[1] : "");
         }
 
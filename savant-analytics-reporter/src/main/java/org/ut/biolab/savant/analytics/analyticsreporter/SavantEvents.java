@@ -1,12 +1,14 @@
 package org.ut.biolab.savant.analytics.analyticsreporter;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.util.ArrayList;
+import java.sql.SQLException;
+import java.util.Map;
 
 /**
  *
@@ -17,107 +19,101 @@ class SavantEvents {
     public static String KEY_MESSAGE = "msg";
     public static String KEY_SESSIONID = "session-id";
     public static String KEY_SERVERTIME = "server-time";
+    public static String KEY_SOFTWARENAME = "software-name";
     public static String VALUE_NEWSESSION = "NewSession";
     public static String VALUE_ONSESSIONSTART = "SessionStart";
     public static String VALUE_ONSESSIONEND = "SessionEnd";
-    private static List<SavantEvent> events;
 
-    static List<SavantEvent> getEvents() throws ClassNotFoundException, SQLException {
-        return getEventsFromDatabase(null, null);
-    }
-
-    static List<SavantEvent> getEventsFromDatabase(String key, String value) throws ClassNotFoundException, SQLException {
-        if (events == null) {
-            events = downloadEvents();
-            System.out.println(events.size() + " events downloaded");
-        }
+    /** Key under which the analytics agent posts a batch of events, one per line. */
+    static String KEY_BATCH = "batch";
+    static String KEY_BATCHSIZE = "batch-size";
 
-        return getEventsFromSet(key, value, events);
-    }
-
-    static SavantEvent getFirstEventFromSet(String key, String value, List<SavantEvent> fromList) {
-        List<SavantEvent> results = getEventsFromSet(key, value, fromList);
-        if (results.isEmpty()) {
-            return null;
-        }
-        return results.get(0);
-    }
-
-    static List<SavantEvent> getEventsFromSet(String key, String value, List<SavantEvent> fromList) {
-        if (key == null) {
-            return fromList;
-        }
-        List<SavantEvent> subset = new ArrayList<SavantEvent>();
-        for (SavantEvent e : fromList) {
-            if (e.hasValueForKey(key, value)) {
-                subset.add(e);
-            }
-        }
-        System.out.println(subset.size() + " events have key " + key + "=>" + value);
-        return subset;
-    }
-
-    static List<SavantEvent> filterEventsByKey(String key, List<SavantEvent> events) {
-        List<SavantEvent> results = new ArrayList<SavantEvent>();
-
-        for (SavantEvent e : events) {
-            if (e.hasKey(key)) {
-                results.add(e);
-            }
-        }
-
-        return results;
-    }
-
-    private static List<SavantEvent> downloadEvents() throws ClassNotFoundException, SQLException {
+    /**
+     * Download any events logged since the last download, and add them to the store.
+     * Batched events are split into individual events, each of which gets the server-time
+     * of the batch.
+     */
+    static void downloadNewEvents(EventStore store) throws ClassNotFoundException, SQLException, IOException {
 
         Connection conn = connect();
 
-        Statement stmt = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
-
-        List<SavantEvent> events = new ArrayList<SavantEvent>();
+        int n = 0;
 
         try {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery("SELECT * FROM log");
-
-            // or alternatively, if you don't know ahead of time that
-            // the query will be a SELECT...
-
-            while (rs.next()) {
-                events.add(new SavantEvent(rs.getInt("id"), rs.getString("msg")));
+            stmt = conn.prepareStatement("SELECT id, msg FROM log WHERE id > ? ORDER BY id", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Tells the MySQL driver to stream rows rather than reading the whole result set into memory.
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            stmt.setInt(1, store.getLastID());
+            rs = stmt.executeQuery();
+
+            store.beginAppend();
+            try {
+                while (rs.next()) {
+                    n += addEvents(store, rs.getInt(1), rs.getString(2));
+                }
+            } finally {
+                store.endAppend();
             }
-
-            // Now do something with the ResultSet ....
-        } catch (SQLException ex) {
-            throw ex;
         } finally {
-            // it is a good idea to release
-            // resources in a finally{} block
-            // in reverse-order of their creation
-            // if they are no-longer needed
-
             if (rs != null) {
                 try {
                     rs.close();
                 } catch (SQLException sqlEx) {
                 } // ignore
-
-                rs = null;
             }
-
             if (stmt != null) {
                 try {
                     stmt.close();
                 } catch (SQLException sqlEx) {
                 } // ignore
+            }
+            conn.close();
+        }
+        System.out.println(n + " events downloaded, " + store.size() + " events in local store");
+    }
 
-                stmt = null;
+    /**
+     * Add the event(s) contained in a single row of the log table.
+     * @return the number of events added
+     */
+    private static int addEvents(EventStore store, int id, String msg) throws IOException {
+        Map<String, String> row = SavantEvent.parseKeyValueMapFromEventText(msg);
+        String batch = row.get(KEY_BATCH);
+        if (batch == null) {
+            store.append(id, msg);
+            return 1;
+        }
+        String serverTime = row.get(KEY_SERVERTIME);
+        int n = 0;
+        for (String line : batch.split("\n")) {
+            if (line.length() > 0) {
+                StringBuilder text = new StringBuilder();
+                for (String kvp : line.split("&")) {
+                    int eq = kvp.indexOf('=');
+                    if (eq > 0) {
+                        if (text.length() > 0) {
+                            text.append('|');
+                        }
+                        text.append(decode(kvp.substring(0, eq))).append("=>").append(decode(kvp.substring(eq + 1)));
+                    }
+                }
+                if (serverTime != null) {
+                    text.append('|').append(KEY_SERVERTIME).append("=>").append(serverTime);
+                }
+                store.append(id, text.toString());
+                n++;
             }
         }
+        return n;
+    }
 
-        return events;
+    /**
+     * Decode a form-encoded key or value, stripping out the separator used in the event text.
+     */
+    private static String decode(String s) throws UnsupportedEncodingException {
+        return URLDecoder.decode(s, "UTF-8").replace('|', ' ');
     }
 
     private static Connection connect() throws ClassNotFoundException, SQLException {
@@ -1,17 +1,17 @@
 package org.ut.biolab.savant.analytics.savantanalytics;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.net.InetAddress;
+import java.net.URLEncoder;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -19,11 +19,36 @@
 import org.apache.commons.lang3.RandomStringUtils;
 
 /**
+ * Collects usage events and delivers them to the usage server.
+ *
+ * Logging an event never touches the network; it just puts the encoded event on a
+ * bounded queue.  A single background thread delivers the queued events as one POST
+ * per interval, with the events in the <code>batch</code> parameter (one per line,
+ * each line form-encoded).  If the server can't be reached, the batch is spooled to
+ * disk and retried with the next delivery.  If the queue fills up, the oldest events
+ * are dropped and a count of dropped events is sent instead.
  *
  * @author mfiume
  */
 public class AnalyticsAgent {
 
+    private static final String USAGE_URL = "http://genomesavant.com/u/labs/usage/usage.php";
+
+    /** Name of the POST parameter which carries a batch of events. */
+    public static final String BATCH_KEY = "batch";
+
+    /** Interval between deliveries, in milliseconds. */
+    private static final long SEND_INTERVAL = 30000;
+
+    /** Maximum number of events waiting to be delivered. */
+    private static final int MAX_QUEUED_EVENTS = 1000;
+
+    /** Maximum number of events in a single POST. */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /** Maximum size of the spool file; beyond this, the oldest spooled events are discarded. */
+    private static final long MAX_SPOOL_SIZE = 1024 * 1024;
+
     static boolean sessionActive = false;
     private static String sessionID;
     private static String softwareName;
@@ -32,6 +57,20 @@ public class AnalyticsAgent {
     private static Properties p = new Properties(System.getProperties());
     private static NameValuePair[] standardKeyValues;
 
+    /** Encoded events waiting to be delivered.  Also serves as the lock for the queue. */
+    private static final LinkedList<String> queue = new LinkedList<String>();
+    private static int droppedEvents;
+    private static boolean deliverNow;
+
+    /**
+     * Held from the moment a batch is taken off the queue until it has been posted or spooled,
+     * so that a synchronous flush can't miss events which the sender thread is holding.
+     */
+    private static final Object sendLock = new Object();
+    private static Thread sender;
+    private static HttpClient httpClient;
+    private static File spoolFile;
+
     public static void onStartSession(String softwareName, String softwareVersion) {
         System.out.println("Starting session");
         locale = Locale.getDefault();
@@ -47,6 +86,14 @@ public static void onEndSession(boolean synchronous) {
         endSession(synchronous);
     }
 
+    /**
+     * Set the file to which undelivered events are spooled.  By default, this is
+     * in the user's home directory.
+     */
+    public static synchronized void setSpoolFile(File f) {
+        spoolFile = f;
+    }
+
     public static void log(String message, boolean async) {
         log(nvp("msg", message),async);
     }
@@ -63,39 +110,228 @@ public static void log(NameValuePair kvp) {
         log(kvp, true);
     }
 
+    /**
+     * Queue an event for delivery.  This never blocks on the network; if <code>async</code>
+     * is false, the sender is just asked to deliver without waiting for the end of the
+     * interval.
+     */
     public static void log(final NameValuePair[] kvps, boolean async) {
 
         if (sessionActive) {
-            if (async) {
-                new Thread(new Runnable() {
-                    public void run() {
-                        doLog(kvps);
+            NameValuePair[] data = ArrayUtils.addAll(kvps, standardKeyValues);
+            data = ArrayUtils.addAll(data, dynamicKeyValues());
+            enqueue(encodeEvent(data), !async);
+        }
+    }
+
+    public static void log(NameValuePair[] kvps) {
+        log(kvps, true);
+    }
+
+    private static void enqueue(String event, boolean urgent) {
+        synchronized (queue) {
+            if (queue.size() >= MAX_QUEUED_EVENTS) {
+                // Under pressure, the oldest events are the least interesting.
+                queue.removeFirst();
+                droppedEvents++;
+            }
+            queue.add(event);
+            if (urgent) {
+                deliverNow = true;
+                queue.notify();
+            }
+        }
+    }
+
+    /**
+     * Take the next batch of events from the queue, including a note about any which were dropped.
+     */
+    private static List<String> drainQueue() {
+        List<String> batch = new ArrayList<String>();
+        synchronized (queue) {
+            if (droppedEvents > 0 && standardKeyValues != null) {
+                batch.add(encodeEvent(ArrayUtils.addAll(new NameValuePair[] { nvp("msg", "EventsDropped"), nvp("dropped-count", Integer.toString(droppedEvents)) }, standardKeyValues)));
+                droppedEvents = 0;
+            }
+            while (!queue.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+                batch.add(queue.removeFirst());
+            }
+        }
+        return batch;
+    }
+
+    private static synchronized void startSender() {
+        if (sender == null) {
+            sender = new Thread("AnalyticsSender") {
+                @Override
+                public void run() {
+                    while (!isInterrupted()) {
+                        try {
+                            synchronized (queue) {
+                                if (!deliverNow) {
+                                    queue.wait(SEND_INTERVAL);
+                                }
+                                deliverNow = false;
+                            }
+                            synchronized (sendLock) {
+                                deliver(drainQueue());
+                            }
+                        } catch (InterruptedException x) {
+                            return;
+                        }
                     }
-                }).start();
-            } else {
-                doLog(kvps);
+                }
+            };
+            sender.setDaemon(true);
+            sender.setPriority(Thread.MIN_PRIORITY);
+            sender.start();
+        }
+    }
+
+    private static synchronized void stopSender() {
+        if (sender != null) {
+            sender.interrupt();
+            sender = null;
+        }
+    }
+
+    /**
+     * Send a batch of events (along with anything previously spooled) in a single POST.
+     * If that fails, everything is spooled for next time.
+     */
+    private static void deliver(List<String> batch) {
+        synchronized (sendLock) {
+            List<String> events = readSpool();
+            boolean hadSpool = !events.isEmpty();
+            events.addAll(batch);
+            if (events.isEmpty()) {
+                return;
+            }
+            StringBuilder body = new StringBuilder();
+            for (String e: events) {
+                if (body.length() > 0) {
+                    body.append('\n');
+                }
+                body.append(e);
+            }
+            PostMethod post = new PostMethod(USAGE_URL);
+            try {
+                if (httpClient == null) {
+                    httpClient = new HttpClient();
+                }
+                post.setRequestBody(new NameValuePair[] { nvp(BATCH_KEY, body.toString()), nvp("batch-size", Integer.toString(events.size())) });
+                if (httpClient.executeMethod(post) == HttpStatus.SC_OK) {
+                    if (hadSpool) {
+                        getSpoolFile().delete();
+                    }
+                    return;
+                }
+            } catch (Exception ex) {
+            } finally {
+                post.releaseConnection();
+            }
+            writeSpool(events);
+        }
+    }
+
+    private static synchronized File getSpoolFile() {
+        if (spoolFile == null) {
+            String name = softwareName != null ? softwareName.toLowerCase() : "analytics";
+            spoolFile = new File(new File(System.getProperty("user.home"), "." + name), "analytics-spool.txt");
+        }
+        return spoolFile;
+    }
+
+    private static List<String> readSpool() {
+        List<String> result = new ArrayList<String>();
+        File f = getSpoolFile();
+        if (f.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0) {
+                        result.add(line);
+                    }
+                }
+            } catch (IOException ignored) {
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) {
+                    }
+                }
             }
         }
+        return result;
     }
 
-    private static void doLog(NameValuePair[] kvps) {
+    /**
+     * Replace the contents of the spool with the given events, discarding the oldest
+     * ones if necessary to stay within <code>MAX_SPOOL_SIZE</code>.
+     */
+    private static void writeSpool(List<String> events) {
+        long size = 0;
+        int first = events.size();
+        while (first > 0 && size + events.get(first - 1).length() + 1 <= MAX_SPOOL_SIZE) {
+            first--;
+            size += events.get(first).length() + 1;
+        }
+        File f = getSpoolFile();
+        f.getParentFile().mkdirs();
+        Writer writer = null;
         try {
-            HttpClient httpClient = new HttpClient();
-            PostMethod post = new PostMethod("http://genomesavant.com/u/labs/usage/usage.php");
-            NameValuePair[] data = ArrayUtils.addAll(kvps, standardKeyValues);
-            data = ArrayUtils.addAll(data, dynamicKeyValues());
-            post.setRequestBody(data);
-            httpClient.executeMethod(post);
-        } catch (Exception ex) {
+            writer = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+            for (int i = first; i < events.size(); i++) {
+                writer.write(events.get(i));
+                writer.write('\n');
+            }
+        } catch (IOException ignored) {
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
     }
 
-    public static void log(NameValuePair[] kvps) {
-        log(kvps, true);
+    /**
+     * Encode an event as a single line of form-encoded key/value pairs.
+     */
+    private static String encodeEvent(NameValuePair[] kvps) {
+        StringBuilder result = new StringBuilder();
+        try {
+            for (NameValuePair kvp: kvps) {
+                if (result.length() > 0) {
+                    result.append('&');
+                }
+                result.append(URLEncoder.encode(kvp.getName(), "UTF-8"));
+                result.append('=');
+                result.append(URLEncoder.encode(kvp.getValue() != null ? kvp.getValue() : "", "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException ignored) {
+            // UTF-8 is always supported.
+        }
+        return result.toString();
     }
 
     private static void endSession(boolean synchronous) {
         log("SessionEnd",!synchronous);
+        if (synchronous) {
+            // We're about to exit, so deliver whatever is left on this thread.  Taking sendLock
+            // first means that any batch already drained by the sender has been posted or spooled.
+            synchronized (sendLock) {
+                List<String> batch;
+                while (!(batch = drainQueue()).isEmpty()) {
+                    deliver(batch);
+                }
+            }
+            stopSender();
+        }
         sessionID = null;
         sessionActive = false;
     }
@@ -109,6 +345,7 @@ private static void beginSession() {
             nvp("session-id", sessionID),
             nvp("agent-version", getAnalyticsAgentVersion())
         };
+        startSender();
 
         String address = "unknown";
         try {
@@ -22,7 +22,6 @@
  */
 package org.broad.igv.tdf;
 
-import org.broad.igv.util.LRUCache;
 import org.broad.igv.util.StringUtils;
 
 import java.io.IOException;
@@ -49,7 +48,9 @@ public enum DataType {
     long[] tilePositions;
     int[] tileSizes;
     int nTiles;
-    LRUCache<String, TDFTile> cache = new LRUCache(this, 20);
+
+    /** Unique id, used as part of the key in the shared TDFTileCache. */
+    final int id = TDFTileCache.nextDatasetID();
     // TODO -- refactor this dependency out
     TDFReader reader;
 
@@ -125,22 +126,18 @@ public List<TDFTile> getTiles(int startLocation, int endLocation) {
                 tiles.add(tile);
             }
         }
+
+        // Start fetching the neighbouring tiles, in case the user pans.
+        TDFTileCache cache = TDFTileCache.getInstance();
+        cache.readAhead(this, startTile - 1);
+        cache.readAhead(this, endTile + 1);
         return tiles;
 
     }
 
     // TDFTile computeTile(TDFDataset ds, int t, List<LocusScore> scores, String chr)
-    synchronized TDFTile getTile(int t) {
-        String key = getName() + "_" + t;
-
-        TDFTile tile = null;
-        if (!cache.containsKey(key)) {
-            tile = reader.readTile(this, t);
-            cache.put(key, tile);
-        } else {
-            tile = cache.get(key);
-        }
-        return tile;
+    TDFTile getTile(int t) {
+        return TDFTileCache.getInstance().getTile(this, t);
     }
 
 }
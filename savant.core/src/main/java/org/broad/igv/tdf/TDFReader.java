@@ -33,6 +33,7 @@
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import net.sf.samtools.util.SeekableStream;
 import savant.util.NetworkUtils;
 
@@ -51,8 +52,8 @@ public class TDFReader {
     private TrackType trackType;
     private String trackLine;
     private String[] trackNames;
-    LRUCache<String, TDFGroup> groupCache = new LRUCache(this, 20);
-    LRUCache<String, TDFDataset> datasetCache = new LRUCache(this, 20);
+    ConcurrentHashMap<String, TDFGroup> groupCache = new ConcurrentHashMap<String, TDFGroup>();
+    ConcurrentHashMap<String, TDFDataset> datasetCache = new ConcurrentHashMap<String, TDFDataset>();
 
     Map<WindowFunction, Double> valueCache = new HashMap();
     private List<WindowFunction> windowFunctions;
@@ -74,6 +75,10 @@ private TDFReader(URI locator) throws IOException {
     }
 
     public void close() {
+        for (TDFDataset ds: datasetCache.values()) {
+            TDFTileCache.getInstance().removeDataset(ds.id);
+        }
+        datasetCache.clear();
         try {
             seekableStream.close();
         } catch (IOException e) {
@@ -212,10 +217,11 @@ public TDFDataset getDataset(String chr, int zoom, WindowFunction windowFunction
         return ds;
     }
 
-    public synchronized TDFDataset getDataset(String name) {
+    public TDFDataset getDataset(String name) {
 
-        if (datasetCache.containsKey(name)) {
-            return datasetCache.get(name);
+        TDFDataset cached = datasetCache.get(name);
+        if (cached != null) {
+            return cached;
         }
 
         try {
@@ -232,8 +238,8 @@ public synchronized TDFDataset getDataset(String name) {
                 byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
 
                 TDFDataset ds = new TDFDataset(name, byteBuffer, this);
-                datasetCache.put(name, ds);
-                return ds;
+                cached = datasetCache.putIfAbsent(name, ds);
+                return cached != null ? cached : ds;
             } else {
                 return null;
             }
@@ -252,9 +258,10 @@ public Collection<String> getGroupNames() {
         return groupIndex.keySet();
     }
 
-    public synchronized TDFGroup getGroup(String name) {
-        if (groupCache.containsKey(name)) {
-            return groupCache.get(name);
+    public TDFGroup getGroup(String name) {
+        TDFGroup cached = groupCache.get(name);
+        if (cached != null) {
+            return cached;
         }
 
         try {
@@ -271,9 +278,9 @@ public synchronized TDFGroup getGroup(String name) {
 
             TDFGroup group = new TDFGroup(name, byteBuffer);
 
-            groupCache.put(name, group);
+            cached = groupCache.putIfAbsent(name, group);
 
-            return group;
+            return cached != null ? cached : group;
 
         } catch (IOException ex) {
             log.error("Error reading group: " + name, ex);
@@ -390,9 +397,13 @@ public double getDataMin() {
 
 
     public byte[] readBytes(long position, int nBytes) throws IOException {
-        seekableStream.seek(position);
         byte[] buffer = new byte[nBytes];
-        seekableStream.read(buffer, 0, nBytes);
+        // The stream is shared, so the seek and read must happen together.  Decompression
+        // is done by the caller, outside the lock.
+        synchronized (seekableStream) {
+            seekableStream.seek(position);
+            seekableStream.read(buffer, 0, nBytes);
+        }
         return buffer;
     }
 
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.tdf;
+
+import org.apache.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tile cache shared by all open TDF files.  Tiles are keyed by a primitive
+ * (dataset id, tile number) pair and evicted in least-recently-used order once
+ * the estimated size of the cached tiles exceeds the byte budget.
+ *
+ * Loading is single-flight: if several threads ask for the same tile at once,
+ * only one of them reads and decompresses it, and the others wait for the result.
+ * Adjacent tiles can be read ahead asynchronously on a small background pool.
+ */
+public class TDFTileCache {
+
+    static final Logger log = Logger.getLogger(TDFTileCache.class);
+
+    public static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+
+    private static final int READ_AHEAD_THREADS = 2;
+
+    private static final AtomicInteger nextDatasetID = new AtomicInteger();
+
+    private static TDFTileCache instance;
+
+    /** Cached tiles in access order.  Guarded by <code>this</code>. */
+    private final LinkedHashMap<Long, Entry> tiles = new LinkedHashMap<Long, Entry>(256, 0.75f, true);
+
+    /** Tiles which are currently being loaded. */
+    private final ConcurrentHashMap<Long, FutureTask<Entry>> pending = new ConcurrentHashMap<Long, FutureTask<Entry>>();
+
+    private final ExecutorService readAheadExecutor;
+
+    private long byteBudget;
+    private long totalBytes;
+
+    public static synchronized TDFTileCache getInstance() {
+        if (instance == null) {
+            instance = new TDFTileCache(DEFAULT_BYTE_BUDGET);
+        }
+        return instance;
+    }
+
+    /**
+     * Allocate a unique id for a newly-read dataset.
+     */
+    static int nextDatasetID() {
+        return nextDatasetID.incrementAndGet();
+    }
+
+    private TDFTileCache(long byteBudget) {
+        this.byteBudget = byteBudget;
+        final AtomicInteger threadNum = new AtomicInteger();
+        readAheadExecutor = Executors.newFixedThreadPool(READ_AHEAD_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TDF Read-ahead-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public synchronized void setByteBudget(long bytes) {
+        byteBudget = bytes;
+        evict();
+    }
+
+    public synchronized long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Get the given tile, reading it on the calling thread if necessary.
+     *
+     * @return the tile, or null if the tile is empty (or we were interrupted while another thread was loading it)
+     */
+    public TDFTile getTile(TDFDataset ds, int tileNumber) {
+        long key = getKey(ds.id, tileNumber);
+        Entry e = getCached(key);
+        if (e != null) {
+            return e.tile;
+        }
+        FutureTask<Entry> task = createLoadTask(ds, tileNumber, key);
+        FutureTask<Entry> existing = pending.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            try {
+                task.run();
+            } finally {
+                pending.remove(key, task);
+            }
+        }
+        try {
+            return existing.get().tile;
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException x) {
+            Throwable cause = x.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Asynchronously load the given tile, unless it's already cached or being loaded.
+     */
+    public void readAhead(TDFDataset ds, int tileNumber) {
+        if (tileNumber < 0 || tileNumber >= ds.nTiles || ds.tilePositions[tileNumber] < 0) {
+            return;
+        }
+        final long key = getKey(ds.id, tileNumber);
+        synchronized (this) {
+            if (tiles.containsKey(key)) {
+                return;
+            }
+        }
+        final FutureTask<Entry> task = createLoadTask(ds, tileNumber, key);
+        if (pending.putIfAbsent(key, task) == null) {
+            readAheadExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        pending.remove(key, task);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Discard all cached tiles belonging to the given dataset.
+     */
+    public synchronized void removeDataset(int datasetID) {
+        Iterator<Map.Entry<Long, Entry>> iter = tiles.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, Entry> e = iter.next();
+            if ((int)(e.getKey() >>> 32) == datasetID) {
+                totalBytes -= e.getValue().bytes;
+                iter.remove();
+            }
+        }
+    }
+
+    private FutureTask<Entry> createLoadTask(final TDFDataset ds, final int tileNumber, final long key) {
+        return new FutureTask<Entry>(new Callable<Entry>() {
+            public Entry call() {
+                Entry e = new Entry(ds.reader.readTile(ds, tileNumber), ds.reader.getTrackNames().length);
+                put(key, e);
+                return e;
+            }
+        });
+    }
+
+    private synchronized Entry getCached(long key) {
+        return tiles.get(key);
+    }
+
+    private synchronized void put(long key, Entry e) {
+        Entry old = tiles.put(key, e);
+        if (old != null) {
+            totalBytes -= old.bytes;
+        }
+        totalBytes += e.bytes;
+        evict();
+    }
+
+    /**
+     * Throw out least-recently-used tiles until we're back within our budget.
+     */
+    private void evict() {
+        Iterator<Entry> iter = tiles.values().iterator();
+        while (totalBytes > byteBudget && iter.hasNext()) {
+            totalBytes -= iter.next().bytes;
+            iter.remove();
+        }
+    }
+
+    private static long getKey(int datasetID, int tileNumber) {
+        return ((long)datasetID << 32) | (tileNumber & 0xffffffffL);
+    }
+
+    private static class Entry {
+        /** May be null for an empty tile. */
+        final TDFTile tile;
+
+        /** Estimated memory footprint of the tile. */
+        final long bytes;
+
+        Entry(TDFTile tile, int nTracks) {
+            this.tile = tile;
+            long size = 64;
+            if (tile != null) {
+                int n = tile.getSize();
+                size += n * (8L + 4L * nTracks);
+                if (tile.getNames() != null) {
+                    size += n * 48L;
+                }
+            }
+            bytes = size;
+        }
+    }
+}
@@ -19,6 +19,9 @@
  */
 package savant.api.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import savant.api.adapter.BookmarkAdapter;
 import savant.api.adapter.RangeAdapter;
 import savant.api.event.BookmarksChangedEvent;
@@ -54,6 +57,23 @@ public static void addBookmark(BookmarkAdapter value) {
         controller.addBookmark((Bookmark)value);
     }
 
+    /**
+     * Add a number of bookmarks at once.  Listeners are only notified once, which is much
+     * faster than adding the bookmarks individually.
+     *
+     * @param values the bookmarks to add
+     * @since 2.0.0
+     */
+    public static void addBookmarks(BookmarkAdapter[] values) {
+        if (values.length > 0) {
+            List<Bookmark> bookmarks = new ArrayList<Bookmark>(values.length);
+            for (BookmarkAdapter b: values) {
+                bookmarks.add((Bookmark)b);
+            }
+            controller.addBookmarks(bookmarks);
+        }
+    }
+
     /**
      * Remove the last bookmark.
      */
@@ -340,6 +340,17 @@ public static void showProgress(String message, double fraction) {
         savant.util.swing.ProgressDialog.showProgress(message, fraction);
     }
 
+    /**
+     * Show a Savant progress dialog whose Cancel button stops the operation in progress.
+     *
+     * @param message message describing the step currently in progress
+     * @param fraction fraction of the process which is complete (-1.0 for an indeterminate process; 1.0 to dismiss the dialog)
+     * @param cancellationListener fired when the user clicks Cancel
+     */
+    public static void showProgress(String message, double fraction, ActionListener cancellationListener) {
+        savant.util.swing.ProgressDialog.showProgress(message, fraction, cancellationListener);
+    }
+
 
     /**
      * Little class so that caller can pass us a FileFilter and will still be able
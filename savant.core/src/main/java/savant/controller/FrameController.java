@@ -139,15 +139,46 @@ public Frame createFrame(Track[] tracks) {
 
     public Frame addTrackFromPath(String fileOrURI, DataFormat df, DrawingMode dm) {
         if (df == null) {
-            if (fileOrURI.endsWith(".fa") || fileOrURI.endsWith(".fa.savant")) {
-                df = DataFormat.SEQUENCE;
-            } else if (fileOrURI.endsWith(".vcf.gz")) {
-                df = DataFormat.VARIANT;
-            }
+            df = guessDataFormat(fileOrURI);
         }
         return addTrackFromURI(NetworkUtils.getURIFromPath(fileOrURI), df, dm);
     }
 
+    /**
+     * Add frames for a whole batch of tracks (typically when loading a project).  All the
+     * frames are created up front, in the given order, and the tracks are then created
+     * concurrently; each frame fills in as soon as its own track is ready.
+     *
+     * @param paths files or URIs of the tracks to be loaded
+     * @param modes initial drawing modes for the tracks (may be <code>null</code>)
+     * @return the newly-created frames, in the same order as <code>paths</code>
+     */
+    public List<Frame> addTracksFromPaths(List<String> paths, List<DrawingMode> modes) {
+        List<Frame> result = new ArrayList<Frame>(paths.size());
+        URI[] uris = new URI[paths.size()];
+        for (int i = 0; i < uris.length; i++) {
+            String path = paths.get(i);
+            DataFormat df = guessDataFormat(path);
+            uris[i] = NetworkUtils.getURIFromPath(path);
+            Frame frame = DockableFrameFactory.createTrackFrame(df);
+            frame.setKey(uris[i].toString() + System.nanoTime());
+            frame.setInitialDrawingMode(modes != null ? modes.get(i) : null);
+            addFrame(frame, df);
+            result.add(frame);
+        }
+        TrackFactory.createTracks(uris, result.toArray(new Frame[0]));
+        return result;
+    }
+
+    private static DataFormat guessDataFormat(String fileOrURI) {
+        if (fileOrURI.endsWith(".fa") || fileOrURI.endsWith(".fa.savant")) {
+            return DataFormat.SEQUENCE;
+        } else if (fileOrURI.endsWith(".vcf.gz")) {
+            return DataFormat.VARIANT;
+        }
+        return null;
+    }
+
     public Frame addTrackFromURI(URI uri, DataFormat df, DrawingMode dm) {
         Frame frame = DockableFrameFactory.createTrackFrame(df);
         //Force a unique frame key. The title of frame is overwritten by track name later.
@@ -192,17 +223,29 @@ public Frame getActiveFrame() {
     }
 
     /**
-     * Draw the frames in the current viewable range
+     * Draw the frames in the current viewable range.  All the tracks' requests are
+     * started before any of them are waited for, and the RetrievalCoordinator repaints
+     * the frames together once the data is in.
      */
     public void drawFrames() {
         GraphPaneController.getInstance().clearRenderingList();
 
+        List<Frame> batch = new ArrayList<Frame>();
         for (Frame f : frames) {
             if (f.getTracks() != null) {
+                batch.add(f);
+            }
+        }
+        RetrievalCoordinator coordinator = RetrievalCoordinator.getInstance();
+        coordinator.begin(batch);
+        try {
+            for (Frame f : batch) {
                 // added to detect when rendering has completed
                 GraphPaneController.getInstance().enlistRenderingGraphpane(f.getGraphPane());
                 f.drawTracksInRange(locationController.getReferenceName(), locationController.getRange());
             }
+        } finally {
+            coordinator.endFanOut();
         }
     }
 
@@ -0,0 +1,189 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.controller;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.*;
+import javax.swing.Timer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import savant.api.adapter.TrackAdapter;
+import savant.view.swing.Frame;
+
+
+/**
+ * Coordinates data retrieval across all frames when the location changes.  Every
+ * track's request is started up front, and the frames are repainted together once
+ * all the tracks have reported in (or once the deadline has passed, in which case
+ * the slow tracks show their progress placeholder until their data arrives).
+ * This replaces the old behaviour of blocking for up to a second on each track
+ * in turn and repainting once per track.
+ */
+public class RetrievalCoordinator {
+    private static final Log LOG = LogFactory.getLog(RetrievalCoordinator.class);
+
+    /** Milliseconds to wait for all tracks before painting what we've got. */
+    private static final int DEADLINE = 1000;
+
+    private static RetrievalCoordinator instance;
+
+    /** Frames participating in the current batch. */
+    private final List<Frame> frames = new ArrayList<Frame>();
+
+    /** Tracks whose data hasn't arrived yet, mapped to the time at which their request was started. */
+    private final Map<TrackAdapter, Long> pending = new HashMap<TrackAdapter, Long>();
+
+    /** Most recent retrieval time for each track, in milliseconds. */
+    private final Map<TrackAdapter, Long> latencies = new WeakHashMap<TrackAdapter, Long>();
+
+    /** True from begin() until the batch's composite repaint has been issued. */
+    private boolean active;
+
+    /** True while tracks are still being enlisted, so that an early finish doesn't close the batch. */
+    private boolean fanningOut;
+
+    private long batchStart;
+
+    private final Timer deadlineTimer;
+
+    public static synchronized RetrievalCoordinator getInstance() {
+        if (instance == null) {
+            instance = new RetrievalCoordinator();
+        }
+        return instance;
+    }
+
+    private RetrievalCoordinator() {
+        deadlineTimer = new Timer(DEADLINE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                deadlinePassed();
+            }
+        });
+        deadlineTimer.setRepeats(false);
+    }
+
+    /**
+     * Start a new batch.  Any batch which is still outstanding is abandoned, and its
+     * stragglers will repaint their own frames when they complete.
+     *
+     * @param batchFrames the frames which are about to request their data
+     */
+    public synchronized void begin(Collection<Frame> batchFrames) {
+        frames.clear();
+        frames.addAll(batchFrames);
+        pending.clear();
+        active = true;
+        fanningOut = true;
+        batchStart = System.currentTimeMillis();
+        deadlineTimer.restart();
+    }
+
+    /**
+     * Called once all the frames in the batch have started their requests.
+     */
+    public synchronized void endFanOut() {
+        fanningOut = false;
+        if (active && (pending.isEmpty() || System.currentTimeMillis() - batchStart >= DEADLINE)) {
+            finish();
+        }
+    }
+
+    /**
+     * Are we in the middle of fanning out a batch?  If so, tracks shouldn't block
+     * waiting for their data, and frames shouldn't repaint.
+     */
+    public synchronized boolean isFanningOut() {
+        return active && fanningOut;
+    }
+
+    /**
+     * Record that the given track has started retrieving data as part of the current batch.
+     * Has no effect if no batch is being fanned out.
+     */
+    public synchronized void enlist(TrackAdapter t) {
+        if (active && fanningOut && !pending.containsKey(t)) {
+            pending.put(t, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Record that the given track has finished retrieving (successfully or not).
+     *
+     * @return true if the coordinator will take care of repainting; false if the
+     * caller should repaint its frame itself
+     */
+    public synchronized boolean trackFinished(TrackAdapter t) {
+        Long start = pending.remove(t);
+        if (start == null) {
+            return false;
+        }
+        long latency = System.currentTimeMillis() - start;
+        latencies.put(t, latency);
+        LOG.debug(t.getName() + " retrieved data in " + latency + "ms.");
+        if (!active) {
+            // Straggler which missed the deadline.
+            return false;
+        }
+        if (pending.isEmpty() && !fanningOut) {
+            finish();
+        }
+        return true;
+    }
+
+    /**
+     * Time taken by the given track's most recent retrieval.
+     *
+     * @return latency in milliseconds, or -1 if the track hasn't completed a retrieval
+     */
+    public synchronized long getLatency(TrackAdapter t) {
+        Long result = latencies.get(t);
+        return result != null ? result : -1;
+    }
+
+    private synchronized void deadlinePassed() {
+        if (active && !fanningOut) {
+            List<String> slow = new ArrayList<String>();
+            for (TrackAdapter t: pending.keySet()) {
+                slow.add(t.getName());
+            }
+            LOG.debug("Deadline passed after " + DEADLINE + "ms; still waiting for " + slow);
+            finish();
+        }
+    }
+
+    /**
+     * Issue the composite repaint.  All the repaint requests are queued together, so
+     * Swing's RepaintManager folds them into a single paint pass.
+     */
+    private void finish() {
+        active = false;
+        deadlineTimer.stop();
+        LOG.debug("Retrieval batch for " + frames.size() + " frames finished in " + (System.currentTimeMillis() - batchStart) + "ms.");
+        for (Frame f: frames) {
+            f.getGraphPane().setRenderForced();
+            f.getGraphPane().repaint();
+        }
+        frames.clear();
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.controller;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import savant.api.adapter.BookmarkAdapter;
+import savant.api.adapter.DataSourceAdapter;
+import savant.api.event.TrackEvent;
+import savant.api.util.Listener;
+import savant.view.tracks.Track;
+
+
+/**
+ * Searches the dictionaries of all open tracks.  The tracks are queried in parallel,
+ * and the results are merged, ranked, and cached so that successive keystrokes in
+ * the navigation bar don't have to go back to the tracks.
+ */
+public class SearchController {
+    private static final Log LOG = LogFactory.getLog(SearchController.class);
+
+    /** Maximum number of threads used for querying track dictionaries. */
+    private static final int MAX_THREADS = 8;
+
+    /** Number of recent queries whose results are kept. */
+    private static final int CACHE_SIZE = 64;
+
+    private static SearchController instance;
+
+    private final ExecutorService executor;
+
+    /** Incremented whenever the cache is cleared, so that in-flight searches don't cache stale results. */
+    private int generation;
+
+    /** Recent query results, keyed by the lower-case query string (including any trailing '*'). */
+    private final Map<String, SearchResult> cache = new LinkedHashMap<String, SearchResult>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SearchResult> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public static synchronized SearchController getInstance() {
+        if (instance == null) {
+            instance = new SearchController();
+        }
+        return instance;
+    }
+
+    private SearchController() {
+        final AtomicInteger threadNum = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() * 2), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Search-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // Any change to the set of tracks invalidates our cached results.
+        TrackController.getInstance().addListener(new Listener<TrackEvent>() {
+            @Override
+            public void handleEvent(TrackEvent event) {
+                clearCache();
+            }
+        });
+    }
+
+    /**
+     * Discard all cached results.  Should be called when a dictionary is loaded or
+     * a track is added or removed.
+     */
+    public synchronized void clearCache() {
+        cache.clear();
+        generation++;
+    }
+
+    /**
+     * Search all open tracks for the given key.  A trailing asterisk indicates a
+     * prefix search.  Tracks which don't respond within <code>timeout</code> milliseconds
+     * are omitted from the results (which will then not be cached).
+     *
+     * @param key the key to be searched for (case-insensitive)
+     * @param timeout maximum time to wait for the tracks, in milliseconds
+     * @return ranked list of matching bookmarks; never <code>null</code>
+     */
+    public List<BookmarkAdapter> search(String key, long timeout) {
+        key = key.toLowerCase();
+        int gen;
+        SearchResult result;
+        synchronized (this) {
+            gen = generation;
+            result = getCachedResult(key);
+        }
+        if (result == null) {
+            result = searchTracks(key, timeout);
+            synchronized (this) {
+                if (result.complete && gen == generation) {
+                    cache.put(key, result);
+                }
+            }
+        }
+        return result.marks;
+    }
+
+    /**
+     * Look for a cached result which can answer the given query.  For a prefix query,
+     * a complete cached result for a shorter prefix can be filtered instead of querying
+     * the tracks again.
+     */
+    private synchronized SearchResult getCachedResult(String key) {
+        SearchResult result = cache.get(key);
+        if (result == null && key.endsWith("*")) {
+            String prefix = key.substring(0, key.length() - 1);
+            for (int i = prefix.length() - 1; i > 0; i--) {
+                SearchResult shorter = cache.get(prefix.substring(0, i) + "*");
+                if (shorter != null) {
+                    List<BookmarkAdapter> marks = new ArrayList<BookmarkAdapter>();
+                    for (BookmarkAdapter bm: shorter.marks) {
+                        if (bm.getAnnotation().toLowerCase().startsWith(prefix)) {
+                            marks.add(bm);
+                        }
+                    }
+                    rank(marks, prefix);
+                    result = new SearchResult(marks, true);
+                    cache.put(key, result);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Query all the tracks in parallel, and merge their results.
+     */
+    private SearchResult searchTracks(final String key, long timeout) {
+        List<Callable<List<BookmarkAdapter>>> tasks = new ArrayList<Callable<List<BookmarkAdapter>>>();
+        for (Track t: new ArrayList<Track>(TrackController.getInstance().getTracks())) {
+            final DataSourceAdapter ds = t.getDataSource();
+            tasks.add(new Callable<List<BookmarkAdapter>>() {
+                @Override
+                public List<BookmarkAdapter> call() {
+                    return ds.lookup(key);
+                }
+            });
+        }
+
+        boolean complete = true;
+        List<BookmarkAdapter> marks = new ArrayList<BookmarkAdapter>();
+        Set<String> seen = new HashSet<String>();
+        try {
+            // Futures are returned in track order, so results from earlier tracks take precedence.
+            for (Future<List<BookmarkAdapter>> f: executor.invokeAll(tasks, timeout, TimeUnit.MILLISECONDS)) {
+                try {
+                    List<BookmarkAdapter> trackMarks = f.get();
+                    if (trackMarks != null) {
+                        for (BookmarkAdapter bm: trackMarks) {
+                            if (seen.add(bm.getAnnotation() + "\t" + bm.getReference() + ":" + bm.getRange().getFrom() + "-" + bm.getRange().getTo())) {
+                                marks.add(bm);
+                            }
+                        }
+                    }
+                } catch (CancellationException x) {
+                    complete = false;
+                } catch (ExecutionException x) {
+                    LOG.warn("Dictionary lookup for " + key + " failed.", x.getCause());
+                }
+            }
+        } catch (InterruptedException x) {
+            complete = false;
+        }
+        if (!complete) {
+            LOG.info("Search for " + key + " timed out after " + timeout + "ms; returning partial results.");
+        }
+
+        if (key.endsWith("*")) {
+            rank(marks, key.substring(0, key.length() - 1));
+        }
+        return new SearchResult(marks, complete);
+    }
+
+    /**
+     * Sort prefix-search results so that exact matches come first, followed by shorter
+     * names.  The sort is stable, so ties retain track order.
+     */
+    private static void rank(List<BookmarkAdapter> marks, final String prefix) {
+        Collections.sort(marks, new Comparator<BookmarkAdapter>() {
+            @Override
+            public int compare(BookmarkAdapter a, BookmarkAdapter b) {
+                String annA = a.getAnnotation(), annB = b.getAnnotation();
+                boolean exactA = annA.equalsIgnoreCase(prefix), exactB = annB.equalsIgnoreCase(prefix);
+                if (exactA != exactB) {
+                    return exactA ? -1 : 1;
+                }
+                if (annA.length() != annB.length()) {
+                    return annA.length() - annB.length();
+                }
+                return annA.compareToIgnoreCase(annB);
+            }
+        });
+    }
+
+    private static class SearchResult {
+        final List<BookmarkAdapter> marks;
+
+        /** False if one or more tracks failed to respond in time. */
+        final boolean complete;
+
+        SearchResult(List<BookmarkAdapter> marks, boolean complete) {
+            this.marks = Collections.unmodifiableList(marks);
+            this.complete = complete;
+        }
+    }
+}
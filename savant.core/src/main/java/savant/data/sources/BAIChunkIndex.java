@@ -0,0 +1,201 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.data.sources;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the chunk lists from a BAI file, so that we know which byte ranges of a remote
+ * BAM a query will touch before Picard starts reading them.  The file is scanned once to
+ * find where each reference starts; the bins and linear index for a reference are only
+ * loaded when that reference is queried, and the most recent one is kept.
+ */
+class BAIChunkIndex {
+    /** Pseudo-bin holding index metadata rather than real chunks. */
+    private static final int METADATA_BIN = 37450;
+
+    /** Width of each window in the linear index. */
+    private static final int LINEAR_SHIFT = 14;
+
+    private final File indexFile;
+
+    /** File offset at which each reference's bins begin. */
+    private final long[] refOffsets;
+
+    private int loadedRef = -1;
+    private Map<Integer, long[]> loadedBins;
+    private long[] loadedLinear;
+
+    BAIChunkIndex(File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        CountingInput in = new CountingInput(indexFile);
+        try {
+            byte[] magic = new byte[4];
+            in.readBytes(magic);
+            if (magic[0] != 'B' || magic[1] != 'A' || magic[2] != 'I' || magic[3] != 1) {
+                throw new IOException(indexFile + " is not a BAM index.");
+            }
+            int numRefs = in.readLEInt();
+            refOffsets = new long[numRefs];
+            for (int i = 0; i < numRefs; i++) {
+                refOffsets[i] = in.position;
+                int numBins = in.readLEInt();
+                for (int j = 0; j < numBins; j++) {
+                    in.readLEInt();
+                    in.skipFully(in.readLEInt() * 16L);
+                }
+                in.skipFully(in.readLEInt() * 8L);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the chunks which may contain alignments overlapping the given range.  Chunks are
+     * returned in bin order rather than file order, and may overlap one another.
+     *
+     * @param refIndex index of the reference within the BAM header
+     * @param beg start of the range (0-based, inclusive)
+     * @param end end of the range (0-based, exclusive)
+     * @return list of [start, end) virtual file offsets
+     */
+    synchronized List<long[]> getChunks(int refIndex, int beg, int end) throws IOException {
+        List<long[]> result = new ArrayList<long[]>();
+        if (refIndex < 0 || refIndex >= refOffsets.length || end <= beg) {
+            return result;
+        }
+        loadReference(refIndex);
+
+        long minOffset = 0;
+        if (loadedLinear.length > 0) {
+            minOffset = loadedLinear[Math.min(beg >> LINEAR_SHIFT, loadedLinear.length - 1)];
+        }
+        for (int bin: regionToBins(beg, end)) {
+            long[] chunks = loadedBins.get(bin);
+            if (chunks != null) {
+                for (int i = 0; i < chunks.length; i += 2) {
+                    if (chunks[i + 1] > minOffset) {
+                        result.add(new long[] { chunks[i], chunks[i + 1] });
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void loadReference(int refIndex) throws IOException {
+        if (refIndex == loadedRef) {
+            return;
+        }
+        CountingInput in = new CountingInput(indexFile);
+        try {
+            in.skipFully(refOffsets[refIndex]);
+            Map<Integer, long[]> bins = new HashMap<Integer, long[]>();
+            int numBins = in.readLEInt();
+            for (int j = 0; j < numBins; j++) {
+                int bin = in.readLEInt();
+                int numChunks = in.readLEInt();
+                long[] chunks = new long[numChunks * 2];
+                for (int k = 0; k < chunks.length; k++) {
+                    chunks[k] = in.readLELong();
+                }
+                if (bin != METADATA_BIN) {
+                    bins.put(bin, chunks);
+                }
+            }
+            long[] linear = new long[in.readLEInt()];
+            for (int k = 0; k < linear.length; k++) {
+                linear[k] = in.readLELong();
+            }
+            loadedBins = bins;
+            loadedLinear = linear;
+            loadedRef = refIndex;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Standard UCSC binning scheme, as used by the SAM specification.
+     */
+    private static List<Integer> regionToBins(int beg, int end) {
+        List<Integer> bins = new ArrayList<Integer>();
+        end--;
+        bins.add(0);
+        for (int k = 1 + (beg >> 26); k <= 1 + (end >> 26); k++) {
+            bins.add(k);
+        }
+        for (int k = 9 + (beg >> 23); k <= 9 + (end >> 23); k++) {
+            bins.add(k);
+        }
+        for (int k = 73 + (beg >> 20); k <= 73 + (end >> 20); k++) {
+            bins.add(k);
+        }
+        for (int k = 585 + (beg >> 17); k <= 585 + (end >> 17); k++) {
+            bins.add(k);
+        }
+        for (int k = 4681 + (beg >> 14); k <= 4681 + (end >> 14); k++) {
+            bins.add(k);
+        }
+        return bins;
+    }
+
+    /**
+     * Little-endian input which keeps track of how far into the file it is.
+     */
+    private static class CountingInput extends DataInputStream {
+        long position;
+
+        CountingInput(File f) throws IOException {
+            super(new BufferedInputStream(new FileInputStream(f)));
+        }
+
+        int readLEInt() throws IOException {
+            position += 4;
+            return Integer.reverseBytes(readInt());
+        }
+
+        long readLELong() throws IOException {
+            position += 8;
+            return Long.reverseBytes(readLong());
+        }
+
+        void readBytes(byte[] b) throws IOException {
+            readFully(b);
+            position += b.length;
+        }
+
+        void skipFully(long n) throws IOException {
+            while (n > 0) {
+                long skipped = skip(n);
+                if (skipped <= 0) {
+                    throw new EOFException();
+                }
+                n -= skipped;
+                position += skipped;
+            }
+        }
+    }
+}
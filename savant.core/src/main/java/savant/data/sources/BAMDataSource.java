@@ -41,9 +41,11 @@
 import savant.api.util.Resolution;
 import savant.controller.LocationController;
 import savant.data.types.BAMIntervalRecord;
+import savant.util.CachedSeekableStream;
 import savant.util.IndexCache;
 import savant.util.MiscUtils;
 import savant.util.NetworkUtils;
+import savant.util.SeekableHTTPRangeStream;
 
 /**
  * Class to represent a track of BAM intervals. Uses SAMTools to read data
@@ -58,11 +60,24 @@ public class BAMDataSource extends DataSource<BAMIntervalRecord> implements BAMD
     private SAMFileHeader samFileHeader;
     private URI uri;
 
+    /** For remote files served over HTTP, used to fetch a query's chunks in parallel before Picard reads them. */
+    private SeekableHTTPRangeStream httpStream;
+    private BAIChunkIndex chunkIndex;
+
     public BAMDataSource(URI uri) throws IOException {
         this.uri = uri.normalize();
 
         File indexFile = IndexCache.getIndexFile(uri, "bai", "bam");
         SeekableStream stream = NetworkUtils.getSeekableStreamForURI(uri);
+        SeekableStream inner = stream instanceof CachedSeekableStream ? ((CachedSeekableStream)stream).getWrappedStream() : stream;
+        if (inner instanceof SeekableHTTPRangeStream) {
+            httpStream = (SeekableHTTPRangeStream)inner;
+            try {
+                chunkIndex = new BAIChunkIndex(indexFile);
+            } catch (IOException x) {
+                LOG.info("Unable to read chunk list from " + indexFile + "; prefetching disabled.", x);
+            }
+        }
         samFileReader = new SAMFileReader(stream, indexFile, false);
         samFileReader.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
         samFileHeader = samFileReader.getFileHeader();
@@ -85,6 +100,7 @@ public List<BAMIntervalRecord> getRecords(String reference, RangeAdapter range,
                 ref = guessSequence();
             }
 
+            prefetch(ref, range);
             recordIterator = samFileReader.query(ref, range.getFrom(), range.getTo(), false);
 
 
@@ -116,6 +132,49 @@ public List<BAMIntervalRecord> getRecords(String reference, RangeAdapter range,
         return result;
     }
 
+    /**
+     * Tell the HTTP stream which byte ranges the upcoming query will read, so that they can be
+     * fetched in parallel rather than one read-ahead at a time.  Each chunk's end offset points
+     * into the block where it finishes, so the range is extended to cover a full BGZF block.
+     */
+    private void prefetch(String ref, RangeAdapter range) {
+        if (chunkIndex != null) {
+            try {
+                List<long[]> chunks = chunkIndex.getChunks(samFileHeader.getSequenceIndex(ref), range.getFrom() - 1, range.getTo());
+                long[] starts = new long[chunks.size()];
+                long[] ends = new long[chunks.size()];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = chunks.get(i)[0] >>> 16;
+                    ends[i] = (chunks.get(i)[1] >>> 16) + 0x10000;
+                }
+                httpStream.prefetch(starts, ends);
+            } catch (IOException x) {
+                LOG.info("Unable to prefetch " + ref + ":" + range + " from " + uri, x);
+            }
+        }
+    }
+
+    /**
+     * Use the BAM index to determine whether the given range might contain any alignments,
+     * without actually reading them.  Used to skip over empty stretches of the genome when
+     * scanning an entire file.
+     *
+     * @param reference the reference name, as it appears in the BAM header
+     * @param range the range to be checked
+     * @return false if the index shows that there are no alignments in the range
+     */
+    public boolean mayHaveRecords(String reference, RangeAdapter range) {
+        int refIndex = samFileHeader.getSequenceIndex(reference);
+        if (refIndex < 0) {
+            return false;
+        }
+        if (samFileReader.hasIndex()) {
+            SAMFileSpan span = samFileReader.getIndex().getSpanOverlapping(refIndex, range.getFrom(), range.getTo());
+            return span != null && !span.isEmpty();
+        }
+        return true;
+    }
+
     /*
      * Use the length of the reference genome to guess which sequence from the dictionary
      * we should search for reads.
@@ -19,14 +19,13 @@
  */
 package savant.data.sources;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import net.sf.samtools.util.BlockCompressedInputStream;
 import org.apache.commons.logging.Log;
@@ -34,12 +33,13 @@
 
 import savant.api.adapter.BookmarkAdapter;
 import savant.api.adapter.DataSourceAdapter;
-import savant.api.adapter.RangeAdapter;
-import savant.api.util.RangeUtils;
 import savant.controller.BookmarkController;
 import savant.api.data.Record;
+import savant.settings.DirectorySettings;
 import savant.util.Bookmark;
+import savant.util.DictionaryIndex;
 import savant.util.IOUtils;
+import savant.util.MiscUtils;
 import savant.util.NetworkUtils;
 
 
@@ -55,12 +55,7 @@
      * Dictionary which keeps track of gene names and other searchable items for this track.
      * Note that regardless of their original case, all keys are stored as lower-case.
      */
-    private TreeMap<String, List<BookmarkAdapter>> dictionary;
-
-    /**
-     * So that we know how many entries this dictionary has.
-     */
-    private int dictionaryCount;
+    private DictionaryIndex dictionary;
 
     @Override
     public String getName() {
@@ -70,82 +65,98 @@ public String getName() {
     /**
      * Get the dictionary for performing lookups on the associated track.  Default
      * behaviour is to load it from a .dict file in the same location as the main URI.
+     * The .dict file is only read once, to build a memory-mapped DictionaryIndex;
+     * subsequent loads just map the existing index.  Dictionaries written by TabixFormatter
+     * are already sorted, so they are streamed straight into the index; older unsorted ones
+     * have to be read into memory and sorted first.
      */
     @Override
     public void loadDictionary() throws IOException {
-        TreeMap<String, List<BookmarkAdapter>> newDict = new TreeMap<String, List<BookmarkAdapter>>();
-        dictionaryCount = 0;
         URI dictionaryURI = URI.create(getURI().toString() + ".dict");
-        if (NetworkUtils.exists(dictionaryURI)) {
+        if (!NetworkUtils.exists(dictionaryURI)) {
+            return;
+        }
+        String hash = NetworkUtils.getHash(dictionaryURI.toURL());
+        File indexFile = getDictionaryIndexFile(dictionaryURI, hash);
+        if (!indexFile.exists()) {
             LOG.info("Starting to load dictionary from " + dictionaryURI);
-            int lineNum = 0;
             try {
-                String line = null;
                 InputStream input = new BlockCompressedInputStream(NetworkUtils.getSeekableStreamForURI(dictionaryURI));
-                while ((line = IOUtils.readLine(input)) != null) {
-                    String[] words = line.split("\\t");
-                    String key = words[0].toLowerCase();
-                    List<BookmarkAdapter> marks = newDict.get(key);
-                    if (marks == null) {
-                        marks = new ArrayList<BookmarkAdapter>();
-                        newDict.put(key, marks);
-                    }
-                    Bookmark newMark = new Bookmark(words[1], words[0]);
-                    for (BookmarkAdapter m: marks) {
-                        if (m.getReference().equals(newMark.getReference()) && RangeUtils.intersects(m.getRange(), newMark.getRange())) {
-                            RangeAdapter newRange = RangeUtils.union(m.getRange(), newMark.getRange());
-                            m.setRange(newRange);
-                            newMark = null;
-                            break;
+                boolean sorted;
+                try {
+                    sorted = DictionaryIndex.writeSorted(input, indexFile);
+                } finally {
+                    input.close();
+                }
+                if (!sorted) {
+                    LOG.info("Sorting dictionary from " + dictionaryURI + " in memory.");
+                    List<String> lines = new ArrayList<String>();
+                    input = new BlockCompressedInputStream(NetworkUtils.getSeekableStreamForURI(dictionaryURI));
+                    try {
+                        String line;
+                        while ((line = IOUtils.readLine(input)) != null) {
+                            lines.add(line);
                         }
+                    } finally {
+                        input.close();
                     }
-                    if (newMark != null) {
-                        marks.add(newMark);
-                        dictionaryCount++;
-                    }
-                    lineNum++;
+                    DictionaryIndex.write(lines, indexFile);
                 }
-                dictionary = newDict;
             } catch (ParseException x) {
-                throw new IOException("Parse error in dictionary at line " + lineNum, x);
+                throw new IOException("Parse error in dictionary " + dictionaryURI, x);
             } catch (NumberFormatException x) {
-                throw new IOException("Parse error in dictionary at line " + lineNum, x);
+                throw new IOException("Parse error in dictionary " + dictionaryURI, x);
             }
             LOG.info("Finished loading dictionary from " + dictionaryURI);
         }
+        dictionary = new DictionaryIndex(indexFile);
+    }
+
+    /**
+     * Determine where the index for our dictionary should live.  For a local file
+     * written by TabixFormatter, it will be right beside the .dict file.  Otherwise,
+     * it goes into the cache directory, named so that a changed .dict will produce
+     * a fresh index.  If the server gives us nothing to tell whether the .dict has
+     * changed, the index is only kept for this session.
+     */
+    private static File getDictionaryIndexFile(URI dictionaryURI, String hash) throws IOException {
+        if ("file".equals(dictionaryURI.getScheme())) {
+            File dictFile = new File(dictionaryURI);
+            File result = new File(dictFile.getPath() + ".idx");
+            if (result.exists() && result.lastModified() >= dictFile.lastModified()) {
+                return result;
+            }
+        }
+        File cacheDir = new File(DirectorySettings.getCacheDirectory(), "dictionaries");
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        String name = MiscUtils.getFilenameFromPath(dictionaryURI.getPath());
+        if (hash == null) {
+            File result = File.createTempFile(name + "-", ".idx", cacheDir);
+            result.delete();
+            result.deleteOnExit();
+            return result;
+        }
+        return new File(cacheDir, String.format("%s-%08x-%08x.idx", name, dictionaryURI.hashCode(), hash.hashCode()));
     }
 
     @Override
     public List<BookmarkAdapter> lookup(String key) {
         if (dictionary != null) {
-            if (key.endsWith("*")) {
-                // Looking for a prefix-match.  Get the submap from k0 (inclusive) to k1 (exclusive);
-                String k0 = key.substring(0, key.length() - 1);
-                String k1 = k0 + Character.MAX_VALUE;
-                Map<String, List<BookmarkAdapter>> subDict = dictionary.subMap(k0, k1);
-                List<BookmarkAdapter> result = new ArrayList<BookmarkAdapter>();
-                for (List<BookmarkAdapter> bms: subDict.values()) {
-                    result.addAll(bms);
-                }
-                return result;
-            } else {
-                // Looking for an exact match.
-                return dictionary.get(key);
-            }
+            return dictionary.lookup(key);
         }
         return null;
     }
     
     public int getDictionaryCount() {
-        return dictionaryCount;
+        return dictionary != null ? dictionary.getEntryCount() : 0;
     }
 
     public void addDictionaryToBookmarks() {
         if (dictionary != null) {
-            for (String k: dictionary.keySet()) {
-                for (BookmarkAdapter b: dictionary.get(k)) {
-                    BookmarkController.getInstance().addBookmark((Bookmark)b);
-                }
+            for (BookmarkAdapter b: dictionary.lookupPrefix("")) {
+                BookmarkController.getInstance().addBookmark((Bookmark)b);
             }
         }
     }
@@ -22,9 +22,12 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -40,6 +43,7 @@
 import savant.api.util.Resolution;
 import savant.controller.LocationController;
 import savant.data.types.GenericContinuousRecord;
+import savant.data.types.SummaryContinuousRecord;
 import savant.util.MiscUtils;
 import savant.util.Range;
 
@@ -55,11 +59,31 @@ public class TDFDataSource extends DataSource<GenericContinuousRecord> {
     private static final double LOG2 = Math.log(2.0);
     private static final int NOTIONAL_SCREEN_WIDTH = 2000;
 
+    /** Number of buckets in each cached chunk. */
+    private static final int CHUNK_SIZE = 512;
+
+    /** Maximum number of chunks retained in the cache. */
+    private static final int MAX_CACHED_CHUNKS = 64;
+
+    /** Indices into the arrays returned by getChunk(). */
+    private static final int MIN = 0, MEAN = 1, MAX = 2;
+
     private final TDFReader tdf;
     private final URI uri;
     private int maxZoom = -1;
     private String rawUnhomogenised;
 
+    /**
+     * Summaries of recently-viewed data, keyed by dataset name, bucket width, and chunk index.
+     * Since the dataset name includes the zoom-level, each zoom-level is cached separately.
+     */
+    private final Map<String, float[][]> chunkCache = new LinkedHashMap<String, float[][]>(MAX_CACHED_CHUNKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, float[][]> eldest) {
+            return size() > MAX_CACHED_CHUNKS;
+        }
+    };
+
     public TDFDataSource(URI uri) throws IOException {
         tdf = TDFReader.getReader(uri);
         this.uri = uri;
@@ -78,37 +102,26 @@ public Set<String> getReferenceNames() {
         return result;
     }
 
+    /**
+     * Retrieve the data for the given range, aggregated so that there is one record
+     * for each notional screen pixel.  Each record carries the minimum, mean, and
+     * maximum of the data which falls within its bucket.
+     */
     @Override
     public List<GenericContinuousRecord> getRecords(String ref, RangeAdapter r, Resolution res, RecordFilterAdapter filt) throws IOException, InterruptedException {
         List<GenericContinuousRecord> result = new ArrayList<GenericContinuousRecord>();
         TDFDataset ds = getTDFDataset(ref, (Range)r);
         if (ds != null) {
-            int nextPos = r.getFrom();
-            int rangeEnd = r.getTo() + 1;
-            int usefulStep = Math.max(1, r.getLength() / NOTIONAL_SCREEN_WIDTH);     // No need for more points than we have pixels.
-            List<TDFTile> tiles = ds.getTiles(r.getFrom(), rangeEnd);
-            for (TDFTile t : tiles) {
-                for (int i = 0; i < t.getSize() && nextPos <= rangeEnd; i++) {
-                    int datumEnd = t.getEndPosition(i);
-                    if (nextPos < datumEnd) {
-                        int datumStart = t.getStartPosition(i);
-                        // If there's a gap before the data starts, fill it with NaNs.
-                        if (datumStart == nextPos + 1 && usefulStep > 2) {
-                            // Special case.  TDF formatter occasionally leaves a gap of one base between tiles.  This isn't a real NaN.
-                            LOG.debug("Skipping NaN hole at " + nextPos);
-                        } else {
-                            while (nextPos < datumStart && nextPos <= rangeEnd) {
-                                result.add(GenericContinuousRecord.valueOf(ref, nextPos, Float.NaN));
-                                nextPos += usefulStep;
-                            }
-                        }
-                        float datum = t.getValue(0, i);
-                        LOG.debug("Tile " + i + " from " + datumStart + " to " + datumEnd + "=" + datum);
-                        while (nextPos < datumEnd && nextPos <= rangeEnd) {
-                            result.add(GenericContinuousRecord.valueOf(ref, nextPos, datum));
-                            nextPos += usefulStep;
-                        }
-                    }
+            int step = getBucketWidth(r.getLength());
+            int firstBucket = r.getFrom() / step;
+            int lastBucket = r.getTo() / step;
+            for (int c = firstBucket / CHUNK_SIZE; c <= lastBucket / CHUNK_SIZE; c++) {
+                float[][] chunk = getChunk(ds, step, c);
+                int b0 = Math.max(firstBucket, c * CHUNK_SIZE);
+                int b1 = Math.min(lastBucket, (c + 1) * CHUNK_SIZE - 1);
+                for (int b = b0; b <= b1; b++) {
+                    int i = b - c * CHUNK_SIZE;
+                    result.add(SummaryContinuousRecord.valueOf(ref, Math.max(b * step, r.getFrom()), chunk[MIN][i], chunk[MEAN][i], chunk[MAX][i]));
                 }
                 if (Thread.interrupted()) {
                     throw new InterruptedException();
@@ -118,6 +131,86 @@ public List<GenericContinuousRecord> getRecords(String ref, RangeAdapter r, Reso
         return result;
     }
 
+    /**
+     * Width (in bases) of each bucket for the given range.  We use powers of two so
+     * that the bucket grid stays put as the user pans, which lets us reuse cached chunks.
+     */
+    private static int getBucketWidth(int rangeLen) {
+        int step = 1;
+        while (step < rangeLen / NOTIONAL_SCREEN_WIDTH) {
+            step <<= 1;
+        }
+        return step;
+    }
+
+    /**
+     * Get the summary arrays for a chunk of <code>CHUNK_SIZE</code> consecutive buckets,
+     * computing them from the dataset's tiles if they aren't already cached.
+     *
+     * @param ds the dataset (which determines the zoom level)
+     * @param step width of each bucket in bases
+     * @param c index of the chunk
+     * @return three arrays, indexed by <code>MIN</code>, <code>MEAN</code>, and <code>MAX</code>
+     */
+    private float[][] getChunk(TDFDataset ds, int step, int c) {
+        String key = ds.getName() + "/" + step + "/" + c;
+        synchronized (chunkCache) {
+            float[][] result = chunkCache.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        float[] min = new float[CHUNK_SIZE];
+        float[] max = new float[CHUNK_SIZE];
+        double[] sum = new double[CHUNK_SIZE];
+        int[] covered = new int[CHUNK_SIZE];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+
+        int chunkStart = c * CHUNK_SIZE * step;
+        int chunkEnd = chunkStart + CHUNK_SIZE * step;
+        for (TDFTile t: ds.getTiles(chunkStart, chunkEnd - 1)) {
+            float[] data = t.getData(0);
+            int n = t.getSize();
+            for (int i = 0; i < n; i++) {
+                int datumStart = Math.max(t.getStartPosition(i), chunkStart);
+                int datumEnd = Math.min(t.getEndPosition(i), chunkEnd);
+                float datum = data[i];
+                if (datumStart >= chunkEnd) {
+                    break;
+                }
+                if (datumEnd <= datumStart || Float.isNaN(datum)) {
+                    continue;
+                }
+                int b0 = (datumStart - chunkStart) / step;
+                int b1 = (datumEnd - 1 - chunkStart) / step;
+                for (int b = b0; b <= b1; b++) {
+                    int bucketStart = chunkStart + b * step;
+                    int overlap = Math.min(datumEnd, bucketStart + step) - Math.max(datumStart, bucketStart);
+                    if (datum < min[b]) min[b] = datum;
+                    if (datum > max[b]) max[b] = datum;
+                    sum[b] += (double)datum * overlap;
+                    covered[b] += overlap;
+                }
+            }
+        }
+
+        float[] mean = new float[CHUNK_SIZE];
+        for (int b = 0; b < CHUNK_SIZE; b++) {
+            if (covered[b] > 0) {
+                mean[b] = (float)(sum[b] / covered[b]);
+            } else {
+                min[b] = mean[b] = max[b] = Float.NaN;
+            }
+        }
+        float[][] result = new float[][] { min, mean, max };
+        synchronized (chunkCache) {
+            chunkCache.put(key, result);
+        }
+        return result;
+    }
+
     @Override
     public URI getURI() {
         return uri;
@@ -125,6 +218,9 @@ public URI getURI() {
 
     @Override
     public void close() {
+        synchronized (chunkCache) {
+            chunkCache.clear();
+        }
         tdf.close();
     }
 
@@ -281,7 +281,7 @@ public URI getCytobandURI() {
     /**
      * Try to load the default genomes from our web-site.  If that fails, return an array containing 5 popular genomes.
      */
-    public static Genome[] getDefaultGenomes() {
+    public static synchronized Genome[] getDefaultGenomes() {
         if (defaultGenomes == null) {
             try {
                 List<Genome> result = new ArrayList<Genome>();
@@ -0,0 +1,57 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.data.types;
+
+
+/**
+ * Continuous record which summarises all the values which fall within a range of
+ * positions (typically one screen pixel's worth).  The value reported by <code>getValue()</code>
+ * is the mean; the minimum and maximum are retained so that peaks don't disappear
+ * when the data is zoomed out.
+ */
+public class SummaryContinuousRecord extends GenericContinuousRecord {
+
+    private final float min;
+    private final float max;
+
+    protected SummaryContinuousRecord(String reference, int position, float min, float mean, float max) {
+        super(reference, position, mean);
+        this.min = min;
+        this.max = max;
+    }
+
+    public static SummaryContinuousRecord valueOf(String reference, int position, float min, float mean, float max) {
+        return new SummaryContinuousRecord(reference, position, min, mean, max);
+    }
+
+    /**
+     * Smallest value within the summarised range.
+     */
+    public float getMin() {
+        return min;
+    }
+
+    /**
+     * Largest value within the summarised range.
+     */
+    public float getMax() {
+        return max;
+    }
+}
@@ -336,25 +336,14 @@ public void load() throws Exception {
                 public void handleEvent(GenomeChangedEvent event) {
                     GenomeController.getInstance().removeListener(this);
                     LOG.info("Received genomeChanged");
-                    for (int i = 0; i < trackPaths.size(); i++) {
-                        String path = trackPaths.get(i);
-                        DrawingMode mode = trackModes.get(i);
-                        if (!path.equals(genomePath)) {
-                            LOG.info("Adding ordinary track for " + path);
-                            FrameController.getInstance().addTrackFromPath(path, null, mode);
-                        }
-                    }
+                    loadOrdinaryTracks();
                 }
             });
             LOG.info("Adding sequence track for " + genomePath);
             FrameController.getInstance().addTrackFromPath(genomePath, DataFormat.SEQUENCE, null);
         } else {
             // Genome in place, so just load the tracks.
-            for (int i = 0; i < trackPaths.size(); i++) {
-                String path = trackPaths.get(i);
-                DrawingMode mode = trackModes != null ? trackModes.get(i) : null;
-                FrameController.getInstance().addTrackFromPath(path, null, mode);
-            }
+            loadOrdinaryTracks();
         }
         if (bookmarks != null && bookmarks.size() > 0) {
             BookmarkController.getInstance().addBookmarks(bookmarks);
@@ -363,4 +352,24 @@ public void handleEvent(GenomeChangedEvent event) {
             VariationController.getInstance().setControls(controls);
         }
     }
+
+    /**
+     * Load all tracks other than the genome's sequence track.  The frames are created in
+     * their saved order, but the tracks themselves are created concurrently.
+     */
+    private void loadOrdinaryTracks() {
+        List<String> paths = new ArrayList<String>(trackPaths.size());
+        List<DrawingMode> modes = new ArrayList<DrawingMode>(trackPaths.size());
+        for (int i = 0; i < trackPaths.size(); i++) {
+            String path = trackPaths.get(i);
+            if (!path.equals(genomePath)) {
+                LOG.info("Adding ordinary track for " + path);
+                paths.add(path);
+                modes.add(trackModes != null ? trackModes.get(i) : null);
+            }
+        }
+        if (paths.size() > 0) {
+            FrameController.getInstance().addTracksFromPaths(paths, modes);
+        }
+    }
 }
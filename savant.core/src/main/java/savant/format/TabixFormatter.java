@@ -33,6 +33,7 @@
 
 import savant.file.FileType;
 import savant.util.ColumnMapping;
+import savant.util.DictionaryIndex;
 
 
 /**
@@ -182,11 +183,13 @@ public void format() throws InterruptedException, IOException {
             if (dictionary.size() > 0) {
                 setProgress(0.75, "Creating dictionary file...");
                 output = new PrintWriter(new BlockCompressedOutputStream(outFile.getAbsolutePath() + ".dict"));
-                Collections.sort(dictionary);
+                // Case-insensitive, to match DictionaryIndex, so that remote copies can be indexed as they're streamed.
+                Collections.sort(dictionary, String.CASE_INSENSITIVE_ORDER);
                 for (String l: dictionary) {
                     output.print(l + "\n");
                 }
                 output.close();
+                DictionaryIndex.write(dictionary, new File(outFile.getAbsolutePath() + DictionaryIndex.EXTENSION));
             }
             setProgress(1.0, null);
         } catch (Exception x) {
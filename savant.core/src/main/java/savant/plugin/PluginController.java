@@ -20,6 +20,8 @@
 package savant.plugin;
 
 import java.awt.BorderLayout;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.io.*;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -49,6 +51,7 @@ public class PluginController extends Controller {
 
     static final Log LOG = LogFactory.getLog(PluginController.class);
     private static final String UNINSTALL_FILENAME = ".uninstall_plugins";
+    private static final String INDEX_FILENAME = "plugin-index.txt";
 
     private static PluginController instance;
 
@@ -59,6 +62,7 @@ public class PluginController extends Controller {
     private Map<String, String> pluginErrors = new LinkedHashMap<String, String>();
     private PluginLoader pluginLoader;
     private PluginIndex repositoryIndex = null;
+    private PluginDescriptorCache descriptorCache;
     
 
     /** SINGLETON **/
@@ -91,6 +95,7 @@ private PluginController() {
      */
     @SuppressWarnings("CallToThreadRun")
     public void loadPlugins(File pluginsDir) {
+        long t0 = System.currentTimeMillis();
         File[] files = pluginsDir.listFiles(new PluginFileFilter());
         for (File f: files) {
             try {
@@ -99,6 +104,9 @@ public void loadPlugins(File pluginsDir) {
                 LOG.warn("No compatible plugins found in " + f);
             }
         }
+        PluginDescriptorCache cache = getDescriptorCache();
+        LOG.info("Scanned " + files.length + " plugin files in " + (System.currentTimeMillis() - t0) + " ms (" + cache.getHits() + " from index).");
+        cache.save();
 
         // Check to see if we have any outdated plugins.
         if (pluginErrors.size() > 0) {
@@ -236,6 +244,37 @@ private JPanel initGUIPlugin(SavantPanelPlugin plugin) {
         return canvas;
     }
 
+    /**
+     * Create the canvas for a panel plugin, but defer calling the plugin's <code>init</code>
+     * method until the canvas is first shown.  Most plugins sit in hidden dock frames for the
+     * whole session, so there's no point in having them build their UI at startup.
+     */
+    private JPanel initLazyGUIPlugin(final SavantPanelPlugin plugin) {
+        final JPanel canvas = new JPanel();
+        canvas.setLayout(new BorderLayout());
+        canvas.addHierarchyListener(new HierarchyListener() {
+            @Override
+            public void hierarchyChanged(HierarchyEvent evt) {
+                if ((evt.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && canvas.isShowing()) {
+                    canvas.removeHierarchyListener(this);
+                    PluginDescriptor desc = plugin.getDescriptor();
+                    try {
+                        long t0 = System.currentTimeMillis();
+                        plugin.init(canvas);
+                        LOG.info("Initialised " + desc + " on first use in " + (System.currentTimeMillis() - t0) + " ms.");
+                    } catch (Throwable x) {
+                        LOG.error("Unable to initialise " + desc.getName(), x);
+                        pluginErrors.put(desc.getID(), x.getClass().getName());
+                        DialogUtils.displayMessage("Plugin Not Loaded", String.format("<html>The following plugin could not be initialised:<br><br><i>%s \u2013 %s</i></html>", desc.getID(), x));
+                    }
+                    canvas.revalidate();
+                    canvas.repaint();
+                }
+            }
+        });
+        return canvas;
+    }
+
     /**
      * Give a DataSource plugin a chance to initalise itself.
      * @param plugin
@@ -294,17 +333,24 @@ private void copyBuiltInPlugins() {
 
 
     private void loadPlugin(PluginDescriptor desc) throws Throwable {
+        long t0 = System.currentTimeMillis();
         Class pluginClass = pluginLoader.loadClass(desc.getClassName());
         SavantPlugin plugin = (SavantPlugin)pluginClass.newInstance();
         plugin.setDescriptor(desc);
+        long t1 = System.currentTimeMillis();
 
         // Init the plugin based on its type
         JPanel canvas = null;
         if (plugin instanceof SavantPanelPlugin) {
-            canvas = initGUIPlugin((SavantPanelPlugin)plugin);
+            if (desc.isEagerlyActivated()) {
+                canvas = initGUIPlugin((SavantPanelPlugin)plugin);
+            } else {
+                canvas = initLazyGUIPlugin((SavantPanelPlugin)plugin);
+            }
         } else if (plugin instanceof SavantDataSourcePlugin) {
             initSavantDataSourcePlugin((SavantDataSourcePlugin)plugin);
         }
+        LOG.info("Loaded " + desc + ": instantiated in " + (t1 - t0) + " ms, initialised in " + (System.currentTimeMillis() - t1) + " ms.");
         loadedPlugins.put(desc.getID(), plugin);
         fireEvent(new PluginEvent(PluginEvent.Type.LOADED, desc.getID(), canvas));
     }
@@ -314,7 +360,7 @@ private void loadPlugin(PluginDescriptor desc) throws Throwable {
      * data structures, but not yet loaded.
      */
     public PluginDescriptor addPlugin(File f) throws PluginVersionException {
-        PluginDescriptor desc = PluginDescriptor.fromFile(f);
+        PluginDescriptor desc = getDescriptorCache().getDescriptor(f);
         if (desc != null) {
             LOG.info("Found usable " + desc + " in " + f.getName());
             PluginDescriptor existingDesc = knownPlugins.get(desc.getID());
@@ -337,6 +383,13 @@ public PluginDescriptor addPlugin(File f) throws PluginVersionException {
         return desc;
     }
 
+    private synchronized PluginDescriptorCache getDescriptorCache() {
+        if (descriptorCache == null) {
+            descriptorCache = new PluginDescriptorCache(new File(DirectorySettings.getSavantDirectory(), INDEX_FILENAME));
+        }
+        return descriptorCache;
+    }
+
     /**
      * Copy the given file to the plugins directory, add it, and load it.
      * @param selectedFile
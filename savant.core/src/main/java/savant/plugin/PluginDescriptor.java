@@ -66,6 +66,7 @@ private enum PluginXMLAttribute {
         CLASS,
         SDK_VERSION,
         NAME,
+        ACTIVATION,
         IGNORED
     };
 
@@ -79,9 +80,12 @@ private enum PluginXMLAttribute {
     final File[] libs;
     final URL[] downloads;
 
+    /** If true, the plugin is initialised at startup, rather than when its panel is first shown. */
+    final boolean eager;
+
     private static XMLStreamReader reader;
 
-    private PluginDescriptor(String className, String id, String version, String name, String sdkVersion, File file, File[] libs, URL[] downloads) {
+    PluginDescriptor(String className, String id, String version, String name, String sdkVersion, File file, File[] libs, URL[] downloads, boolean eager) {
         if (className == null || id == null || version == null || name == null || file == null) {
             throw new IllegalArgumentException("Null argument passed to PluginDescriptor constructor.");
         }
@@ -93,6 +97,7 @@ private PluginDescriptor(String className, String id, String version, String nam
         this.file = file;
         this.libs = libs;
         this.downloads = downloads;
+        this.eager = eager;
     }
 
     @Override
@@ -124,6 +129,15 @@ public File getFile() {
         return file;
     }
 
+    /**
+     * Panel plugins are normally initialised when their panel is first shown.  Plugins which need to
+     * be active even when hidden (e.g. because they draw on tracks) can specify
+     * <code>activation="eager"</code> in plugin.xml.
+     */
+    public boolean isEagerlyActivated() {
+        return eager;
+    }
+
     /**
      * Retrieve an array of all jar files required by this plugin.  In most cases, this
      * will just be the plugin's own jar, but in 2.0.0 a plugin can use &lt;lib> tags to
@@ -179,6 +193,7 @@ private static PluginDescriptor fromStream(InputStream input, File f) throws XML
         String version = null;
         String sdkVersion = null;
         String name = null;
+        boolean eager = false;
         List<File> libs = new ArrayList<File>();
         List<URL> downloads = new ArrayList<URL>();
         do {
@@ -191,6 +206,7 @@ private static PluginDescriptor fromStream(InputStream input, File f) throws XML
                             version = readAttribute(PluginXMLAttribute.VERSION);
                             sdkVersion = readAttribute(PluginXMLAttribute.SDK_VERSION);
                             name = readAttribute(PluginXMLAttribute.NAME);
+                            eager = "eager".equals(readAttribute(PluginXMLAttribute.ACTIVATION));
                             break;
                         case ATTRIBUTE:
                             // Older plugins store the SDK version in a special <attributes> tag.
@@ -219,7 +235,7 @@ private static PluginDescriptor fromStream(InputStream input, File f) throws XML
         } while (reader != null);
 
         // Will throw an IllegalArgumentException if one of our required attributes has not been set.
-        return new PluginDescriptor(className, id, version, name, sdkVersion, f, libs.toArray(new File[0]), downloads.toArray(new URL[0]));
+        return new PluginDescriptor(className, id, version, name, sdkVersion, f, libs.toArray(new File[0]), downloads.toArray(new URL[0]), eager);
     }
  
     /**
@@ -231,9 +247,13 @@ public static PluginDescriptor fromFile(File f) throws PluginVersionException {
             if (f.getName().endsWith(".jar")) {
                 // For a true Java plugin, the descriptor is inside a jar file.
                 JarFile jar = new JarFile(f);
-                ZipEntry entry = jar.getEntry("plugin.xml");
-                if (entry != null) {
-                    return fromStream(jar.getInputStream(entry), f);
+                try {
+                    ZipEntry entry = jar.getEntry("plugin.xml");
+                    if (entry != null) {
+                        return fromStream(jar.getInputStream(entry), f);
+                    }
+                } finally {
+                    jar.close();
                 }
             } else {
                 // For a tool, the descriptor is just a bare XML file.
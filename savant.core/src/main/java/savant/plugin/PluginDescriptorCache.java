@@ -0,0 +1,198 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.plugin;
+
+import java.io.*;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Persistent index of the descriptors found in the plugins directory, so that we don't have to
+ * open every jar and parse its plugin.xml at startup.  Entries are keyed by path, and are only
+ * used if the file's size and modification time are unchanged.  Files which turned out not to
+ * contain a plugin (e.g. libraries) are remembered too.
+ */
+class PluginDescriptorCache {
+    private static final Log LOG = LogFactory.getLog(PluginDescriptorCache.class);
+
+    /** Bump this whenever the format of the index changes. */
+    private static final String HEADER = "#savant-plugin-index 1";
+
+    private final File indexFile;
+
+    /** Entries read from the index file. */
+    private final Map<String, Entry> oldEntries = new HashMap<String, Entry>();
+
+    /** Entries for files seen during this session; only these get written back. */
+    private final Map<String, Entry> newEntries = new LinkedHashMap<String, Entry>();
+
+    private int hits, misses;
+
+    PluginDescriptorCache(File f) {
+        indexFile = f;
+        if (indexFile.exists()) {
+            try {
+                load();
+            } catch (IOException x) {
+                LOG.info("Unable to read plugin index " + indexFile + "; plugins will be rescanned.", x);
+                oldEntries.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the descriptor for the given file, either from the index or by parsing the file.
+     *
+     * @throws PluginVersionException if the file does not contain a valid plugin
+     */
+    PluginDescriptor getDescriptor(File f) throws PluginVersionException {
+        String path = f.getAbsolutePath();
+        Entry e = oldEntries.get(path);
+        if (e != null && e.length == f.length() && e.modified == f.lastModified()) {
+            hits++;
+        } else {
+            misses++;
+            e = new Entry(f.length(), f.lastModified());
+            try {
+                e.desc = PluginDescriptor.fromFile(f);
+            } catch (PluginVersionException ignored) {
+                // Not a plugin.  Remember that fact, so we don't have to look at it again.
+            }
+        }
+        newEntries.put(path, e);
+        if (e.desc == null) {
+            throw new PluginVersionException(f.getName() + " did not contain a valid plugin");
+        }
+        return e.desc;
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Write the entries which were used during this session back to the index file.
+     */
+    void save() {
+        if (misses == 0 && newEntries.size() == oldEntries.size()) {
+            // Nothing has changed.
+            return;
+        }
+        try {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8")));
+            try {
+                writer.println(HEADER);
+                for (Map.Entry<String, Entry> e: newEntries.entrySet()) {
+                    writer.println(e.getValue().toLine(e.getKey()));
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException x) {
+            LOG.warn("Unable to write plugin index " + indexFile, x);
+        }
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+        try {
+            if (!HEADER.equals(reader.readLine())) {
+                LOG.info("Ignoring outdated plugin index " + indexFile);
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                Entry e = new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+                File f = new File(fields[0]);
+                if (fields.length >= 11) {
+                    e.desc = new PluginDescriptor(fields[3], fields[4], fields[5], fields[6], StringUtils.trimToNull(fields[7]), f, parseFiles(fields[8]), parseURLs(fields[9]), Boolean.parseBoolean(fields[10]));
+                }
+                oldEntries.put(fields[0], e);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static File[] parseFiles(String s) {
+        if (s.length() == 0) {
+            return new File[0];
+        }
+        String[] paths = s.split("\\|");
+        File[] result = new File[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            result[i] = new File(paths[i]);
+        }
+        return result;
+    }
+
+    private static URL[] parseURLs(String s) throws IOException {
+        if (s.length() == 0) {
+            return new URL[0];
+        }
+        String[] urls = s.split("\\|");
+        URL[] result = new URL[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            result[i] = new URL(urls[i]);
+        }
+        return result;
+    }
+
+    private static class Entry {
+        final long length;
+        final long modified;
+
+        /** Descriptor for the file, or null if it's not a plugin. */
+        PluginDescriptor desc;
+
+        Entry(long len, long mod) {
+            length = len;
+            modified = mod;
+        }
+
+        String toLine(String path) {
+            StringBuilder result = new StringBuilder();
+            result.append(path).append('\t').append(length).append('\t').append(modified);
+            if (desc != null) {
+                result.append('\t').append(desc.className);
+                result.append('\t').append(desc.id);
+                result.append('\t').append(desc.version);
+                result.append('\t').append(desc.name);
+                result.append('\t').append(StringUtils.defaultString(desc.sdkVersion));
+                result.append('\t').append(StringUtils.join(desc.libs, '|'));
+                result.append('\t').append(StringUtils.join(desc.downloads, '|'));
+                result.append('\t').append(desc.eager);
+            }
+            return result.toString();
+        }
+    }
+}
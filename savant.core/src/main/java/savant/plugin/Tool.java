@@ -23,11 +23,18 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.swing.*;
@@ -36,7 +43,7 @@
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
-import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -46,6 +53,7 @@
 import savant.api.util.Listener;
 import savant.api.util.TrackUtils;
 import savant.controller.FrameController;
+import savant.controller.LocationController;
 import savant.file.FileType;
 import savant.format.SavantFileFormatter;
 import savant.format.SavantFileFormatterUtils;
@@ -69,11 +77,26 @@ public class Tool extends SavantPanelPlugin {
     /** Portion of tool execution which is devoted to actual execution. */
     private static final double WORK_PORTION = 0.75;
 
+    /** Ranges shorter than this aren't worth splitting into shards. */
+    private static final int MIN_SHARD_LENGTH = 1000000;
+
     private String baseCommand;
     private Pattern progressRegex;
     private Pattern errorRegex;
     private JTextArea console;
 
+    /**
+     * If non-null, the tool can be run as several concurrent processes over separate regions,
+     * with the outputs merged afterwards.  Specifies the merge method ("vcf" or "bam").
+     */
+    private String scatterMerge;
+
+    /** Maximum number of processes to run at once when scattering. */
+    private int scatterProcesses = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    /** Number of shard processes to run at once for the current run, allowing for memory. */
+    private int shardProcessLimit;
+
     List<ToolArgument> arguments = new ArrayList<ToolArgument>();
 
     private JPanel mainPanel;
@@ -89,6 +112,12 @@ public class Tool extends SavantPanelPlugin {
     boolean loadUponCompletion = true;
     private Process toolProc;
 
+    /** Processes running for individual shards. */
+    private final List<Process> shardProcs = Collections.synchronizedList(new ArrayList<Process>());
+
+    /** Inputs which are being fed to the tool through named pipes, rather than being exported in advance. */
+    private final Map<ToolArgument, File> pipedInputs = new HashMap<ToolArgument, File>();
+
     @Override
     public void init(JPanel panel) {
         mainPanel = panel;
@@ -127,6 +156,7 @@ public void actionPerformed(ActionEvent ae) {
                     toolProc = null;
                     p.destroy();
                 }
+                destroyShardProcesses();
                 showCard("Settings");
             }
         });
@@ -167,6 +197,12 @@ void parseDescriptor() throws XMLStreamException, FileNotFoundException {
                         progressRegex = Pattern.compile(reader.getElementText());
                     } else if (elemName.equals("error")) {
                         errorRegex = Pattern.compile(reader.getElementText());
+                    } else if (elemName.equals("scatter")) {
+                        scatterMerge = reader.getAttributeValue(null, "merge");
+                        String procs = reader.getAttributeValue(null, "processes");
+                        if (procs != null) {
+                            scatterProcesses = Integer.parseInt(procs);
+                        }
                     }
                     break;
                 case XMLStreamConstants.END_DOCUMENT:
@@ -232,6 +268,15 @@ void checkCommandLine() {
     }
 
     List<String> buildCommandLine() throws IOException {
+        return buildCommandLine(null);
+    }
+
+    /**
+     * Build the command line for running the tool.
+     *
+     * @param shard if non-null, the command line is built to process just the shard's region, writing to the shard's output file
+     */
+    List<String> buildCommandLine(Shard shard) throws IOException {
         List<String> commandLine = new ArrayList<String>();
         commandLine.addAll(Arrays.asList(baseCommand.split("\\s")));
         
@@ -250,7 +295,11 @@ List<String> buildCommandLine() throws IOException {
         }
 
         for (ToolArgument a: arguments) {
-            if (a.value == null) {
+            if (shard != null && a.type == ToolArgument.Type.RANGE) {
+                // Each shard gets its own range, even if the tool as a whole is being run on the entire genome.
+                commandLine.add(a.flag);
+                commandLine.add(formatRange(shard.ref, shard.range));
+            } else if (a.value == null) {
                 if (a.required) {
                     throw new IllegalArgumentException(String.format("Required argument %s (%s) does not have a value.", a.flag, a.name));
                 }
@@ -266,7 +315,16 @@ List<String> buildCommandLine() throws IOException {
                     try {
                         switch (a.type) {
                             case BAM_INPUT_FILE:
-                                commandLine.add(getLocalFile(a.value, true).getAbsolutePath());
+                                if (shard != null) {
+                                    commandLine.add(getLocalFile(a.value, true, shard.ref, shard.range).getAbsolutePath());
+                                } else if (pipedInputs.containsKey(a)) {
+                                    commandLine.add(pipedInputs.get(a).getAbsolutePath());
+                                } else {
+                                    commandLine.add(getLocalFile(a.value, true).getAbsolutePath());
+                                }
+                                break;
+                            case OUTPUT_FILE:
+                                commandLine.add(shard != null ? shard.output.getAbsolutePath() : getStringValue(a));
                                 break;
                             case FASTA_INPUT_FILE:
                                 commandLine.add(getLocalFile(a.value, false).getAbsolutePath());
@@ -295,17 +353,29 @@ public String getStringValue(ToolArgument a) throws ParseException {
             case RANGE:
                 parseWorkingRange(a.value);
                 if (workingRef != null) {
-                    String ref = useHomoRefs ? MiscUtils.homogenizeSequence(workingRef) : workingRef;
-                    if (workingRange != null) {
-                        return String.format("%s:%d-%d", ref, workingRange.getFrom(), workingRange.getTo());
-                    }
-                    return ref;
+                    return formatRange(workingRef, workingRange);
                 } 
                 break;
         }
         return a.value;
     }
 
+    /**
+     * Format a range for the tool's command line.
+     *
+     * @param ref the reference (must be non-null)
+     * @param range the range within the reference (may be null)
+     */
+    private String formatRange(String ref, RangeAdapter range) {
+        if (useHomoRefs) {
+            ref = MiscUtils.homogenizeSequence(ref);
+        }
+        if (range != null) {
+            return String.format("%s:%d-%d", ref, range.getFrom(), range.getTo());
+        }
+        return ref;
+    }
+
     private void parseWorkingRange(String val) throws ParseException {
         if (val == null || val.length() == 0) {
             // Empty string means no range restriction.
@@ -333,6 +403,13 @@ private void parseWorkingRange(String val) throws ParseException {
      * @param canUseDirectly for bam files, Savant uses them natively, so we may be able to use a local file directly
      */
     private File getLocalFile(String fileOrURI, boolean canUseDirectly) throws IOException {
+        return getLocalFile(fileOrURI, canUseDirectly, workingRef, workingRange);
+    }
+
+    /**
+     * Get the local file which contains the data for the given argument over the given region.
+     */
+    private File getLocalFile(String fileOrURI, boolean canUseDirectly, String ref, RangeAdapter range) throws IOException {
         
         URI uri = NetworkUtils.getURIFromPath(fileOrURI);
 
@@ -354,14 +431,14 @@ private File getLocalFile(String fileOrURI, boolean canUseDirectly) throws IOExc
         // or it may already be in our cache.
         if (RemoteFileCache.findCacheEntry(source.toString()) == null) {
             // Couldn't find exported file for full genome.  Perhaps just for the current chromosome?
-            if (workingRef != null) {
+            if (ref != null) {
                 int lastDot = source.lastIndexOf(".");
-                source.insert(lastDot, "-" + workingRef);
+                source.insert(lastDot, "-" + ref);
                 if (RemoteFileCache.findCacheEntry(source.toString()) == null) {
-                    if (workingRange != null) {
+                    if (range != null) {
                         // No existing chromosome file, so just request the subrange of interest.
                         lastDot = source.lastIndexOf(".");
-                        source.insert(lastDot, String.format(":%d-%d", workingRange.getFrom(), workingRange.getTo()));
+                        source.insert(lastDot, String.format(":%d-%d", range.getFrom(), range.getTo()));
                     }
                 }
             }
@@ -385,8 +462,192 @@ private void showCard(String card) {
         ((CardLayout)mainPanel.getLayout()).show(mainPanel, card);
     }
 
+    /**
+     * Create a named pipe through which an input can be streamed to the tool.
+     *
+     * @param suffix extension for the pipe's name (some tools identify their inputs by extension)
+     * @return the newly-created pipe, or null if named pipes aren't available on this platform
+     */
+    private static File createPipe(String suffix) {
+        if (!MiscUtils.WINDOWS) {
+            try {
+                File f = File.createTempFile("savant", suffix);
+                f.delete();
+                Process p = new ProcessBuilder("mkfifo", f.getAbsolutePath()).start();
+                if (p.waitFor() == 0) {
+                    f.deleteOnExit();
+                    return f;
+                }
+                LOG.info("mkfifo failed with status " + p.exitValue() + "; inputs will be exported to files.");
+            } catch (IOException x) {
+                LOG.info("Unable to create named pipe; inputs will be exported to files.", x);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return null;
+    }
+
+    private void destroyShardProcesses() {
+        synchronized (shardProcs) {
+            for (Process p: shardProcs) {
+                p.destroy();
+            }
+            shardProcs.clear();
+        }
+    }
+
+    /**
+     * Split the working range into shards which can be processed concurrently.  A whole-genome
+     * run is split by reference; a single reference (or range within it) is split into
+     * roughly equal intervals.
+     *
+     * @param output the tool's final output file, used to name the shards' outputs
+     * @return the shards, or null if the tool should be run as a single process
+     */
+    private List<Shard> planShards(File output) {
+        if (scatterMerge == null || output == null) {
+            return null;
+        }
+        shardProcessLimit = getShardProcessLimit();
+        if (shardProcessLimit < 2) {
+            return null;
+        }
+        // Without a range argument, there's no way to restrict each process to its own shard.
+        ToolArgument rangeArg = null;
+        for (ToolArgument a: arguments) {
+            if (a.type == ToolArgument.Type.RANGE) {
+                rangeArg = a;
+            }
+        }
+        if (rangeArg == null) {
+            return null;
+        }
+        try {
+            parseWorkingRange(rangeArg.enabled ? rangeArg.value : null);
+        } catch (ParseException x) {
+            LOG.info("Unable to parse range \"" + rangeArg.value + "\"; running as a single process.", x);
+            return null;
+        }
+        LocationController lc = LocationController.getInstance();
+        List<Shard> shards = new ArrayList<Shard>();
+        if (workingRef == null) {
+            for (String ref: lc.getReferenceNames()) {
+                shards.add(new Shard(shards.size(), ref, new Range(1, lc.getReferenceLength(ref)), output));
+            }
+        } else {
+            RangeAdapter r = workingRange != null ? workingRange : new Range(1, lc.getReferenceLength(workingRef));
+            int numShards = Math.min(shardProcessLimit, (r.getLength() + MIN_SHARD_LENGTH - 1) / MIN_SHARD_LENGTH);
+            int shardLength = (r.getLength() + numShards - 1) / numShards;
+            for (int from = r.getFrom(); from <= r.getTo(); from += shardLength) {
+                shards.add(new Shard(shards.size(), workingRef, new Range(from, Math.min(from + shardLength - 1, r.getTo())), output));
+            }
+        }
+        return shards.size() > 1 ? shards : null;
+    }
+
+    /**
+     * Number of shard processes which can run at once.  Each process gets the heap given by the
+     * tool's -Xmx option, so no more are run than will fit into the physical memory left over
+     * after our own heap.
+     */
+    private int getShardProcessLimit() {
+        int limit = scatterProcesses;
+        long heap = getToolHeapSize();
+        long physical = getPhysicalMemorySize();
+        if (heap > 0 && physical > 0) {
+            long available = physical - Runtime.getRuntime().maxMemory();
+            limit = (int)Math.max(1, Math.min(limit, available / heap));
+            LOG.info(String.format("%dMB physical memory, %dMB per process; running up to %d shards at once.", physical >> 20, heap >> 20, limit));
+        }
+        return limit;
+    }
+
+    /**
+     * Maximum heap size given to the tool by a -Xmx option on its command line.
+     *
+     * @return the heap size in bytes, or -1 if the tool isn't a Java program with an -Xmx option
+     */
+    private long getToolHeapSize() {
+        Matcher m = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)").matcher(baseCommand);
+        if (m.find()) {
+            long size = Long.parseLong(m.group(1));
+            switch (Character.toLowerCase(m.group(2).length() > 0 ? m.group(2).charAt(0) : ' ')) {
+                case 'k':
+                    return size << 10;
+                case 'm':
+                    return size << 20;
+                case 'g':
+                    return size << 30;
+                default:
+                    return size;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the total physical memory in bytes, or -1 if the JVM can't tell us
+     */
+    private static long getPhysicalMemorySize() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)os).getTotalPhysicalMemorySize();
+        }
+        return -1;
+    }
+
+    /**
+     * The file to which the tool will write its output.
+     */
+    private File getOutputFile() {
+        for (ToolArgument a: arguments) {
+            if (a.enabled && a.type == ToolArgument.Type.OUTPUT_FILE && a.value != null) {
+                return new File(a.value);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A region which is processed by a single instance of the tool when running in scatter/gather mode.
+     */
+    static class Shard {
+        final int index;
+        final String ref;
+        final RangeAdapter range;
+
+        /** Temporary output for this shard, alongside the tool's final output. */
+        final File output;
+
+        Shard(int index, String ref, RangeAdapter range, File finalOutput) {
+            this.index = index;
+            this.ref = ref;
+            this.range = range;
+            String name = finalOutput.getName();
+            int dot = name.lastIndexOf('.');
+            String base = dot > 0 ? name.substring(0, dot) : name;
+            String ext = dot > 0 ? name.substring(dot) : "";
+            output = new File(finalOutput.getParentFile(), String.format("%s.part%d%s", base, index, ext));
+        }
+
+        void deleteOutput() {
+            output.delete();
+            String path = output.getPath();
+            new File(path + ".idx").delete();
+            new File(path + ".bai").delete();
+            int dot = path.lastIndexOf('.');
+            if (dot > 0) {
+                new File(path.substring(0, dot) + ".bai").delete();
+            }
+        }
+    }
+
     private class ToolWorker extends BackgroundWorker<File> {
         List<ToolArgument> missingFiles = new ArrayList<ToolArgument>();
+
+        /** Exit status of the tool (only collected when inputs are being piped). */
+        int toolStatus;
         int inputIndex;
         private String errorMessage;
         private File destFile;
@@ -404,10 +665,15 @@ protected File doInBackground() throws Exception {
             console.setText("");
 
             progressInfo.setText("Preparing input files\u2026");
-            prepareInputs();
+            List<Shard> shards = planShards(getOutputFile());
+            prepareInputs(shards != null);
 
-            progressInfo.setText("Running tool\u2026");
-            runTool();
+            if (shards != null) {
+                runShards(shards);
+            } else {
+                progressInfo.setText("Running tool\u2026");
+                runTool();
+            }
 
             if (loadUponCompletion) {
                 String destPath = destFile.getAbsolutePath();
@@ -443,15 +709,26 @@ protected void showSuccess(File result) {
          * Once the files have been set up, we have an extra step of bullshit, which
          * involves generating fake .fai and .dict files for our sequence.
          */
-        private void prepareInputs() throws IOException, InterruptedException {
+        private void prepareInputs(boolean sharded) throws IOException, InterruptedException {
             ToolArgument bamArg = null;
+            pipedInputs.clear();
             for (ToolArgument a: arguments) {
                 if (a.enabled) {
                     switch (a.type) {
                         case BAM_INPUT_FILE:
-                            // Remote URLs will need to be downloaded.
-                            if (!NetworkUtils.getURIFromPath(a.value).getScheme().equals("file")) {
-                                missingFiles.add(a);
+                            // Remote URLs will need to be downloaded.  When sharding, this is done separately for each shard.
+                            // If the tool reads the file sequentially and we haven't already got a local copy, we can
+                            // stream it to the tool through a pipe instead.
+                            if (!sharded && !NetworkUtils.getURIFromPath(a.value).getScheme().equals("file")) {
+                                File pipe = null;
+                                if (a.streamable && !getLocalFile(a.value, true).exists()) {
+                                    pipe = createPipe(".bam");
+                                }
+                                if (pipe != null) {
+                                    pipedInputs.put(a, pipe);
+                                } else {
+                                    missingFiles.add(a);
+                                }
                             }
                             bamArg = a;
                             break;
@@ -514,11 +791,413 @@ public void handleEvent(DownloadEvent event) {
             }
         }
 
+        /**
+         * Run the tool as several concurrent processes, each over its own region, and merge
+         * the results.  Inputs for each shard are prepared in parallel before any of the
+         * processes are started.
+         */
+        private void runShards(final List<Shard> shards) throws Exception {
+            final int n = shards.size();
+            final double[] progress = new double[n];
+            final AtomicInteger threadNum = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(shardProcessLimit, n), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ToolShard-" + threadNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (final Shard sh: shards) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            prepareShardInputs(sh, new Listener<Double>() {
+                                @Override
+                                public void handleEvent(Double fraction) {
+                                    updateShardProgress(progress, sh.index, fraction, PREP_PORTION, 0.0);
+                                }
+                            });
+                            return null;
+                        }
+                    }));
+                }
+                waitForShards(futures);
+
+                progressInfo.setText(String.format("Running tool on %d regions\u2026", n));
+                Arrays.fill(progress, 0.0);
+                futures.clear();
+                for (final Shard sh: shards) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            runShard(sh, new Listener<Double>() {
+                                @Override
+                                public void handleEvent(Double fraction) {
+                                    updateShardProgress(progress, sh.index, fraction, WORK_PORTION, PREP_PORTION);
+                                }
+                            });
+                            return null;
+                        }
+                    }));
+                }
+                waitForShards(futures);
+
+                progressInfo.setText("Merging results\u2026");
+                showProgress(-1.0);
+                if ("bam".equalsIgnoreCase(scatterMerge)) {
+                    mergeBAMOutputs(shards);
+                } else {
+                    mergeVCFOutputs(shards);
+                }
+                showProgress(1.0);
+            } finally {
+                executor.shutdownNow();
+                destroyShardProcesses();
+                for (Shard sh: shards) {
+                    sh.deleteOutput();
+                }
+            }
+        }
+
+        /**
+         * Wait for all the shards' tasks to complete.  If any of them fails, the others are
+         * abandoned and the failure is rethrown.
+         */
+        private void waitForShards(List<Future<?>> futures) throws Exception {
+            try {
+                for (Future<?> f: futures) {
+                    f.get();
+                }
+            } catch (ExecutionException x) {
+                for (Future<?> f: futures) {
+                    f.cancel(true);
+                }
+                destroyShardProcesses();
+                Throwable cause = x.getCause();
+                throw cause instanceof Exception ? (Exception)cause : x;
+            }
+        }
+
+        /**
+         * Combine the progress of the individual shards into a single figure for the progress bar.
+         */
+        private void updateShardProgress(double[] progress, int index, double fraction, double portion, double base) {
+            double total = 0.0;
+            synchronized (progress) {
+                progress[index] = fraction;
+                for (double p: progress) {
+                    total += p;
+                }
+            }
+            showProgress(base + portion * total / progress.length);
+        }
+
+        /**
+         * Export any remote BAM inputs over the shard's region.
+         */
+        private void prepareShardInputs(Shard sh, final Listener<Double> progressListener) throws IOException, InterruptedException {
+            for (ToolArgument a: arguments) {
+                if (a.enabled && a.type == ToolArgument.Type.BAM_INPUT_FILE && !NetworkUtils.getURIFromPath(a.value).getScheme().equals("file")) {
+                    File f = getLocalFile(a.value, true, sh.ref, sh.range);
+                    if (!f.exists()) {
+                        LOG.info(f + " not found, exporting.");
+                        TrackExporter exp = TrackExporter.getExporter(a.value, f);
+                        exp.addListener(new Listener<DownloadEvent>() {
+                            @Override
+                            public void handleEvent(DownloadEvent event) {
+                                switch (event.getType()) {
+                                    case PROGRESS:
+                                        if (event.getProgress() >= 0.0) {
+                                            progressListener.handleEvent(event.getProgress());
+                                        }
+                                        break;
+                                    case COMPLETED:
+                                        try {
+                                            RemoteFileCache.updateCacheEntry(event.getFile());
+                                        } catch (Exception x) {
+                                            LOG.error("Unable to update cache entry for " + event.getFile(), x);
+                                        }
+                                        break;
+                                }
+                            }
+                        });
+                        exp.export(sh.ref, sh.range);
+                    }
+                }
+            }
+            progressListener.handleEvent(1.0);
+        }
+
+        /**
+         * Run the tool over a single shard.  Output is copied to the console, prefixed by the shard's region.
+         */
+        private void runShard(Shard sh, Listener<Double> progressListener) throws IOException, InterruptedException {
+            ProcessBuilder builder = new ProcessBuilder(buildCommandLine(sh));
+            builder.redirectErrorStream(true);
+            Process proc = builder.start();
+            shardProcs.add(proc);
+            String prefix = "[" + formatRange(sh.ref, sh.range) + "] ";
+            String shardError = null;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    console.append(prefix + line + "\n");
+                    if (errorRegex != null) {
+                        Matcher m = errorRegex.matcher(line);
+                        if (m.find()) {
+                            shardError = m.group(1);
+                            LOG.info("Retrieved error message \"" + shardError + "\" for " + prefix);
+                            continue;
+                        }
+                    }
+                    if (progressRegex != null) {
+                        Matcher m = progressRegex.matcher(line);
+                        if (m.find()) {
+                            try {
+                                progressListener.handleEvent(Double.valueOf(m.group(1)) * 0.01);
+                            } catch (NumberFormatException ignored) {
+                                LOG.info("Unable to interpret \"" + m.group(1) + "\" as a percentage.");
+                            }
+                        }
+                    }
+                }
+            } catch (IOException x) {
+                // If user cancelled the process, we'll get a harmless IOException trying to read its output.
+                if (!shardProcs.contains(proc)) {
+                    throw new InterruptedException();
+                }
+                throw x;
+            }
+            int status = proc.waitFor();
+            if (!shardProcs.remove(proc)) {
+                // Destroyed because of cancellation or another shard's failure.
+                throw new InterruptedException();
+            }
+            if (shardError != null) {
+                throw new IOException(shardError);
+            }
+            if (status != 0) {
+                throw new IOException(String.format("Tool exited with status %d while processing %s.", status, formatRange(sh.ref, sh.range)));
+            }
+            progressListener.handleEvent(1.0);
+        }
+
+        /**
+         * Concatenate the shards' VCF outputs.  The header is taken from the first shard.  Records
+         * outside a shard's own region are dropped, so that nothing is reported twice.
+         */
+        private void mergeVCFOutputs(List<Shard> shards) throws IOException {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(destFile)));
+            try {
+                boolean first = true;
+                for (Shard sh: shards) {
+                    if (!sh.output.exists()) {
+                        continue;
+                    }
+                    BufferedReader reader = new BufferedReader(new FileReader(sh.output));
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.startsWith("#")) {
+                                if (first) {
+                                    writer.println(line);
+                                }
+                            } else {
+                                String[] fields = line.split("\t", 3);
+                                if (fields.length > 1) {
+                                    int pos = Integer.parseInt(fields[1]);
+                                    if (pos >= sh.range.getFrom() && pos <= sh.range.getTo()) {
+                                        writer.println(line);
+                                    }
+                                }
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                    first = false;
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        /**
+         * Concatenate the shards' BAM outputs in the order of the BAM header's references, so that
+         * the result is still sorted.  Reads are kept only by the shard in which they start, and
+         * unplaced unmapped reads are taken from the last shard.
+         */
+        private void mergeBAMOutputs(List<Shard> shards) throws IOException {
+            SAMFileHeader header = null;
+            for (Shard sh: shards) {
+                if (sh.output.exists()) {
+                    SAMFileReader reader = new SAMFileReader(sh.output);
+                    header = reader.getFileHeader();
+                    reader.close();
+                    break;
+                }
+            }
+            if (header == null) {
+                return;
+            }
+
+            // The genome may list its references in a different order from the BAM header, but the
+            // presorted writer needs them in header order.
+            final SAMSequenceDictionary dict = header.getSequenceDictionary();
+            final Map<Shard, Integer> refIndices = new HashMap<Shard, Integer>();
+            for (Shard sh: shards) {
+                refIndices.put(sh, getSequenceIndex(dict, sh.ref));
+            }
+            List<Shard> sorted = new ArrayList<Shard>(shards);
+            Collections.sort(sorted, new Comparator<Shard>() {
+                @Override
+                public int compare(Shard a, Shard b) {
+                    int result = refIndices.get(a).compareTo(refIndices.get(b));
+                    return result != 0 ? result : a.range.getFrom() - b.range.getFrom();
+                }
+            });
+
+            int lastWithOutput = sorted.size() - 1;
+            while (!sorted.get(lastWithOutput).output.exists()) {
+                lastWithOutput--;
+            }
+
+            SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeSAMOrBAMWriter(header, true, destFile);
+            try {
+                for (int i = 0; i <= lastWithOutput; i++) {
+                    Shard sh = sorted.get(i);
+                    if (!sh.output.exists()) {
+                        continue;
+                    }
+                    int refIndex = refIndices.get(sh);
+                    // Unplaced unmapped reads come out of every shard, but should only be written once, at the end.
+                    boolean last = i == lastWithOutput;
+                    SAMFileReader reader = new SAMFileReader(sh.output);
+                    reader.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
+                    try {
+                        SAMRecordIterator iter = reader.iterator();
+                        while (iter.hasNext()) {
+                            SAMRecord rec = iter.next();
+                            int recRef = rec.getReferenceIndex();
+                            if (recRef == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                                if (last) {
+                                    writer.addAlignment(rec);
+                                }
+                            } else if (recRef == refIndex) {
+                                int start = rec.getAlignmentStart();
+                                if (start >= sh.range.getFrom() && start <= sh.range.getTo()) {
+                                    writer.addAlignment(rec);
+                                }
+                            }
+                        }
+                        iter.close();
+                    } finally {
+                        reader.close();
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        /**
+         * Find a genome reference in a BAM sequence dictionary, allowing for differences in naming
+         * (e.g. "chr1" vs. "1").
+         *
+         * @return the reference's index, or Integer.MAX_VALUE if it isn't there
+         */
+        private int getSequenceIndex(SAMSequenceDictionary dict, String ref) {
+            int result = dict.getSequenceIndex(ref);
+            if (result < 0) {
+                String homogenized = MiscUtils.homogenizeSequence(ref);
+                for (SAMSequenceRecord seq: dict.getSequences()) {
+                    if (MiscUtils.homogenizeSequence(seq.getSequenceName()).equals(homogenized)) {
+                        return seq.getSequenceIndex();
+                    }
+                }
+                return Integer.MAX_VALUE;
+            }
+            return result;
+        }
+
+        /**
+         * Start threads which export the piped inputs.  Each thread will block until the tool
+         * opens its end of the pipe.
+         */
+        private List<Thread> startFeeders(final List<Exception> feedErrors) {
+            List<Thread> feeders = new ArrayList<Thread>();
+            for (final Map.Entry<ToolArgument, File> entry: pipedInputs.entrySet()) {
+                Thread t = new Thread("ToolInput-" + (feeders.size() + 1)) {
+                    @Override
+                    public void run() {
+                        try {
+                            TrackExporter exp = TrackExporter.getExporter(entry.getKey().value, entry.getValue());
+                            exp.setIndexing(false);
+                            exp.export(workingRef, workingRange);
+                        } catch (Exception x) {
+                            // Will often just be a broken pipe because the tool has exited.
+                            LOG.info("Streaming of " + entry.getKey().value + " terminated.", x);
+                            feedErrors.add(x);
+                        }
+                    }
+                };
+                t.setDaemon(true);
+                t.start();
+                feeders.add(t);
+            }
+            return feeders;
+        }
+
+        /**
+         * Shut down the feeder threads and remove the pipes.  A feeder which is still waiting for
+         * the tool to open its pipe is released by briefly opening the other end ourselves.
+         */
+        private void stopFeeders(List<Thread> feeders) {
+            for (File pipe: pipedInputs.values()) {
+                try {
+                    new RandomAccessFile(pipe, "rw").close();
+                } catch (IOException ignored) {
+                }
+            }
+            for (Thread t: feeders) {
+                try {
+                    t.join(5000);
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (File pipe: pipedInputs.values()) {
+                pipe.delete();
+            }
+            pipedInputs.clear();
+        }
+
         private void runTool() throws IOException {
             List<String> commandLine = buildCommandLine();
             ProcessBuilder builder = new ProcessBuilder(commandLine);
             builder.redirectErrorStream(true);
+            List<Exception> feedErrors = Collections.synchronizedList(new ArrayList<Exception>());
+            List<Thread> feeders = startFeeders(feedErrors);
+            try {
+                runToolProcess(builder);
+            } finally {
+                stopFeeders(feeders);
+            }
+            if (errorMessage == null && !feedErrors.isEmpty() && toolStatus != 0) {
+                // The tool's failure may have been caused by a problem streaming its input.
+                throw new IOException("Unable to stream input to tool.", feedErrors.get(0));
+            }
+        }
+
+        private void runToolProcess(ProcessBuilder builder) throws IOException {
+            toolStatus = 0;
             toolProc = builder.start();
+            Process proc = toolProc;
             BufferedReader reader = new BufferedReader(new InputStreamReader(toolProc.getInputStream()));
             try {
                 String line;
@@ -548,6 +1227,12 @@ private void runTool() throws IOException {
                     }
                 }
                 toolProc = null;
+                if (!pipedInputs.isEmpty()) {
+                    try {
+                        toolStatus = proc.waitFor();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
             } catch (IOException x) {
                 // If user cancelled the process, we'll get a harmless IOException trying to read its output.
                 if (toolProc != null) {
@@ -43,6 +43,12 @@ public enum Type {
     final String flag;
     final Type type;
     final boolean required;
+
+    /**
+     * For BAM_INPUT_FILE arguments, true if the tool reads the file sequentially, so that it can be fed
+     * through a pipe while the export is still in progress.
+     */
+    final boolean streamable;
     
     /** For LIST arguments, the list of possible values. */
     String[] choices;
@@ -60,6 +66,7 @@ public ToolArgument(XMLStreamReader reader) {
         flag = reader.getAttributeValue(null, "flag");
         type = Enum.valueOf(Type.class, reader.getAttributeValue(null, "type"));
         required = Boolean.parseBoolean(reader.getAttributeValue(null, "required"));
+        streamable = type == Type.BAM_INPUT_FILE && Boolean.parseBoolean(reader.getAttributeValue(null, "stream"));
         enabled = required;
         
         switch (type) {
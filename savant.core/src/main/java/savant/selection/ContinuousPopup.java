@@ -21,6 +21,7 @@
 
 import javax.swing.JLabel;
 import savant.api.data.ContinuousRecord;
+import savant.data.types.SummaryContinuousRecord;
 
 
 /**
@@ -41,6 +42,13 @@ protected void initInfo() {
         end = rec.getPosition();
         name = "Value: " + rec.getValue();
         add(new JLabel("Position: " + start));
-        add(new JLabel("Value: " + rec.getValue()));
+        if (rec instanceof SummaryContinuousRecord) {
+            SummaryContinuousRecord sr = (SummaryContinuousRecord)rec;
+            add(new JLabel("Mean: " + sr.getValue()));
+            add(new JLabel("Min: " + sr.getMin()));
+            add(new JLabel("Max: " + sr.getMax()));
+        } else {
+            add(new JLabel("Value: " + rec.getValue()));
+        }
     }
 }
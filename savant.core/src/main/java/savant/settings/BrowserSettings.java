@@ -45,6 +45,8 @@ public class BrowserSettings {
      */
     private static final String REMOTE_BUFFER_SIZE = "REMOTE_BUFFER_SIZE";
     public static final int DEFAULT_BUFFER_SIZE = 65536;
+    private static final String INDEX_FRESHNESS_KEY = "INDEX_FRESHNESS";
+    public static final int DEFAULT_INDEX_FRESHNESS = 60;
 
     /*
      * Website URLs
@@ -110,6 +112,17 @@ public static void setCachingEnabled(boolean b) {
         settings.setBoolean(CACHINGENABLED_KEY, b);
     }
 
+    /**
+     * Number of minutes for which a cached index is trusted without checking its ETag against the server.
+     */
+    public static int getIndexFreshness() {
+        return settings.getInt(INDEX_FRESHNESS_KEY, DEFAULT_INDEX_FRESHNESS);
+    }
+
+    public static void setIndexFreshness(int minutes) {
+        settings.setInt(INDEX_FRESHNESS_KEY, minutes);
+    }
+
     public static void setRemoteBufferSize(int size){
         settings.setString(REMOTE_BUFFER_SIZE, String.valueOf(size));
     }
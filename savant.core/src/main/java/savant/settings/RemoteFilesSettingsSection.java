@@ -41,6 +41,7 @@ public class RemoteFilesSettingsSection extends Section {
     private JTextField directoryInput;
     private JTextField buffSizeInput;
     private String buffSize;
+    private JTextField freshnessInput;
     private File cacheDir;
     JCheckBox enableCaching_cb;
 
@@ -131,6 +132,32 @@ public void actionPerformed(ActionEvent e) {
             }
         });
 
+        //INDEX FRESHNESS//////////////////////////////////
+
+        JLabel freshnessLabel = new JLabel("Recheck cached indices after (minutes): ");
+        gbc = getFullRowConstraints();
+        add(freshnessLabel, gbc);
+
+        freshnessInput = new JTextField(String.valueOf(BrowserSettings.getIndexFreshness()));
+        gbc.gridwidth = 1;
+        gbc.anchor = GridBagConstraints.EAST;
+        gbc.insets.bottom = 12;
+        add(freshnessInput, gbc);
+
+        JButton defaultFreshnessButton = new JButton("Default");
+        gbc.gridx = 1;
+        gbc.weightx = 0.0;
+        add(defaultFreshnessButton, gbc);
+
+        freshnessInput.addKeyListener(enablingKeyListener);
+        defaultFreshnessButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                freshnessInput.setText(String.valueOf(BrowserSettings.DEFAULT_INDEX_FRESHNESS));
+                enableApplyButton();
+            }
+        });
+
         JButton clearButton = new JButton("Clear remote file cache");
         gbc = getFullRowConstraints();
         gbc.weighty = 1.0;
@@ -164,6 +191,14 @@ public void applyChanges() {
             buffSizeInput.setText(String.valueOf(newVal));
             BrowserSettings.setRemoteBufferSize(newVal);
 
+            try {
+                newVal = Math.max(Integer.parseInt(freshnessInput.getText()), 0);
+            } catch (NumberFormatException e) {
+                newVal = BrowserSettings.DEFAULT_INDEX_FRESHNESS;
+            }
+            freshnessInput.setText(String.valueOf(newVal));
+            BrowserSettings.setIndexFreshness(newVal);
+
             BrowserSettings.setCachingEnabled(this.enableCaching_cb.isSelected());
             
             try {
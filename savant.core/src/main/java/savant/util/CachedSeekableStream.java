@@ -165,6 +165,13 @@ public String getSource() {
         return wrappedStream.getSource();
     }
 
+    /**
+     * The stream which cache misses are read from.
+     */
+    public SeekableStream getWrappedStream() {
+        return wrappedStream;
+    }
+
 
     @Override
     public void close() throws IOException {
@@ -0,0 +1,504 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import savant.api.adapter.BookmarkAdapter;
+import savant.api.adapter.RangeAdapter;
+import savant.api.util.RangeUtils;
+
+
+/**
+ * On-disk, memory-mapped form of a track's search dictionary.  The keys are stored
+ * lower-cased and sorted, in prefix-compressed blocks of <code>BLOCK_SIZE</code> keys.
+ * Only the first key of each block is kept on the heap, so an exact or prefix lookup
+ * is a binary search over the block index followed by a scan of one or two blocks.
+ *
+ * The file is normally written by TabixFormatter alongside the .dict file.  For older
+ * dictionaries (or remote ones) it is built once from the .dict and kept in the cache
+ * directory.  Since TabixFormatter writes the .dict in key order, it can normally be
+ * streamed straight into the index without being held in memory.
+ */
+public class DictionaryIndex {
+    private static final Log LOG = LogFactory.getLog(DictionaryIndex.class);
+
+    /** Extension appended to the track's URI to give the name of the index file. */
+    public static final String EXTENSION = ".dict.idx";
+
+    private static final int MAGIC = 0x53444958;    // "SDIX"
+    private static final int VERSION = 1;
+
+    /** Number of keys stored in each prefix-compressed block. */
+    private static final int BLOCK_SIZE = 64;
+
+    private static final String UTF8 = "UTF-8";
+
+    private final MappedByteBuffer buffer;
+
+    /** First key of each block, for binary search. */
+    private final String[] blockKeys;
+
+    /** Offset of each block within the file. */
+    private final int[] blockOffsets;
+
+    /** Reference names, indexed by the values stored in the blocks. */
+    private final String[] references;
+
+    /** Total number of bookmarks (after merging of overlapping entries). */
+    private final int entryCount;
+
+    /**
+     * Memory-map an existing index file.
+     */
+    public DictionaryIndex(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(f + " is too large to be mapped.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // The mapping remains valid after the channel is closed.
+            raf.close();
+        }
+
+        ByteBuffer buf = buffer.duplicate();
+        if (buf.limit() < 16 || buf.getInt(0) != MAGIC || buf.getInt(buf.limit() - 4) != MAGIC) {
+            throw new IOException(f + " is not a valid dictionary index.");
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException(f + " has unsupported dictionary index version " + buf.getInt(4) + ".");
+        }
+        buf.position(buf.getInt(buf.limit() - 8));
+        entryCount = buf.getInt();
+        references = new String[readVarInt(buf)];
+        for (int i = 0; i < references.length; i++) {
+            references[i] = readString(buf);
+        }
+        int numBlocks = readVarInt(buf);
+        blockKeys = new String[numBlocks];
+        blockOffsets = new int[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            blockKeys[i] = readString(buf);
+            blockOffsets[i] = buf.getInt();
+        }
+    }
+
+    /**
+     * Total number of bookmarks in this dictionary.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Look up the given key, which is expected to be lower-case.  A trailing
+     * asterisk indicates a prefix-match.
+     *
+     * @param key the key to be looked up
+     * @return list of matching bookmarks; for an exact match which isn't found, <code>null</code>
+     */
+    public List<BookmarkAdapter> lookup(String key) {
+        if (key.endsWith("*")) {
+            return lookupPrefix(key.substring(0, key.length() - 1));
+        }
+        List<BookmarkAdapter> result = new ArrayList<BookmarkAdapter>();
+        int block = findBlock(key);
+        if (block >= 0) {
+            scanBlock(block, key, false, result);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Retrieve all bookmarks whose keys start with the given prefix.  An empty
+     * prefix retrieves the entire dictionary.
+     */
+    public List<BookmarkAdapter> lookupPrefix(String prefix) {
+        List<BookmarkAdapter> result = new ArrayList<BookmarkAdapter>();
+        int block = Math.max(findBlock(prefix), 0);
+        while (block < blockKeys.length && scanBlock(block, prefix, true, result)) {
+            block++;
+        }
+        return result;
+    }
+
+    /**
+     * Find the last block whose first key is less than or equal to the given key.
+     *
+     * @return index of the block, or -1 if the key precedes all blocks
+     */
+    private int findBlock(String key) {
+        int lo = 0, hi = blockKeys.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockKeys[mid].compareTo(key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Decode a single block, adding any matching bookmarks to <code>result</code>.
+     *
+     * @return true if the scan should continue into the following block
+     */
+    private boolean scanBlock(int block, String key, boolean prefix, List<BookmarkAdapter> result) {
+        ByteBuffer buf = buffer.duplicate();
+        buf.position(blockOffsets[block]);
+        int numKeys = readVarInt(buf);
+        byte[] keyBytes = new byte[64];
+        for (int i = 0; i < numKeys; i++) {
+            int shared = readVarInt(buf);
+            int suffixLen = readVarInt(buf);
+            if (shared + suffixLen > keyBytes.length) {
+                byte[] newBytes = new byte[Math.max(shared + suffixLen, keyBytes.length * 2)];
+                System.arraycopy(keyBytes, 0, newBytes, 0, shared);
+                keyBytes = newBytes;
+            }
+            buf.get(keyBytes, shared, suffixLen);
+            String k = decode(keyBytes, 0, shared + suffixLen);
+            int numMarks = readVarInt(buf);
+            boolean matches = prefix ? k.startsWith(key) : k.equals(key);
+            if (matches) {
+                for (int j = 0; j < numMarks; j++) {
+                    result.add(readMark(buf, k));
+                }
+            } else {
+                if (k.compareTo(key) > 0) {
+                    // We've gone past anything which could match.
+                    return false;
+                }
+                for (int j = 0; j < numMarks; j++) {
+                    skipMark(buf);
+                }
+            }
+        }
+        return true;
+    }
+
+    private BookmarkAdapter readMark(ByteBuffer buf, String key) {
+        String ref = references[readVarInt(buf)];
+        int from = readVarInt(buf);
+        int to = from + readVarInt(buf);
+        int annLen = readVarInt(buf);
+        String ann = key;
+        if (annLen > 0) {
+            byte[] annBytes = new byte[annLen - 1];
+            buf.get(annBytes);
+            ann = decode(annBytes, 0, annBytes.length);
+        }
+        return new Bookmark(ref, new Range(from, to), ann);
+    }
+
+    private void skipMark(ByteBuffer buf) {
+        readVarInt(buf);
+        readVarInt(buf);
+        readVarInt(buf);
+        int annLen = readVarInt(buf);
+        if (annLen > 0) {
+            buf.position(buf.position() + annLen - 1);
+        }
+    }
+
+    /**
+     * Build an index file from the lines of a .dict file.  Each line consists of a
+     * name and a location expression, separated by a tab.  The lines need not be sorted.
+     * Entries for the same (case-insensitive) name which overlap are merged.
+     *
+     * @param lines lines of the dictionary
+     * @param dest the index file to be written
+     * @throws ParseException if one of the location expressions is invalid
+     */
+    public static void write(List<String> lines, File dest) throws IOException, ParseException {
+        final List<String[]> entries = new ArrayList<String[]>(lines.size());
+        for (String l: lines) {
+            String[] entry = parseLine(l);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] t, String[] t1) {
+                return t[0].compareTo(t1[0]);
+            }
+        });
+        writeEntries(new EntrySource() {
+            int i = 0;
+
+            @Override
+            String[] next() {
+                return i < entries.size() ? entries.get(i++) : null;
+            }
+        }, dest);
+    }
+
+    /**
+     * Build an index file by streaming the lines of a .dict file whose keys are already
+     * in (case-insensitive) sorted order, as written by TabixFormatter.  Nothing beyond
+     * the current block is held in memory.
+     *
+     * @param input uncompressed contents of the .dict file
+     * @param dest the index file to be written
+     * @return false if the input turned out not to be sorted, in which case nothing is written
+     * @throws ParseException if one of the location expressions is invalid
+     */
+    public static boolean writeSorted(final InputStream input, File dest) throws IOException, ParseException {
+        try {
+            writeEntries(new EntrySource() {
+                @Override
+                String[] next() throws IOException {
+                    String line;
+                    while ((line = IOUtils.readLine(input)) != null) {
+                        String[] entry = parseLine(line);
+                        if (entry != null) {
+                            return entry;
+                        }
+                    }
+                    return null;
+                }
+            }, dest);
+            return true;
+        } catch (UnsortedException x) {
+            LOG.info(x.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Split a .dict line into lower-cased key, original name, and location expression.
+     *
+     * @return the entry, or null if the line isn't a valid entry
+     */
+    private static String[] parseLine(String l) {
+        int tabPos = l.indexOf('\t');
+        if (tabPos > 0) {
+            String name = l.substring(0, tabPos);
+            return new String[] { name.toLowerCase(), name, l.substring(tabPos + 1) };
+        }
+        return null;
+    }
+
+    /**
+     * Write the index from a source of entries which are sorted by key.
+     *
+     * @throws UnsortedException if a key is found out of order
+     */
+    private static void writeEntries(EntrySource entries, File dest) throws IOException, ParseException {
+        List<String> refs = new ArrayList<String>();
+        List<String> blockKeys = new ArrayList<String>();
+        List<Integer> blockOffsets = new ArrayList<Integer>();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream blockOut = new DataOutputStream(block);
+        int keysInBlock = 0;
+        int entryCount = 0;
+        byte[] prevKey = null;
+
+        String prevKeyString = null;
+
+        File tmp = new File(dest.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        boolean succeeded = false;
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            String[] entry = entries.next();
+            while (entry != null) {
+                String key = entry[0];
+                if (prevKeyString != null && key.compareTo(prevKeyString) < 0) {
+                    throw new UnsortedException(String.format("Dictionary keys out of order (\"%s\" follows \"%s\").", key, prevKeyString));
+                }
+
+                // Gather all the marks for this key, merging any which overlap.
+                List<Bookmark> marks = new ArrayList<Bookmark>();
+                for (; entry != null && entry[0].equals(key); entry = entries.next()) {
+                    Bookmark newMark = new Bookmark(entry[2], entry[1]);
+                    for (Bookmark m: marks) {
+                        if (m.getReference().equals(newMark.getReference()) && RangeUtils.intersects(m.getRange(), newMark.getRange())) {
+                            m.setRange(RangeUtils.union(m.getRange(), newMark.getRange()));
+                            newMark = null;
+                            break;
+                        }
+                    }
+                    if (newMark != null) {
+                        marks.add(newMark);
+                    }
+                }
+
+                if (keysInBlock == BLOCK_SIZE) {
+                    flushBlock(block, keysInBlock, output, blockOffsets);
+                    keysInBlock = 0;
+                }
+                byte[] keyBytes = key.getBytes(UTF8);
+                int shared = 0;
+                if (keysInBlock == 0) {
+                    blockKeys.add(key);
+                } else {
+                    int maxShared = Math.min(prevKey.length, keyBytes.length);
+                    while (shared < maxShared && prevKey[shared] == keyBytes[shared]) {
+                        shared++;
+                    }
+                }
+                writeVarInt(blockOut, shared);
+                writeVarInt(blockOut, keyBytes.length - shared);
+                blockOut.write(keyBytes, shared, keyBytes.length - shared);
+                writeVarInt(blockOut, marks.size());
+                for (Bookmark m: marks) {
+                    int refIndex = refs.indexOf(m.getReference());
+                    if (refIndex < 0) {
+                        refIndex = refs.size();
+                        refs.add(m.getReference());
+                    }
+                    RangeAdapter r = m.getRange();
+                    writeVarInt(blockOut, refIndex);
+                    writeVarInt(blockOut, r.getFrom());
+                    writeVarInt(blockOut, r.getTo() - r.getFrom());
+                    if (key.equals(m.getAnnotation())) {
+                        writeVarInt(blockOut, 0);
+                    } else {
+                        byte[] annBytes = m.getAnnotation().getBytes(UTF8);
+                        writeVarInt(blockOut, annBytes.length + 1);
+                        blockOut.write(annBytes);
+                    }
+                }
+                entryCount += marks.size();
+                prevKey = keyBytes;
+                prevKeyString = key;
+                keysInBlock++;
+            }
+            if (keysInBlock > 0) {
+                flushBlock(block, keysInBlock, output, blockOffsets);
+            }
+
+            int footerOffset = output.size();
+            output.writeInt(entryCount);
+            writeVarInt(output, refs.size());
+            for (String r: refs) {
+                writeString(output, r);
+            }
+            writeVarInt(output, blockKeys.size());
+            for (int j = 0; j < blockKeys.size(); j++) {
+                writeString(output, blockKeys.get(j));
+                output.writeInt(blockOffsets.get(j));
+            }
+            output.writeInt(footerOffset);
+            output.writeInt(MAGIC);
+            succeeded = true;
+        } finally {
+            output.close();
+            if (!succeeded) {
+                tmp.delete();
+            }
+        }
+        if (dest.exists()) {
+            dest.delete();
+        }
+        if (!tmp.renameTo(dest)) {
+            throw new IOException("Unable to rename " + tmp + " to " + dest);
+        }
+        LOG.info("Wrote " + entryCount + " dictionary entries in " + blockKeys.size() + " blocks to " + dest);
+    }
+
+    private static void flushBlock(ByteArrayOutputStream block, int numKeys, DataOutputStream output, List<Integer> blockOffsets) throws IOException {
+        blockOffsets.add(output.size());
+        writeVarInt(output, numKeys);
+        block.writeTo(output);
+        block.reset();
+    }
+
+    private static void writeVarInt(DataOutput output, int val) throws IOException {
+        while ((val & ~0x7f) != 0) {
+            output.writeByte((val & 0x7f) | 0x80);
+            val >>>= 7;
+        }
+        output.writeByte(val);
+    }
+
+    private static int readVarInt(ByteBuffer buf) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    private static void writeString(DataOutput output, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[readVarInt(buf)];
+        buf.get(bytes);
+        return decode(bytes, 0, bytes.length);
+    }
+
+    private static String decode(byte[] bytes, int offset, int len) {
+        try {
+            return new String(bytes, offset, len, UTF8);
+        } catch (UnsupportedEncodingException x) {
+            // Every JVM is required to support UTF-8.
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /**
+     * Supplies dictionary entries to <code>writeEntries</code>, one at a time.
+     */
+    private static abstract class EntrySource {
+        /**
+         * @return the next entry as {lower-cased key, name, location}, or null at the end
+         */
+        abstract String[] next() throws IOException;
+    }
+
+    /**
+     * Thrown when <code>writeSorted</code> is given a dictionary which isn't sorted.
+     */
+    private static class UnsortedException extends IOException {
+        UnsortedException(String msg) {
+            super(msg);
+        }
+    }
+}
@@ -43,6 +43,7 @@ public enum DrawingInstruction {
     ALTERNATE_NAME,     // boolean; display alternate name instead of name
     BASE_QUALITY,       // boolean; alpha will be based on base quality
     MAPPING_QUALITY,    // boolean; alpha will be based on mapping quality
-    PARTICIPANTS        // String[] containing names/IDs of all participants
+    PARTICIPANTS,       // String[] containing names/IDs of all participants
+    REFERENCE           // String; reference being rendered, if not the current one (used for offscreen rendering)
 }
 
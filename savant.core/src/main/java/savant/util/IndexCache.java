@@ -22,31 +22,54 @@
 import java.io.*;
 import java.net.URI;
 import java.net.URL;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import savant.settings.BrowserSettings;
 import savant.settings.DirectorySettings;
 
 
 /**
- * Singleton class to manage a cache of indices for remote files.
+ * Singleton class to manage a cache of indices for remote files.  Lookups don't take any
+ * global lock, so many remote tracks can be opened at once; only requests for the same
+ * track are serialised.  Changes to the cache's metadata are written out in batches, a
+ * short while after the last change.
  *
  * @author vwilliams
  */
 public class IndexCache {
     private static final Log LOG = LogFactory.getLog(IndexCache.class);
-    
+
+    /** Delay before changed metadata is written, so that a burst of track opens results in a single write. */
+    private static final long FLUSH_DELAY = 2000;
+
     private static IndexCache instance;
 
-    private File cacheDir;
+    private final File cacheDir;
+
+    /** ETags of the cached indices, keyed by the URL of the indexed file. */
+    private final ConcurrentMap<String, String> tags;
+
+    /** Names of the cached index files, keyed by the URL of the indexed file. */
+    private final ConcurrentMap<String, String> indices;
 
-    private Properties tags;
-    private Properties indices;
+    /** Time at which each cached index was last checked against the server. */
+    private final ConcurrentMap<String, String> validated;
 
-    private File tagPropFile = new File(getCacheDir(), "etags");
-    private File indexPropFile = new File(getCacheDir(), "indices");
+    /** Per-URL locks, so that two requests for the same index don't download it twice. */
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private final File tagPropFile;
+    private final File indexPropFile;
+    private final File validatedPropFile;
+
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean flushPending = new AtomicBoolean();
 
     public static synchronized IndexCache getInstance() {
         if (instance == null) {
@@ -55,124 +78,181 @@ public static synchronized IndexCache getInstance() {
         return instance;
     }
 
-    private IndexCache() {}
+    private IndexCache() {
+        cacheDir = new File(DirectorySettings.getSavantDirectory(), "index");
+        if (!cacheDir.exists()) {
+            cacheDir.mkdir();
+        }
+        tagPropFile = new File(cacheDir, "etags");
+        indexPropFile = new File(cacheDir, "indices");
+        validatedPropFile = new File(cacheDir, "validated");
+        tags = loadPropertiesFile(tagPropFile);
+        indices = loadPropertiesFile(indexPropFile);
+        validated = loadPropertiesFile(validatedPropFile);
+
+        writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "IndexCache-Writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // Our writer is a daemon thread, so make sure that any pending changes get written on the way out.
+        Runtime.getRuntime().addShutdownHook(new Thread("IndexCache-Shutdown") {
+            @Override
+            public void run() {
+                if (flushPending.get()) {
+                    flush();
+                }
+            }
+        });
+    }
 
     /**
-     * Get the local index file corresponding to the given URI.
+     * Get the local index file corresponding to the given URI.  If the index was checked against
+     * the server within the freshness window, the cached copy is returned without any network access.
      *
      * @param uri the URI for which we're providing the index
      * @param extension index extension ("bai" or "tbi")
      * @param alternate alternate index extension ("bam" or "gz")
      */
     private File getIndex(URI uri, String extension, String alternate) throws IOException {
+        String url = uri.toString();
+        synchronized (getLock(url)) {
+            String indexFilename = indices.get(url);
+            if (indexFilename != null && isFresh(url)) {
+                File indexFile = new File(cacheDir, indexFilename);
+                if (indexFile.exists()) {
+                    return indexFile;
+                }
+            }
 
-        String indexURLString = uri.toString() + "." + extension;
-        URL indexURL = new URL(indexURLString);
-        String hash = null;
+            String indexURLString = url + "." + extension;
+            URL indexURL = new URL(indexURLString);
+            String hash = null;
 
-        try {
-            hash = NetworkUtils.getHash(indexURL);
-        } catch (IOException e) {
-            // file probably doesn't exist
-            LOG.warn("Remote file can't be accessed: "+ indexURL, e);
-        }
+            try {
+                hash = NetworkUtils.getHash(indexURL);
+            } catch (IOException e) {
+                // file probably doesn't exist
+                LOG.warn("Remote file can't be accessed: "+ indexURL, e);
+            }
 
-        if (hash == null) {
-            // File doesn't exist, try alternate.  If it doesn't exist, an exception
-            // will be thrown.
-            indexURLString = uri.toString().replace("." + alternate, "." + extension);
-            indexURL = new URL(indexURLString);
-            hash = NetworkUtils.getHash(indexURL);
-        }
+            if (hash == null) {
+                // File doesn't exist, try alternate.  If it doesn't exist, an exception
+                // will be thrown.
+                indexURLString = url.replace("." + alternate, "." + extension);
+                indexURL = new URL(indexURLString);
+                hash = NetworkUtils.getHash(indexURL);
+            }
 
-        String indexFilename = getIndexFileName(uri.toString(), indexURLString);
-        File indexFile = new File(getCacheDir(), indexFilename);
-        if (indexFile.exists()) {
-            String cachedTag = getETagForURL(uri.toString());
-            if (cachedTag == null || hash == null || !hash.equals(cachedTag)) {
-                indexFile.delete();    
+            if (indexFilename == null) {
+                indexFilename = createIndexFileName(indexURLString);
+                indices.put(url, indexFilename);
             }
+            File indexFile = new File(cacheDir, indexFilename);
+            if (indexFile.exists()) {
+                String cachedTag = tags.get(url);
+                if (cachedTag == null || hash == null || !hash.equals(cachedTag)) {
+                    indexFile.delete();
+                }
+            }
+            if (!indexFile.exists()) {
+                NetworkUtils.downloadFile(indexURL, cacheDir, indexFilename);
+                if (hash == null) {
+                    tags.remove(url);
+                } else {
+                    tags.put(url, hash);
+                }
+            }
+            validated.put(url, String.valueOf(System.currentTimeMillis()));
+            scheduleFlush();
+            return indexFile;
         }
-        if (!indexFile.exists()) {
-            NetworkUtils.downloadFile(indexURL, cacheDir, indexFilename);
-            setETagForURL(hash, indexURLString);
-        }
-        return indexFile;
     }
 
     public void clearCache() {
-        IOUtils.deleteDirectory(getCacheDir());
+        tags.clear();
+        indices.clear();
+        validated.clear();
+        IOUtils.deleteDirectory(cacheDir);
+        cacheDir.mkdir();
     }
 
-    private synchronized Properties getETags() {
-        if (tags == null) {
-            tags = loadPropertiesFile(tagPropFile);
+    /**
+     * Write any changed metadata immediately, rather than waiting for the scheduled write.
+     */
+    public void flush() {
+        flushPending.set(false);
+        synchronized (writer) {
+            writePropertiesToFile(tags, tagPropFile);
+            writePropertiesToFile(indices, indexPropFile);
+            writePropertiesToFile(validated, validatedPropFile);
         }
-        return tags;
     }
 
-    private String getETagForURL(String URL) {
-        return getETags().getProperty(URL);
-    }
-
-    private void setETagForURL(String etag, String url) {
-        if (etag == null) {
-            getETags().remove(url);
-        } else {
-            getETags().put(url, etag);
+    private void scheduleFlush() {
+        if (flushPending.compareAndSet(false, true)) {
+            writer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
         }
-        writePropertiesToFile(getETags(), tagPropFile);
     }
 
-    private synchronized Properties getIndices() {
-        if (indices == null) {
-            indices = loadPropertiesFile(indexPropFile);
+    /**
+     * Has the index for the given URL been checked against the server recently enough that
+     * we can trust it without another round-trip?
+     */
+    private boolean isFresh(String url) {
+        long window = BrowserSettings.getIndexFreshness() * 60000L;
+        String lastChecked = validated.get(url);
+        if (window > 0 && lastChecked != null) {
+            try {
+                return System.currentTimeMillis() - Long.parseLong(lastChecked) < window;
+            } catch (NumberFormatException ignored) {
+            }
         }
-        return indices;
-    }
-
-    private String getIndexForURL(String URL) {
-        return getIndices().getProperty(URL);
+        return false;
     }
 
-    private void setIndexForURL(String index, String url) {
-        getIndices().put(url, index);
-        writePropertiesToFile(getIndices(), indexPropFile);
-    }
-    
-    private File getCacheDir() {
-        if (cacheDir == null) {
-            cacheDir = new File(DirectorySettings.getSavantDirectory(), "index");
-            if (!cacheDir.exists()) {
-                cacheDir.mkdir();
+    private Object getLock(String url) {
+        Object lock = locks.get(url);
+        if (lock == null) {
+            lock = new Object();
+            Object existing = locks.putIfAbsent(url, lock);
+            if (existing != null) {
+                lock = existing;
             }
         }
-        return cacheDir;
+        return lock;
     }
 
-    private synchronized String getIndexFileName(String url, String indexURL) {
-        String indexFilename = getIndexForURL(url);
-        if (indexFilename == null) {
-            String extension = MiscUtils.getExtension(indexURL);
-            indexFilename = indexURL.substring(0,indexURL.lastIndexOf("."));
-            int offset = indexURL.lastIndexOf("/");
-            String name = indexURL.substring(offset+1);
-            indexFilename = name + System.currentTimeMillis() + "." + extension;
-            setIndexForURL(indexFilename, url);
-        }
-        return indexFilename;
+    private static String createIndexFileName(String indexURL) {
+        String extension = MiscUtils.getExtension(indexURL);
+        int offset = indexURL.lastIndexOf("/");
+        String name = indexURL.substring(offset+1);
+        return name + System.currentTimeMillis() + "." + extension;
     }
-    
-    private Properties loadPropertiesFile(File propFile) {
 
-        Properties result = new Properties();
+    private ConcurrentMap<String, String> loadPropertiesFile(File propFile) {
+
+        ConcurrentMap<String, String> result = new ConcurrentHashMap<String, String>();
 
         if (propFile.exists()) {
-            
+
             InputStream is = null;
             try {
                 is = new FileInputStream(propFile);
-                result.load(is);
+                Properties props = new Properties();
+                props.load(is);
+                for (String key: props.stringPropertyNames()) {
+                    result.put(key, props.getProperty(key));
+                }
             } catch (FileNotFoundException e) {
                 // should not happen
                 LOG.error("Properties file not found",e);
@@ -186,11 +266,27 @@ private Properties loadPropertiesFile(File propFile) {
         return result;
     }
 
-    private void writePropertiesToFile(Properties props, File propFile) {
+    /**
+     * Write a snapshot of the given map.  The properties are written to a temporary file which
+     * then replaces the original, so that a crash mid-write can't leave a truncated file behind.
+     */
+    private void writePropertiesToFile(Map<String, String> map, File propFile) {
+        Properties props = new Properties();
+        props.putAll(map);
+        File tmpFile = new File(propFile.getPath() + ".tmp");
         OutputStream os = null;
         try {
-            os = new FileOutputStream(propFile);
+            os = new FileOutputStream(tmpFile);
             props.store(os,null);
+            os.close();
+            os = null;
+            if (!tmpFile.renameTo(propFile)) {
+                // Windows won't rename over an existing file.
+                propFile.delete();
+                if (!tmpFile.renameTo(propFile)) {
+                    throw new IOException("Unable to rename " + tmpFile + " to " + propFile);
+                }
+            }
         } catch (FileNotFoundException e) {
             LOG.error("Unable to save Cache properties file",e);
         } catch (IOException e) {
@@ -30,7 +30,6 @@
 
 import net.sf.samtools.util.SeekableBufferedStream;
 import net.sf.samtools.util.SeekableFileStream;
-import net.sf.samtools.util.SeekableHTTPStream;
 import net.sf.samtools.util.SeekableStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -99,11 +98,12 @@ public static boolean exists(URI uri) {
 
     /**
      * Get a unique hash representing the contents of this file.  For an HTTP server,
-     * this will be the ETag returned in the header; for FTP servers, we create a
+     * this will be the ETag returned in the header, or failing that a hash based on
+     * the Last-Modified and Content-Length headers; for FTP servers, we create a
      * hash based on the size and modification time.
      *
      * @param url   URL of the file to be hashed.
-     * @return  a hash-value "unique" to this file.
+     * @return  a hash-value "unique" to this file, or null if an HTTP server provides nothing to base it on
      *
      * @throws IOException
      */
@@ -113,7 +113,15 @@ public static String getHash(URL url) throws IOException {
             URLConnection conn = null;
             try {
                 conn = url.openConnection();
-                return conn.getHeaderField("ETag");
+                String result = conn.getHeaderField("ETag");
+                if (result == null && conn instanceof HttpURLConnection && ((HttpURLConnection)conn).getResponseCode() < 400) {
+                    long lastModified = conn.getLastModified();
+                    String contentLength = conn.getHeaderField("Content-Length");
+                    if (lastModified != 0 || contentLength != null) {
+                        result = String.format("%016x-%s", lastModified, contentLength);
+                    }
+                }
+                return result;
             }
             finally {
                 if ((conn != null) && (conn instanceof HttpURLConnection)) {
@@ -161,7 +169,7 @@ public static SeekableStream getSeekableStreamForURI(URI uri, boolean allowCachi
             result = new SeekableBufferedStream(new SeekableFileStream(new File(uri)));
         } else {
             if (proto.equals("http") || proto.equals("https")) {
-                result = new SeekableHTTPStream(uri.toURL());
+                result = new SeekableHTTPRangeStream(uri.toURL());
             } else if (proto.equals("ftp")) {
                 result = new SeekableFTPStream(uri.toURL());
             } else {
@@ -170,7 +178,8 @@ public static SeekableStream getSeekableStreamForURI(URI uri, boolean allowCachi
             if (allowCaching) {
                 //result = new CacheableSABS(result, CacheableSABS.DEFAULT_BLOCK_SIZE, uri);
                 result = new CachedSeekableStream(result, BrowserSettings.getRemoteBufferSize(), uri);
-            } else {
+            } else if (!(result instanceof SeekableHTTPRangeStream)) {
+                // SeekableHTTPRangeStream does its own read-ahead buffering.
                 result = new SeekableBufferedStream(result);
             }
         }
@@ -23,6 +23,9 @@
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
 
 import net.sf.samtools.util.SeekableStream;
 
@@ -36,7 +39,15 @@
 
 
 /**
- * Random access stream for FTP access to BAM files through Picard
+ * Random access stream for FTP access to BAM files through Picard.
+ *
+ * Rather than issuing a new RETR for every read, we keep the data connection open
+ * and read ahead through a buffer, so that sequential reads (and short forward skips)
+ * all come from a single transfer.  A new transfer is only started when a seek lands
+ * outside the buffer and beyond the read-ahead window.  The window adapts to the
+ * connection: it's the number of bytes we could have received in the time a restart
+ * takes.  Logged-in control connections are pooled and reused across streams, unless
+ * a transfer on them had to be aborted.
  *
  * @author vwilliams
  */
@@ -45,6 +56,19 @@ public class SeekableFTPStream extends SeekableStream {
     private static Log LOG = LogFactory.getLog(SeekableFTPStream.class);
     private static final int SOCKET_TIMEOUT = 10000;
 
+    /** Size of the read-ahead buffer. */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Bounds on the read-ahead window, within which we skip forward rather than restarting the transfer. */
+    private static final int MIN_WINDOW = 64 * 1024;
+    private static final int MAX_WINDOW = 4 * 1024 * 1024;
+
+    /** Maximum number of idle control connections kept for each server. */
+    private static final int MAX_IDLE_CLIENTS = 4;
+
+    /** Idle, logged-in control connections, keyed by user@host:port. */
+    private static final Map<String, LinkedList<FTPClient>> IDLE_CLIENTS = new HashMap<String, LinkedList<FTPClient>>();
+
     private final String source;
     private final String username;
     private final String password;
@@ -56,6 +80,26 @@ public class SeekableFTPStream extends SeekableStream {
     private FTPClient ftpClient = null;
     private long position = 0;
 
+    /** False once a transfer on <code>ftpClient</code> has been aborted, after which it mustn't go back into the pool. */
+    private boolean clientReusable;
+
+    /** Data stream for the transfer in progress, or null if there is none. */
+    private InputStream dataStream;
+
+    /** Buffered bytes, covering file positions [bufferStart, bufferStart + bufferLength). */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private int bufferLength;
+
+    private int window = MIN_WINDOW;
+
+    /** Smoothed estimates of the time taken to start a transfer, and of the transfer rate. */
+    private double restartMillis = -1.0;
+    private double bytesPerMilli = -1.0;
+
+    /** Number of transfers started by this stream, for diagnostic purposes. */
+    private int restarts;
+
     public SeekableFTPStream(URL url) {
         this(url, "anonymous", "");
     }
@@ -113,7 +157,7 @@ public long length() {
     @Override
     public void seek(long pos) throws IOException {
         position = pos;
-        LOG.info("FTP: seek to " + pos);
+        LOG.trace("FTP: seek to " + pos);
     }
 
     @Override
@@ -128,57 +172,144 @@ public int read(byte[] bytes, int offset, int len) throws IOException {
     }
 
     private int readFromStream(byte[] bytes, int offset, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            if (position >= bufferStart && position < bufferStart + bufferLength) {
+                // Satisfy as much as we can from the buffer.
+                int bufOffset = (int)(position - bufferStart);
+                int count = Math.min(len - n, bufferLength - bufOffset);
+                System.arraycopy(buffer, bufOffset, bytes, offset + n, count);
+                n += count;
+                position += count;
+            } else {
+                long streamPos = bufferStart + bufferLength;
+                if (dataStream == null || position < streamPos || position > streamPos + window) {
+                    startTransfer(position);
+                } else if (position > streamPos) {
+                    LOG.trace("FTP: skipping " + (position - streamPos) + " bytes on open transfer.");
+                }
+                if (!fillBuffer()) {
+                    // End of file.
+                    break;
+                }
+            }
+        }
+        return n > 0 || len == 0 ? n : -1;
+    }
 
-        FTPClient client = getFTPClient();
-        if (position != 0) {
-            client.setRestartOffset(position);
+    /**
+     * Read whatever is available from the data stream into the buffer.  If the buffer
+     * is full, it's recycled.
+     *
+     * @return false if we've hit the end of the file
+     */
+    private boolean fillBuffer() throws IOException {
+        if (bufferLength == buffer.length) {
+            bufferStart += bufferLength;
+            bufferLength = 0;
+        }
+        long t0 = System.nanoTime();
+        int count = dataStream.read(buffer, bufferLength, buffer.length - bufferLength);
+        if (count < 0) {
+            closeTransfer(true);
+            return false;
+        }
+        double millis = (System.nanoTime() - t0) / 1000000.0;
+        if (count >= 4096 && millis > 0.0) {
+            bytesPerMilli = smooth(bytesPerMilli, count / millis);
+            adaptWindow();
         }
+        bufferLength += count;
+        return true;
+    }
+
+    /**
+     * Abandon any transfer in progress, and start a new one at the given position.
+     */
+    private void startTransfer(long pos) throws IOException {
+        closeTransfer(false);
+        long t0 = System.currentTimeMillis();
+        FTPClient client = getFTPClient();
+        client.setRestartOffset(pos);
         InputStream is = client.retrieveFileStream(fileName);
-        long oldPos = position;
-        if (is != null) {
-            int n = 0;
-            while (n < len) {
-               int bytesRead = is.read(bytes, offset+n, len-n);
-               if (bytesRead < 0) {
-                   if (n == 0) return -1;
-                   else break;
-               }
-               n += bytesRead;
+        if (is == null) {
+            String msg = String.format("Unable to retrieve input stream for file (reply code %d).", client.getReplyCode());
+            LOG.error(msg);
+            throw new IOException(msg);
+        }
+        dataStream = is;
+        bufferStart = pos;
+        bufferLength = 0;
+        restarts++;
+        restartMillis = smooth(restartMillis, System.currentTimeMillis() - t0);
+        adaptWindow();
+        LOG.debug("FTP: transfer " + restarts + " for " + fileName + " started at " + pos + ", window=" + window);
+    }
+
+    /**
+     * Close the data connection for the transfer in progress (if any).  The control
+     * connection remains open, unless the server's reply leaves it in doubt.
+     *
+     * @param finished true if the transfer ran to the end of the file, false if we're aborting it
+     */
+    private void closeTransfer(boolean finished) {
+        if (dataStream != null) {
+            try {
+                dataStream.close();
+            } catch (IOException ignored) {
             }
-            is.close();
-            LOG.info(String.format("FTP read %d bytes at %d: %02x %02x %02x %02x %02x %02x %02x %02x...", len, oldPos, bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3], bytes[offset + 4], bytes[offset + 5], bytes[offset + 6], bytes[offset + 7]));
+            dataStream = null;
+            bufferStart += bufferLength;
+            bufferLength = 0;
             try {
-                client.completePendingCommand();
+                boolean completed = ftpClient.completePendingCommand();
+                int reply = ftpClient.getReplyCode();
+                if (!completed && reply != FTPReply.TRANSFER_ABORTED) {
+                    LOG.info("Unexpected reply " + reply + " completing transfer.  Disconnecting.");
+                    disconnectQuietly();
+                } else if (!finished) {
+                    // Some servers queue a second reply after an aborted transfer, which would leave a pooled connection out of step.
+                    clientReusable = false;
+                }
             } catch (FTPConnectionClosedException suppressed) {
             } catch (SocketTimeoutException stx) {
                 // Accessing 1000 Genomes, we sometimes get a timeout for no apparent reason.
-                LOG.info("Timed out during read.  Disconnecting.");
-                disconnect();
+                LOG.info("Timed out completing transfer.  Disconnecting.");
+                disconnectQuietly();
+            } catch (IOException x) {
+                LOG.info("Error completing transfer.  Disconnecting.", x);
+                disconnectQuietly();
             }
-            position += n;
-            return n;
-        } else {
-            String msg = String.format("Unable to retrieve input stream for file (reply code %d).", client.getReplyCode());
-            LOG.error(msg);
-            throw new IOException(msg);
         }
     }
 
+    /**
+     * Skipping forward on an open transfer is worthwhile as long as the bytes skipped
+     * would arrive in less time than it takes to start a new transfer.
+     */
+    private void adaptWindow() {
+        if (restartMillis > 0.0 && bytesPerMilli > 0.0) {
+            window = (int)Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, restartMillis * bytesPerMilli));
+        }
+    }
+
+    private static double smooth(double oldValue, double newValue) {
+        return oldValue < 0.0 ? newValue : oldValue * 0.75 + newValue * 0.25;
+    }
+
     @Override
     public void close() throws IOException {
+        closeTransfer(false);
         if (ftpClient != null) {
-            try {
-                ftpClient.completePendingCommand();
-            } catch (IOException e) {
-                LOG.trace("Suppressing IOException from completePendingCommand().");
-            }
-            try {
-                ftpClient.logout();
-            } catch (IOException e) {
-                LOG.info("Suppressing IOException from logout().");
+            if (clientReusable) {
+                releaseClient(ftpClient);
+                ftpClient = null;
+            } else {
+                disconnect();
             }
-            disconnect();
         }
+        bufferStart = 0;
+        bufferLength = 0;
     }
 
     @Override
@@ -197,6 +328,8 @@ public String getSource() {
     }
 
     public FTPFile[] listFiles(String relPath) throws IOException {
+        // The control connection can't be used for anything else while a transfer is in progress.
+        closeTransfer(false);
         try {
             return getFTPClient().listFiles(relPath);
         } catch (FTPConnectionClosedException e) {
@@ -206,6 +339,15 @@ public FTPFile[] listFiles(String relPath) throws IOException {
     }
 
     public void disconnect() throws IOException {
+        if (dataStream != null) {
+            try {
+                dataStream.close();
+            } catch (IOException ignored) {
+            }
+            dataStream = null;
+        }
+        bufferStart = 0;
+        bufferLength = 0;
         if (ftpClient != null) {
             try {
                 ftpClient.disconnect();
@@ -215,7 +357,18 @@ public void disconnect() throws IOException {
         }
     }
 
+    private void disconnectQuietly() {
+        try {
+            disconnect();
+        } catch (IOException ignored) {
+        }
+    }
+
     private FTPClient getFTPClient() throws IOException {
+        if (ftpClient == null) {
+            ftpClient = acquireClient();
+            clientReusable = true;
+        }
         if (ftpClient == null) {
             FTPClient client = new FTPClient();
             try {
@@ -241,4 +394,63 @@ private FTPClient getFTPClient() throws IOException {
 
         return ftpClient;
     }
+
+    private String getPoolKey() {
+        return username + "@" + host + ":" + port;
+    }
+
+    /**
+     * Get an idle control connection to our server from the pool, if one is still alive.
+     */
+    private FTPClient acquireClient() {
+        while (true) {
+            FTPClient client;
+            synchronized (IDLE_CLIENTS) {
+                LinkedList<FTPClient> idle = IDLE_CLIENTS.get(getPoolKey());
+                if (idle == null || idle.isEmpty()) {
+                    return null;
+                }
+                client = idle.removeFirst();
+            }
+            try {
+                if (client.isConnected() && client.sendNoOp()) {
+                    return client;
+                }
+            } catch (IOException x) {
+                LOG.debug("Discarding stale FTP connection to " + host);
+            }
+            try {
+                client.disconnect();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Return a control connection to the pool, or log out if the pool is full.
+     */
+    private void releaseClient(FTPClient client) {
+        if (client.isConnected()) {
+            synchronized (IDLE_CLIENTS) {
+                LinkedList<FTPClient> idle = IDLE_CLIENTS.get(getPoolKey());
+                if (idle == null) {
+                    idle = new LinkedList<FTPClient>();
+                    IDLE_CLIENTS.put(getPoolKey(), idle);
+                }
+                if (idle.size() < MAX_IDLE_CLIENTS) {
+                    idle.addFirst(client);
+                    return;
+                }
+            }
+            try {
+                client.logout();
+            } catch (IOException e) {
+                LOG.info("Suppressing IOException from logout().");
+            }
+        }
+        try {
+            client.disconnect();
+        } catch (IOException ignored) {
+        }
+    }
 }
@@ -0,0 +1,415 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.samtools.util.SeekableStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Random access stream for HTTP resources, based on range requests.
+ *
+ * Each response is read to completion and its stream closed (rather than disconnected),
+ * so that the JRE's keep-alive cache can hand the socket to the next request.  Reads are
+ * served from a read-ahead buffer whose size adapts to the access pattern: it grows while
+ * reads are sequential and shrinks when they jump around.  Callers which know in advance
+ * which byte ranges they'll need (e.g. the chunk list from a BAM index) can pass them to
+ * <code>prefetch</code>; nearby ranges are coalesced and the resulting requests are
+ * issued in parallel.
+ */
+public class SeekableHTTPRangeStream extends SeekableStream {
+    private static final Log LOG = LogFactory.getLog(SeekableHTTPRangeStream.class);
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 30000;
+
+    /** Bounds on the read-ahead buffer. */
+    private static final int MIN_READ_AHEAD = 16 * 1024;
+    private static final int MAX_READ_AHEAD = 1024 * 1024;
+
+    /** Reads which start within this distance of the previous read are considered sequential, and prefetch ranges this close are merged. */
+    private static final int COALESCE_GAP = 32 * 1024;
+
+    /** Maximum number of bytes retained in prefetched segments. */
+    private static final long MAX_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    /** Number of range requests which may be in flight at once for prefetching. */
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    private static final ExecutorService FETCHER = Executors.newFixedThreadPool(MAX_PARALLEL_FETCHES, new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "HTTP-Fetch-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final URL url;
+    private volatile long length = -1;
+    private long position;
+
+    /** Bytes covering file positions [bufferStart, bufferStart + buffer.length). */
+    private byte[] buffer = new byte[0];
+    private long bufferStart;
+
+    /** File position following the end of the previous read, used to detect sequential access. */
+    private long lastReadEnd = -1;
+    private int readAhead = MIN_READ_AHEAD;
+
+    /** Prefetched (or prefetching) segments, keyed by start position. */
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+    private long segmentBytes;
+
+    /** Number of range requests issued, for diagnostic purposes. */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public SeekableHTTPRangeStream(URL url) {
+        this.url = url;
+    }
+
+    @Override
+    public long length() {
+        if (length < 0) {
+            HttpURLConnection conn = null;
+            try {
+                conn = openConnection();
+                conn.setRequestMethod("HEAD");
+                length = parseLength(conn.getHeaderField("Content-Length"));
+            } catch (IOException x) {
+                LOG.warn("Unable to determine length of " + url, x);
+            } finally {
+                if (conn != null) {
+                    conn.disconnect();
+                }
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        position = pos;
+    }
+
+    @Override
+    public boolean eof() throws IOException {
+        long len = length();
+        return len >= 0 && position >= len;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (position < bufferStart || position >= bufferStart + buffer.length) {
+                if (!useSegment(position)) {
+                    fetchIntoBuffer(position, len - n);
+                }
+                if (position >= bufferStart + buffer.length) {
+                    // End of file.
+                    break;
+                }
+            }
+            int bufOffset = (int)(position - bufferStart);
+            int count = Math.min(len - n, buffer.length - bufOffset);
+            System.arraycopy(buffer, bufOffset, bytes, offset + n, count);
+            n += count;
+            position += count;
+        }
+        lastReadEnd = position;
+        return n > 0 ? n : -1;
+    }
+
+    /**
+     * Fetch the given ranges in parallel, so that subsequent reads within them don't have
+     * to wait on the network.  Ranges which are close together are merged into a single
+     * request, and ranges which are already buffered are skipped.  Segments prefetched for
+     * earlier calls are discarded, and once <code>MAX_SEGMENT_BYTES</code> have been requested
+     * the remaining ranges are left to the normal read-ahead.
+     *
+     * @param starts start positions (inclusive) of the ranges
+     * @param ends end positions (exclusive) of the ranges
+     */
+    public void prefetch(long[] starts, long[] ends) {
+        long[][] ranges = new long[starts.length][];
+        for (int i = 0; i < starts.length; i++) {
+            ranges[i] = new long[] { starts[i], ends[i] };
+        }
+        Arrays.sort(ranges, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+            }
+        });
+        synchronized (segments) {
+            for (Segment seg: segments.values()) {
+                seg.data.cancel(false);
+            }
+            segments.clear();
+            segmentBytes = 0;
+        }
+        int i = 0;
+        while (i < ranges.length && segmentBytes < MAX_SEGMENT_BYTES) {
+            long start = ranges[i][0];
+            long end = ranges[i][1];
+            int j = i + 1;
+            while (j < ranges.length && ranges[j][0] <= end + COALESCE_GAP) {
+                end = Math.max(end, ranges[j][1]);
+                j++;
+            }
+            i = j;
+            if (start >= bufferStart && end <= bufferStart + buffer.length) {
+                continue;
+            }
+            addSegment(start, Math.min(end, start + MAX_SEGMENT_BYTES - segmentBytes));
+        }
+    }
+
+    private void addSegment(final long start, final long end) {
+        synchronized (segments) {
+            Map.Entry<Long, Segment> existing = segments.floorEntry(start);
+            if (existing != null && existing.getValue().end >= end) {
+                return;
+            }
+            Future<byte[]> data = FETCHER.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return fetchRange(start, (int)(end - start));
+                }
+            });
+            segments.put(start, new Segment(start, end, data));
+            segmentBytes += end - start;
+        }
+    }
+
+    /**
+     * If the given position falls within a prefetched segment, make that segment our buffer.
+     */
+    private boolean useSegment(long pos) throws IOException {
+        Segment seg;
+        synchronized (segments) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(pos);
+            if (entry == null || entry.getValue().end <= pos) {
+                return false;
+            }
+            seg = entry.getValue();
+        }
+        try {
+            byte[] data = seg.data.get();
+            if (pos >= seg.start + data.length) {
+                return false;
+            }
+            buffer = data;
+            bufferStart = seg.start;
+            return true;
+        } catch (CancellationException x) {
+            return false;
+        } catch (InterruptedException x) {
+            throw new IOException("Interrupted waiting for " + url, x);
+        } catch (ExecutionException x) {
+            LOG.info("Prefetch from " + url + " failed; retrying directly.", x.getCause());
+            synchronized (segments) {
+                segments.remove(seg.start);
+                segmentBytes -= seg.end - seg.start;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Replace our buffer with data fetched starting at the given position.  The amount
+     * read ahead grows while access is sequential and shrinks when it's random.
+     */
+    private void fetchIntoBuffer(long pos, int needed) throws IOException {
+        if (lastReadEnd >= 0 && pos >= lastReadEnd && pos - lastReadEnd <= COALESCE_GAP) {
+            readAhead = Math.min(readAhead * 2, MAX_READ_AHEAD);
+        } else {
+            readAhead = Math.max(readAhead / 2, MIN_READ_AHEAD);
+        }
+        int len = Math.max(needed, readAhead);
+        if (length >= 0) {
+            len = (int)Math.max(0, Math.min(len, length - pos));
+        }
+        buffer = len > 0 ? fetchRange(pos, len) : new byte[0];
+        bufferStart = pos;
+    }
+
+    /**
+     * Issue a single range request.  The response is read in full and its stream closed,
+     * which lets the connection go back into the keep-alive pool.
+     *
+     * @return the bytes fetched; may be shorter than <code>len</code> at the end of the file
+     */
+    private byte[] fetchRange(long start, int len) throws IOException {
+        HttpURLConnection conn = openConnection();
+        conn.setRequestProperty("Range", String.format("bytes=%d-%d", start, start + len - 1));
+        int code = conn.getResponseCode();
+        if (code == 416) {
+            // Requested range not satisfiable; we're past the end of the file.
+            drain(conn.getErrorStream());
+            return new byte[0];
+        }
+        if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
+            drain(conn.getErrorStream());
+            throw new IOException(String.format("Unable to read %s (HTTP %d).", url, code));
+        }
+        if (length < 0) {
+            String contentRange = conn.getHeaderField("Content-Range");
+            if (contentRange != null && contentRange.lastIndexOf('/') > 0) {
+                length = parseLength(contentRange.substring(contentRange.lastIndexOf('/') + 1));
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                length = parseLength(conn.getHeaderField("Content-Length"));
+            }
+        }
+        requests.incrementAndGet();
+        LOG.trace("HTTP request " + requests + " for " + url + ": " + len + " bytes at " + start);
+
+        InputStream is = conn.getInputStream();
+        try {
+            if (code == HttpURLConnection.HTTP_OK && start > 0) {
+                // Server ignored our Range header, so we have to skip up to the start.
+                long skipped = 0;
+                while (skipped < start) {
+                    long s = is.skip(start - skipped);
+                    if (s <= 0) {
+                        throw new EOFException("Unable to skip to " + start + " in " + url);
+                    }
+                    skipped += s;
+                }
+            }
+            byte[] result = new byte[len];
+            int n = 0;
+            while (n < len) {
+                int count = is.read(result, n, len - n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+            return n < len ? Arrays.copyOf(result, n) : result;
+        } finally {
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                drain(is);
+            } else {
+                // Full response which we've only partly read; not worth keeping the connection.
+                is.close();
+                conn.disconnect();
+            }
+        }
+    }
+
+    private HttpURLConnection openConnection() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestProperty("Connection", "keep-alive");
+        return conn;
+    }
+
+    /**
+     * Parse a length from a response header.  We don't use <code>getContentLength()</code>
+     * because it returns an int, which can't represent files larger than 2GB.
+     *
+     * @return the length, or -1 if the header is missing or isn't a number (e.g. "*")
+     */
+    private static long parseLength(String value) {
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Consume and close a response stream, so that the underlying connection can be reused.
+     */
+    private static void drain(InputStream is) throws IOException {
+        if (is != null) {
+            try {
+                byte[] junk = new byte[4096];
+                while (is.read(junk) >= 0) {
+                }
+            } finally {
+                is.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (segments) {
+            for (Segment seg: segments.values()) {
+                seg.data.cancel(false);
+            }
+            segments.clear();
+            segmentBytes = 0;
+        }
+        buffer = new byte[0];
+        bufferStart = 0;
+    }
+
+    @Override
+    public String getSource() {
+        return url.toString();
+    }
+
+    /**
+     * Number of range requests issued so far.
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    private static class Segment {
+        final long start;
+        final long end;
+        final Future<byte[]> data;
+
+        Segment(long start, long end, Future<byte[]> data) {
+            this.start = start;
+            this.end = end;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Records how long each phase of Savant's startup takes.  Phases which don't depend on
+ * each other can be submitted to run in the background on the startup executor; phases
+ * which do depend on them call <code>waitFor</code> first.  Once the main window is
+ * visible, the timings are written to the log; they can also be retrieved later from
+ * the startup profile dialog.
+ */
+public class StartupProfiler {
+    private static final Log LOG = LogFactory.getLog(StartupProfiler.class);
+
+    private static StartupProfiler instance;
+
+    /** Time at which the JVM was launched, used as the origin for all our timings. */
+    private final long origin;
+
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private final Map<String, Future<?>> tasks = new HashMap<String, Future<?>>();
+    private final ExecutorService executor;
+
+    /** Time at which the main window became visible, or -1 if it hasn't yet. */
+    private long interactiveTime = -1;
+
+    public static synchronized StartupProfiler getInstance() {
+        if (instance == null) {
+            instance = new StartupProfiler();
+        }
+        return instance;
+    }
+
+    private StartupProfiler() {
+        long t = System.currentTimeMillis();
+        try {
+            t = ManagementFactory.getRuntimeMXBean().getStartTime();
+        } catch (Throwable ignored) {
+            // Management beans not available; just time from the first call.
+        }
+        origin = t;
+        new Phase("JVM startup", origin).end();
+
+        final AtomicInteger threadNum = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Startup-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Start timing a phase which runs on the current thread.  The caller is responsible for
+     * calling <code>end()</code> on the returned phase (typically in a finally block).
+     */
+    public Phase begin(String name) {
+        return new Phase(name, System.currentTimeMillis());
+    }
+
+    /**
+     * Run the given phase on the startup executor.  Exceptions are logged, and don't prevent
+     * dependent phases from proceeding.
+     */
+    public synchronized void submit(final String name, final Runnable r) {
+        tasks.put(name, executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Phase p = begin(name);
+                try {
+                    r.run();
+                } catch (Throwable x) {
+                    LOG.error("Startup phase \"" + name + "\" failed.", x);
+                } finally {
+                    p.end();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Block until the named background phase has completed.  Time spent waiting is recorded
+     * as a phase of its own, so that it shows up in the profile.
+     */
+    public void waitFor(String name) {
+        Future<?> f;
+        synchronized (this) {
+            f = tasks.get(name);
+        }
+        if (f != null && !f.isDone()) {
+            Phase p = begin("Waiting for " + name);
+            try {
+                f.get();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException x) {
+                // Already logged by the task itself.
+            } finally {
+                p.end();
+            }
+        }
+    }
+
+    /**
+     * Called once the main window is visible and accepting input.  Logs the profile
+     * recorded so far; background phases which are still running will appear in the
+     * dialog once they finish.
+     */
+    public void markInteractive() {
+        synchronized (this) {
+            if (interactiveTime >= 0) {
+                return;
+            }
+            interactiveTime = System.currentTimeMillis();
+        }
+        executor.shutdown();
+        LOG.info("Startup profile:\n" + getReport());
+    }
+
+    /**
+     * Get a plain-text table of all phases recorded so far, in order of their start times.
+     */
+    public synchronized String getReport() {
+        List<Phase> sorted = new ArrayList<Phase>(phases);
+        Collections.sort(sorted, new Comparator<Phase>() {
+            @Override
+            public int compare(Phase a, Phase b) {
+                return a.start < b.start ? -1 : (a.start > b.start ? 1 : 0);
+            }
+        });
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%-40s %-16s %9s %9s%n", "Phase", "Thread", "Start", "Time"));
+        for (Phase p: sorted) {
+            result.append(String.format("%-40s %-16s %6d ms %6d ms%n", p.name, p.thread, p.start - origin, p.end - p.start));
+        }
+        if (interactiveTime >= 0) {
+            result.append(String.format("%nMain window interactive after %d ms.%n", interactiveTime - origin));
+        }
+        for (Map.Entry<String, Future<?>> e: tasks.entrySet()) {
+            if (!e.getValue().isDone()) {
+                result.append(String.format("%s still running.%n", e.getKey()));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * A single timed phase of startup.
+     */
+    public class Phase {
+        private final String name;
+        private final String thread;
+        private final long start;
+        private long end;
+
+        private Phase(String name, long start) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.start = start;
+        }
+
+        public void end() {
+            end = System.currentTimeMillis();
+            synchronized (StartupProfiler.this) {
+                phases.add(this);
+            }
+            LOG.debug(name + " took " + (end - start) + " ms.");
+        }
+    }
+}
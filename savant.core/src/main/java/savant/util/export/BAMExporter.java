@@ -19,70 +19,421 @@
  */
 package savant.util.export;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
-import net.sf.samtools.SAMFileWriter;
-import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.*;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import net.sf.samtools.util.SeekableStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import savant.api.adapter.BAMDataSourceAdapter;
 import savant.api.adapter.RangeAdapter;
 import savant.api.adapter.TrackAdapter;
-import savant.api.data.Record;
-import savant.api.util.Resolution;
-import savant.data.types.BAMIntervalRecord;
 import savant.util.DownloadEvent;
+import savant.util.IndexCache;
+import savant.util.MiscUtils;
+import savant.util.NetworkUtils;
 
 /**
  * Export a Savant alignment track (or portion thereof) to a local bam file.  This is necessary
  * because GATK only deals with local files, and not with streams.
  *
+ * When an entire reference is being exported, we don't decode the alignments at all.  Instead,
+ * the chunk list from the BAM index tells us which stretches of the file contain the reference's
+ * alignments, and the compressed BGZF blocks in those stretches are copied verbatim.  Only the
+ * blocks at either end of a chunk, which may be shared with other references, are decompressed
+ * and recompressed.  Partial references are streamed record-by-record.  Either way, memory use
+ * doesn't depend on the amount of data being exported.
+ *
+ * Since copied blocks can't be filtered, unmapped reads which have been placed alongside their
+ * mapped mates are kept in both modes, just as <code>samtools view</code> keeps them for a region.
+ *
  * @author tarkvara
  */
 public class BAMExporter extends TrackExporter {
+    private static final Log LOG = LogFactory.getLog(BAMExporter.class);
+
+    /** Size of BGZF block header. */
+    private static final int BLOCK_HEADER_LENGTH = 18;
+
+    /** Bin number used by the BAI format for per-reference metadata, rather than real chunks. */
+    private static final int METADATA_BIN = 37450;
+
+    /** How many compressed bytes to copy between progress events. */
+    private static final long PROGRESS_INTERVAL = 1 << 20;
+
+    private final URI uri;
+    private final SAMFileHeader header;
+
+    /** Raw input, used for reading the header and copying blocks. */
+    private SeekableStream input;
+
+    /** Reader for partial references which have to be exported record-by-record. */
+    private SAMFileReader reader;
+
+    /** Destination for BAM output.  Blocks are copied directly to rawOutput, bypassing the compressor. */
+    private OutputStream rawOutput;
+    private BlockCompressedOutputStream bgzfOutput;
+    private BAMRecordCodec codec;
 
-    /** For writing to destination SAM/BAM file. */
-    SAMFileWriter samWriter;
+    /** For writing to destination SAM file.  Not used for BAM output. */
+    private SAMFileWriter samWriter;
 
     /**
      * Should be instantiated from TrackExporter.getExporter();
      */
-    BAMExporter(TrackAdapter t, File f) {
+    BAMExporter(TrackAdapter t, File f) throws IOException {
         super(t, f);
+        uri = track.getDataSource().getURI();
+        header = ((BAMDataSourceAdapter)track.getDataSource()).getHeader();
+        input = NetworkUtils.getSeekableStreamForURI(uri);
 
-        // If the destFile extension is .sam, it will create a SAM text file.
-        // If it's .bam, it will create a BAM file and corresponding index.
-        samWriter = new SAMFileWriterFactory().setCreateIndex(true).makeSAMOrBAMWriter(((BAMDataSourceAdapter)track.getDataSource()).getHeader(), true, destFile);
+        if (destFile.getName().toLowerCase().endsWith(".sam")) {
+            samWriter = new SAMFileWriterFactory().makeSAMWriter(header, true, destFile);
+        } else {
+            rawOutput = new BufferedOutputStream(new FileOutputStream(destFile));
+            bgzfOutput = new BlockCompressedOutputStream(rawOutput, destFile);
+            codec = new BAMRecordCodec(header);
+            codec.setOutputStream(bgzfOutput);
+            copyHeader();
+        }
     }
 
     /**
-     * Clean up resources when the export is finished.
+     * Clean up resources when the export is finished.  For BAM output, this is also where we
+     * create the index.
      */
     @Override
-    void close() {
+    void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (input != null) {
+            input.close();
+            input = null;
+        }
         if (samWriter != null) {
             samWriter.close();
+            samWriter = null;
+        }
+        if (bgzfOutput != null) {
+            bgzfOutput.close();
+            bgzfOutput = null;
+            if (!indexing) {
+                return;
+            }
+
+            // Indexing a local file is quick compared to the copying.
+            String path = destFile.getPath();
+            File indexFile = new File(path.substring(0, path.lastIndexOf('.')) + BAMIndex.BAMIndexSuffix);
+            SAMFileReader indexReader = new SAMFileReader(destFile);
+            indexReader.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
+            try {
+                indexReader.enableFileSource(true);
+                BAMIndexer indexer = new BAMIndexer(indexFile, header);
+                SAMRecordIterator iter = indexReader.iterator();
+                while (iter.hasNext()) {
+                    indexer.processAlignment(iter.next());
+                }
+                iter.close();
+                indexer.finish();
+            } finally {
+                indexReader.close();
+            }
         }
     }
 
     /**
-     * Export the specified reference (or subrange thereof) to the given output stream.
+     * Export the specified reference (or subrange thereof) to the destination file.
      * This may be invoked as part of a large export (i.e. whole genome).
      * 
      * @param ref the reference containing the range be exported
      * @param r the range to be exported (must be non-null)
-     * @param output destination for fasta data
      * @throws IOException 
      */
     @Override
     void exportRange(String ref, RangeAdapter r) throws IOException, InterruptedException {
-        fireEvent(new DownloadEvent(-1.0));
-        List<Record> recs = track.getDataSource().getRecords(ref, r, Resolution.HIGH, null);
-        fireEvent(new DownloadEvent(0.5));
-        for (Record rec: recs) {
-            samWriter.addAlignment(((BAMIntervalRecord)rec).getSAMRecord());
+        fireEvent(new DownloadEvent((double)basesSoFar / totalBases));
+        String bamRef = getBAMReference(ref);
+        if (bamRef == null) {
+            LOG.info(ref + " not found in " + uri + "; skipping.");
+        } else {
+            SAMSequenceRecord seq = header.getSequence(bamRef);
+            if (bgzfOutput != null && r.getFrom() <= 1 && r.getTo() >= seq.getSequenceLength()) {
+                copyReference(seq.getSequenceIndex(), r.getLength());
+            } else {
+                streamRecords(bamRef, r);
+            }
+        }
+        basesSoFar += r.getLength();
+        fireEvent(new DownloadEvent((double)basesSoFar / totalBases));
+    }
+
+    /**
+     * Copy the BAM header verbatim, so that the reference indices in copied records remain valid.
+     */
+    private void copyHeader() throws IOException {
+        input.seek(0);
+        DataInputStream headerInput = new DataInputStream(new BlockCompressedInputStream(input));
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        byte[] magic = new byte[4];
+        headerInput.readFully(magic);
+        headerBytes.write(magic);
+        headerBytes.write(copyBytes(headerInput, readInt(headerInput, headerBytes)));
+        int numRefs = readInt(headerInput, headerBytes);
+        for (int i = 0; i < numRefs; i++) {
+            headerBytes.write(copyBytes(headerInput, readInt(headerInput, headerBytes)));
+            readInt(headerInput, headerBytes);
         }
-        fireEvent(new DownloadEvent(1.0));
+        bgzfOutput.write(headerBytes.toByteArray());
+    }
+
+    private static int readInt(DataInputStream in, ByteArrayOutputStream copy) throws IOException {
+        byte[] buf = new byte[4];
+        in.readFully(buf);
+        copy.write(buf);
+        return ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private static byte[] copyBytes(DataInputStream in, int len) throws IOException {
+        byte[] buf = new byte[len];
+        in.readFully(buf);
+        return buf;
+    }
+
+    /**
+     * Copy all alignments for the given reference, using the chunk list from the index.
+     *
+     * @param refIndex index of the reference within the BAM header
+     * @param refLength length of the reference (for progress reporting)
+     */
+    private void copyReference(int refIndex, long refLength) throws IOException, InterruptedException {
+        List<long[]> chunks = readChunks(IndexCache.getIndexFile(uri, "bai", "bam"), refIndex);
+
+        long totalBytes = 0;
+        for (long[] c: chunks) {
+            totalBytes += (c[1] >>> 16) - (c[0] >>> 16) + 1;
+        }
+        long bytesSoFar = 0, lastProgress = 0;
+
+        for (long[] c: chunks) {
+            long beginBlock = c[0] >>> 16;
+            int beginOffset = (int)(c[0] & 0xFFFF);
+            long endBlock = c[1] >>> 16;
+            int endOffset = (int)(c[1] & 0xFFFF);
+
+            if (beginBlock == endBlock) {
+                byte[] data = readBlock(beginBlock);
+                bgzfOutput.write(data, beginOffset, endOffset - beginOffset);
+            } else {
+                long copyStart = beginBlock;
+                if (beginOffset > 0) {
+                    // First block is shared with the previous chunk, so just take the tail end of it.
+                    long[] blockSize = new long[1];
+                    byte[] data = readBlock(beginBlock, blockSize);
+                    bgzfOutput.write(data, beginOffset, data.length - beginOffset);
+                    copyStart += blockSize[0];
+                }
+                if (copyStart < endBlock) {
+                    // Everything buffered by the compressor has to go out before we copy blocks around it.
+                    bgzfOutput.flush();
+                    input.seek(copyStart);
+                    byte[] buf = new byte[65536];
+                    long remaining = endBlock - copyStart;
+                    while (remaining > 0) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                        int n = input.read(buf, 0, (int)Math.min(buf.length, remaining));
+                        if (n < 0) {
+                            throw new EOFException("Unexpected end of " + uri);
+                        }
+                        rawOutput.write(buf, 0, n);
+                        remaining -= n;
+                        bytesSoFar += n;
+                        if (bytesSoFar - lastProgress > PROGRESS_INTERVAL) {
+                            lastProgress = bytesSoFar;
+                            fireEvent(new DownloadEvent((basesSoFar + refLength * bytesSoFar / totalBytes) / (double)totalBases));
+                        }
+                    }
+                }
+                if (endOffset > 0) {
+                    byte[] data = readBlock(endBlock);
+                    bgzfOutput.write(data, 0, endOffset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream the records for a partial reference.  Used when only a subrange is being
+     * exported, or when the output is a SAM file.
+     */
+    private void streamRecords(String bamRef, RangeAdapter r) throws IOException, InterruptedException {
+        if (reader == null) {
+            reader = new SAMFileReader(NetworkUtils.getSeekableStreamForURI(uri), IndexCache.getIndexFile(uri, "bai", "bam"), false);
+            reader.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
+        }
+        SAMRecordIterator iter = reader.query(bamRef, r.getFrom(), r.getTo(), false);
+        try {
+            int n = 0;
+            while (iter.hasNext()) {
+                SAMRecord rec = iter.next();
+                if (samWriter != null) {
+                    samWriter.addAlignment(rec);
+                } else {
+                    codec.encode(rec);
+                }
+                if (++n % 10000 == 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    long pos = Math.max(rec.getAlignmentStart() - r.getFrom(), 0);
+                    fireEvent(new DownloadEvent((basesSoFar + pos) / (double)totalBases));
+                }
+            }
+        } finally {
+            iter.close();
+        }
+    }
+
+    /**
+     * The genome and the BAM file may use different names for the same reference (e.g. "chr1" vs. "1").
+     */
+    private String getBAMReference(String ref) {
+        if (header.getSequence(ref) != null) {
+            return ref;
+        }
+        String homogenized = MiscUtils.homogenizeSequence(ref);
+        for (SAMSequenceRecord seq: header.getSequenceDictionary().getSequences()) {
+            if (MiscUtils.homogenizeSequence(seq.getSequenceName()).equals(homogenized)) {
+                return seq.getSequenceName();
+            }
+        }
+        return null;
+    }
+
+    private byte[] readBlock(long address) throws IOException {
+        return readBlock(address, new long[1]);
+    }
+
+    /**
+     * Read and decompress the BGZF block at the given file address.
+     *
+     * @param address file offset of the start of the block
+     * @param blockSize on return, contains the compressed size of the block
+     * @return the uncompressed contents of the block
+     */
+    private byte[] readBlock(long address, long[] blockSize) throws IOException {
+        input.seek(address);
+        byte[] blockHeader = new byte[BLOCK_HEADER_LENGTH];
+        readFully(blockHeader, 0, BLOCK_HEADER_LENGTH);
+        if ((blockHeader[0] & 0xFF) != 31 || (blockHeader[1] & 0xFF) != 139 || blockHeader[12] != 'B' || blockHeader[13] != 'C') {
+            throw new IOException("Invalid BGZF block at " + address + " in " + uri);
+        }
+        int size = ((blockHeader[16] & 0xFF) | (blockHeader[17] & 0xFF) << 8) + 1;
+        blockSize[0] = size;
+        byte[] block = new byte[size - BLOCK_HEADER_LENGTH];
+        readFully(block, 0, block.length);
+
+        // The block ends with the CRC and the uncompressed size.
+        ByteBuffer footer = ByteBuffer.wrap(block, block.length - 4, 4).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] result = new byte[footer.getInt()];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, 0, block.length - 8);
+            inflater.inflate(result);
+        } catch (DataFormatException x) {
+            throw new IOException("Unable to decompress BGZF block at " + address + " in " + uri, x);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    private void readFully(byte[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = input.read(buf, off, len);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of " + uri);
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Read the chunk list for the given reference from a BAI file.  The chunks from all bins
+     * are sorted and merged, so that they can be copied in file order.
+     *
+     * @return list of [start, end) virtual file offsets
+     */
+    static List<long[]> readChunks(File indexFile, int refIndex) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        List<long[]> chunks = new ArrayList<long[]>();
+        try {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (magic[0] != 'B' || magic[1] != 'A' || magic[2] != 'I' || magic[3] != 1) {
+                throw new IOException(indexFile + " is not a BAM index.");
+            }
+            int numRefs = readLEInt(in);
+            for (int i = 0; i < numRefs && i <= refIndex; i++) {
+                int numBins = readLEInt(in);
+                for (int j = 0; j < numBins; j++) {
+                    int bin = readLEInt(in);
+                    int numChunks = readLEInt(in);
+                    for (int k = 0; k < numChunks; k++) {
+                        long start = readLELong(in);
+                        long end = readLELong(in);
+                        if (i == refIndex && bin != METADATA_BIN) {
+                            chunks.add(new long[] { start, end });
+                        }
+                    }
+                }
+                int numIntervals = readLEInt(in);
+                in.readFully(new byte[numIntervals * 8]);
+            }
+        } finally {
+            in.close();
+        }
+
+        Collections.sort(chunks, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+            }
+        });
+        List<long[]> merged = new ArrayList<long[]>();
+        long[] current = null;
+        for (long[] c: chunks) {
+            if (current != null && c[0] <= current[1]) {
+                current[1] = Math.max(current[1], c[1]);
+            } else {
+                current = c;
+                merged.add(current);
+            }
+        }
+        return merged;
+    }
+
+    private static int readLEInt(DataInputStream in) throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private static long readLELong(DataInputStream in) throws IOException {
+        return Long.reverseBytes(in.readLong());
     }
 }
@@ -49,6 +49,9 @@ public abstract class TrackExporter extends Controller<DownloadEvent> {
     /** Destination file for output. */
     protected File destFile;
 
+    /** If false, no index is created for the output (e.g. because it's a pipe rather than a file). */
+    protected boolean indexing = true;
+
     protected TrackExporter(TrackAdapter t, File f) {
         track = t;
         destFile = f;
@@ -83,6 +86,14 @@ public void export(String ref, RangeAdapter r) throws IOException, InterruptedEx
         fireEvent(new DownloadEvent(destFile));
     }
 
+    /**
+     * Determine whether an index will be created for the exported file.  Indexing requires
+     * re-reading the output, so it should be turned off when exporting to a pipe.
+     */
+    public void setIndexing(boolean value) {
+        indexing = value;
+    }
+
     /**
      * Give derived classes a chance to clean up when they've finished processing.
      */
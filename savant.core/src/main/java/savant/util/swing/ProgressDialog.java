@@ -21,6 +21,8 @@
 
 import java.awt.KeyboardFocusManager;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 /**
  * Simple general-purpose progress-dialog.
@@ -30,6 +32,9 @@
 public class ProgressDialog extends javax.swing.JDialog {
     private static ProgressDialog instance = null;
 
+    /** If non-null, fired when the user clicks Cancel. */
+    private ActionListener cancellationListener;
+
     /** Creates new form ProgressDialog */
     private ProgressDialog(Window parent) {
         super(parent, ModalityType.APPLICATION_MODAL);
@@ -103,7 +108,11 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
     }// </editor-fold>//GEN-END:initComponents
 
     private void cancelButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cancelButtonActionPerformed
+        ActionListener listener = cancellationListener;
         showProgress(null, 1.0);
+        if (listener != null) {
+            listener.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "cancel"));
+        }
     }//GEN-LAST:event_cancelButtonActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -113,6 +122,15 @@ private void cancelButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
     // End of variables declaration//GEN-END:variables
 
     public static void showProgress(String message, double fraction) {
+        showProgress(message, fraction, null);
+    }
+
+    /**
+     * Show the progress dialog.
+     *
+     * @param cancellationListener if non-null, fired when the user clicks Cancel; otherwise Cancel just dismisses the dialog
+     */
+    public static void showProgress(String message, double fraction, ActionListener cancellationListener) {
         if (fraction >= 1.0) {
             if (instance != null) {
                 instance.setVisible(false);
@@ -122,11 +140,15 @@ public static void showProgress(String message, double fraction) {
             if (instance == null) {
                 Window parent = KeyboardFocusManager.getCurrentKeyboardFocusManager().getActiveWindow();
                 instance = new ProgressDialog(parent);
+                instance.cancellationListener = cancellationListener;
                 instance.setProgress(fraction);
                 instance.messageLabel.setText(message);
                 instance.setLocationRelativeTo(parent);
                 instance.setVisible(true);
             } else {
+                if (cancellationListener != null) {
+                    instance.cancellationListener = cancellationListener;
+                }
                 instance.setProgress(fraction);
                 instance.messageLabel.setText(message);
             }
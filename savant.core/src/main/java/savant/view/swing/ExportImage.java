@@ -27,6 +27,7 @@
 import java.util.List;
 import javax.imageio.ImageIO;
 
+import savant.api.adapter.RangeAdapter;
 import savant.api.util.DialogUtils;
 import savant.controller.FrameController;
 import savant.controller.GenomeController;
@@ -67,15 +68,11 @@ public static BufferedImage beginExport(String[] trackNames, int base){
 
         //generate images
         List<BufferedImage> images = new ArrayList<BufferedImage>();
-        int totalWidth = 0;
-        int totalHeight = 45;
         for(int j = 0; j <trackNames.length; j++){
             for(int i = 0; i <frames.size(); i++){
                 if(frames.get(i).getName().equals(trackNames[j])){
                     BufferedImage im = frames.get(i).frameToImage(base);
                     images.add(im);
-                    totalWidth = Math.max(totalWidth, im.getWidth());
-                    totalHeight += im.getHeight();
                     trackNames[j] = null;
                     break;
                 }
@@ -87,33 +84,40 @@ public static BufferedImage beginExport(String[] trackNames, int base){
             return null;
         }
 
-        BufferedImage out = new BufferedImage(totalWidth, totalHeight, BufferedImage.TYPE_INT_RGB);
+        LocationController lc = LocationController.getInstance();
+        return composeImages(images, lc.getReferenceName(), lc.getRange());
+    }
 
+    /**
+     * Stack the given frame images into a single image, with a caption describing the location.
+     *
+     * @param images images of individual frames, from top to bottom
+     * @param ref the reference which was rendered
+     * @param range the range which was rendered
+     * @return the combined image
+     */
+    public static BufferedImage composeImages(List<BufferedImage> images, String ref, RangeAdapter range) {
+        int totalWidth = 0;
+        int totalHeight = 45;
+        for (BufferedImage im: images) {
+            totalWidth = Math.max(totalWidth, im.getWidth());
+            totalHeight += im.getHeight();
+        }
 
-        //write lc at top
-        LocationController lc = LocationController.getInstance();
-        int start = lc.getRangeStart();
-        int end = lc.getRangeEnd();
-        String toWrite = "Genome:  " + GenomeController.getInstance().getGenome().getName() + "    Reference:  " + lc.getReferenceName() + "    Range:  " + start + " - " + end;
+        BufferedImage out = new BufferedImage(totalWidth, totalHeight, BufferedImage.TYPE_INT_RGB);
+
+        //write location at top
+        String toWrite = "Genome:  " + GenomeController.getInstance().getGenome().getName() + "    Reference:  " + ref + "    Range:  " + range.getFrom() + " - " + range.getTo();
         Graphics2D g = out.createGraphics();
         g.setColor(Color.white);
         g.setFont(new Font(null, Font.BOLD, 13));
         g.drawString(toWrite, 2, 17);
 
         //draw images
-        int outX = 0;
         int outY = 25;
-        for(int i = 0; i < images.size(); i++){
-            BufferedImage current = images.get(i);
-            for(int y = 0; y < current.getHeight(); y++){
-                for(int x = 0; x < current.getWidth(); x++){
-                    int color = current.getRGB(x, y);
-                    out.setRGB(outX, outY, color);
-                    outX++;
-                }
-                outX = 0;
-                outY++;
-            }
+        for (BufferedImage current: images) {
+            g.drawImage(current, 0, outY, null);
+            outY += current.getHeight();
         }
 
         //write message at bottom
@@ -122,7 +126,6 @@ public static BufferedImage beginExport(String[] trackNames, int base){
         g.setFont(new Font(null, Font.BOLD, 10));
         g.drawString(toWrite, 2, outY+14);
 
-        //save(out);
         return out;
     }
 
@@ -43,6 +43,7 @@
 import savant.controller.FrameController;
 import savant.controller.GenomeController;
 import savant.controller.LocationController;
+import savant.controller.RetrievalCoordinator;
 import savant.controller.TrackController;
 import savant.plugin.SavantPanelPlugin;
 import savant.settings.InterfaceSettings;
@@ -425,7 +426,9 @@ public void drawTracksInRange(String reference, Range range) {
             t.getRenderer().clearInstructions();
             t.prepareForRendering(reference, range);
         }
-        graphPane.repaint();
+        if (!RetrievalCoordinator.getInstance().isFanningOut()) {
+            graphPane.repaint();
+        }
     }
 
     /**
@@ -503,14 +506,18 @@ public void handleEvent(DataRetrievalEvent evt) {
                 case COMPLETED:
                     LOG.trace("Frame " + getKey() + " received dataRetrievalCompleted.  Forcing full render.");
                     setYMaxVisible(evt.getData() != null && evt.getData().size() > 0);
-                    graphPane.setRenderForced();
-                    graphPane.repaint();
+                    if (!RetrievalCoordinator.getInstance().trackFinished(evt.getTrack())) {
+                        graphPane.setRenderForced();
+                        graphPane.repaint();
+                    }
                     break;
                 case FAILED:
                     LOG.trace("Frame " + getKey() + " received dataRetrievalFailed.  Forcing full render.");
                     setYMaxVisible(false);
-                    graphPane.setRenderForced();
-                    graphPane.repaint();
+                    if (!RetrievalCoordinator.getInstance().trackFinished(evt.getTrack())) {
+                        graphPane.setRenderForced();
+                        graphPane.repaint();
+                    }
                     break;
             }
         } else {
@@ -47,13 +47,12 @@
 import savant.api.util.Listener;
 import savant.controller.GenomeController;
 import savant.controller.LocationController;
-import savant.controller.TrackController;
+import savant.controller.SearchController;
 import savant.api.event.GenomeChangedEvent;
 import savant.util.Bookmark;
 import savant.util.MiscUtils;
 import savant.util.Range;
 import savant.view.icon.SavantIconFactory;
-import savant.view.tracks.Track;
 
 /**
  * Contains the various widgets for providing easy range navigation.
@@ -65,6 +64,16 @@ public class NavigationBar extends JPanel {
     private static final Dimension LOCATION_SIZE = new Dimension(270, 22);
     private static final Dimension LENGTH_SIZE = new Dimension(100, 22);
     private static final Dimension ICON_SIZE = MiscUtils.MAC ? new Dimension(50, 23) : new Dimension(27, 27);
+
+    /** Maximum time (in milliseconds) we'll wait for the tracks when the user explicitly navigates. */
+    private static final int SEARCH_TIMEOUT = 2000;
+
+    /** Maximum time (in milliseconds) we'll wait for the tracks when populating the menu. */
+    private static final int TYPE_AHEAD_TIMEOUT = 300;
+
+    /** Delay after the last keystroke before we start a type-ahead search. */
+    private static final int TYPE_AHEAD_DELAY = 150;
+
     private LocationController locationController = LocationController.getInstance();
     /**
      * Range text-box
@@ -86,6 +95,12 @@ public class NavigationBar extends JPanel {
      */
     private boolean currentlyPopulating = false;
 
+    /**
+     * Fires shortly after the user stops typing, so that we can search the tracks in
+     * the background before the menu is actually requested.
+     */
+    private Timer typeAheadTimer;
+
     NavigationBar() {
 
         this.setOpaque(false);
@@ -196,7 +211,21 @@ public void popupMenuCanceled(PopupMenuEvent pme) {
         // We have to turn off default tab-handling so that tab can pop up our list.
         Component textField = locationField.getEditor().getEditorComponent();
         textField.setFocusTraversalKeys(KeyboardFocusManager.FORWARD_TRAVERSAL_KEYS, Collections.EMPTY_SET);
+        typeAheadTimer = new Timer(TYPE_AHEAD_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                startTypeAheadSearch();
+            }
+        });
+        typeAheadTimer.setRepeats(false);
         textField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent evt) {
+                if (evt.getKeyChar() != KeyEvent.VK_TAB && evt.getKeyChar() != KeyEvent.VK_ENTER) {
+                    typeAheadTimer.restart();
+                }
+            }
+
             @Override
             public void keyPressed(KeyEvent evt) {
                 if (evt.getKeyCode() == KeyEvent.VK_TAB) {
@@ -504,14 +533,12 @@ private static Component getRigidPadding() {
      */
     private void setRangeFromText(String text) {
         try {
-            for (Track t : TrackController.getInstance().getTracks()) {
-                List<BookmarkAdapter> marks = t.getDataSource().lookup(text.toLowerCase());
-                if (marks != null && marks.size() > 0) {
-                    // Note that if there is more than one matching bookmark, this will select the first one.
-                    // This allows a knowledgeable user to go directly to the desired gene without having to pop up the combo.
-                    locationController.setLocation(marks.get(0).getReference(), (Range) marks.get(0).getRange());
-                    return;
-                }
+            List<BookmarkAdapter> marks = SearchController.getInstance().search(text, SEARCH_TIMEOUT);
+            if (marks.size() > 0) {
+                // Note that if there is more than one matching bookmark, this will select the first one.
+                // This allows a knowledgeable user to go directly to the desired gene without having to pop up the combo.
+                locationController.setLocation(marks.get(0).getReference(), (Range) marks.get(0).getRange());
+                return;
             }
             // No lookup found, so try to parse it as a range string.
             Bookmark mark = new Bookmark(text);
@@ -521,6 +548,31 @@ private void setRangeFromText(String text) {
         }
     }
 
+    /**
+     * Search the tracks in the background for the text which has been typed so far.
+     * The results will be cached by the SearchController, so the menu can be populated
+     * without delay.  If the menu is already showing, it will be refreshed.
+     */
+    private void startTypeAheadSearch() {
+        final String text = (String) locationField.getEditor().getItem();
+        if (text.length() > 0) {
+            new SwingWorker<Object, Object>() {
+                @Override
+                protected Object doInBackground() {
+                    SearchController.getInstance().search(text + "*", SEARCH_TIMEOUT);
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    if (locationField.isPopupVisible() && text.equals(locationField.getEditor().getItem())) {
+                        populateCombo();
+                    }
+                }
+            }.execute();
+        }
+    }
+
     private void updateLocation(String ref, Range r) {
         String s = String.format("%s: %,d - %,d", ref, r.getFrom(), r.getTo());
         AnalyticsAgent.log(
@@ -542,13 +594,8 @@ private void populateCombo() {
         if (!text.equals(lastPoppedUp)) {
             Collection<String> newItems = new ArrayList<String>();
             if (text.length() > 0) {
-                for (Track t : TrackController.getInstance().getTracks()) {
-                    List<BookmarkAdapter> marks = t.getDataSource().lookup(text.toLowerCase() + "*");
-                    if (marks != null && marks.size() > 0) {
-                        for (BookmarkAdapter bm : marks) {
-                            newItems.add(String.format("%s (%s)", bm.getAnnotation(), ((Bookmark) bm).getLocationText()));
-                        }
-                    }
+                for (BookmarkAdapter bm : SearchController.getInstance().search(text + "*", TYPE_AHEAD_TIMEOUT)) {
+                    newItems.add(String.format("%s (%s)", bm.getAnnotation(), ((Bookmark) bm).getLocationText()));
                 }
             }
             if (newItems.size() > 0 || lastPoppedUp != null) {
@@ -0,0 +1,385 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.view.swing;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import javax.swing.JPanel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import savant.api.adapter.FrameAdapter;
+import savant.api.adapter.GraphPaneAdapter;
+import savant.api.data.Record;
+import savant.api.event.DataRetrievalEvent;
+import savant.api.event.PopupEvent;
+import savant.api.util.Listener;
+import savant.exception.RenderingException;
+import savant.plugin.SavantPanelPlugin;
+import savant.selection.PopupPanel;
+import savant.settings.ColourSettings;
+import savant.util.*;
+import savant.view.tracks.Track;
+import savant.view.tracks.TrackCreationEvent;
+import savant.view.tracks.TrackRenderer;
+
+
+/**
+ * Stand-in for a GraphPane which renders a frame's tracks into an image, without touching the
+ * on-screen view.  Each instance has its own coordinate system, so several can be rendered
+ * concurrently (e.g. when exporting images for a list of bookmarks).
+ */
+public class OffscreenGraphPane implements GraphPaneAdapter {
+    private static final Log LOG = LogFactory.getLog(OffscreenGraphPane.class);
+
+    /** Tracks which don't fit into this height will be truncated. */
+    private static final int MAX_HEIGHT = 8192;
+
+    private final Frame frame;
+    private final FrameAdapter frameProxy;
+    private final int width;
+    private final int minHeight;
+    private int height;
+    private int xMin, xMax;
+    private int yMin, yMax;
+    private double unitWidth, unitHeight;
+    private AxisType yAxisType = AxisType.NONE;
+    private boolean scaledToFit = true;
+    private int requestedHeight;
+
+    /**
+     * Create an offscreen pane with the same dimensions as the given frame's graph pane.
+     */
+    public OffscreenGraphPane(Frame f) {
+        frame = f;
+        GraphPaneAdapter gp = f.getGraphPane();
+        width = gp.getWidth();
+        minHeight = Math.max(f.getFrameLandscape().getHeight(), 1);
+        height = minHeight;
+        frameProxy = new FrameProxy();
+    }
+
+    /**
+     * Fetch data and render the frame's tracks over the given range.  Data retrieval is
+     * synchronized on each track, so this is safe to call from any thread.
+     *
+     * @param ref the reference to be rendered
+     * @param r the range to be rendered
+     * @return an image of the frame's contents, labelled with the track name
+     */
+    public BufferedImage render(String ref, Range r) throws Exception {
+        Track[] tracks = frame.getTracks();
+        TrackRenderer[] renderers = new TrackRenderer[tracks.length];
+        for (int i = 0; i < tracks.length; i++) {
+            List<Record> data = tracks[i].retrieveDataForRange(ref, r);
+            renderers[i] = tracks[i].createOffscreenRenderer(ref, r, data);
+        }
+
+        // Renderers which aren't scaled-to-fit may ask for more room, in which case we render again.
+        BufferedImage result = null;
+        for (int pass = 0; pass < 2 && result == null; pass++) {
+            requestedHeight = 0;
+            result = renderPass(tracks, renderers, r);
+            if (requestedHeight > 0) {
+                height = requestedHeight;
+                result = null;
+            }
+        }
+        if (result == null) {
+            result = renderPass(tracks, renderers, r);
+        }
+
+        Graphics2D g2 = result.createGraphics();
+        g2.setColor(Color.black);
+        g2.setFont(new Font(null, Font.BOLD, 13));
+        g2.drawString(tracks[0].getName(), 2, 15);
+        return result;
+    }
+
+    /**
+     * Render the tracks once, consolidating their vertical ranges the same way that GraphPane does.
+     */
+    private BufferedImage renderPass(Track[] tracks, TrackRenderer[] renderers, Range xRange) {
+        int minYRange = Integer.MAX_VALUE;
+        int maxYRange = Integer.MIN_VALUE;
+        AxisType bestYAxis = AxisType.NONE;
+        for (int i = 0; i < tracks.length; i++) {
+            AxisRange axisRange = (AxisRange)renderers[i].getInstruction(DrawingInstruction.AXIS_RANGE);
+            if (axisRange != null) {
+                minYRange = Math.min(minYRange, axisRange.getYMin());
+                maxYRange = Math.max(maxYRange, axisRange.getYMax());
+            }
+            switch (tracks[i].getYAxisType(tracks[i].getResolution(xRange))) {
+                case INTEGER_GRIDLESS:
+                    if (bestYAxis == AxisType.NONE) {
+                        bestYAxis = AxisType.INTEGER_GRIDLESS;
+                    }
+                    break;
+                case INTEGER:
+                    if (bestYAxis != AxisType.REAL) {
+                        bestYAxis = AxisType.INTEGER;
+                    }
+                    break;
+                case REAL:
+                    bestYAxis = AxisType.REAL;
+                    break;
+            }
+        }
+        setXRange(xRange);
+        yAxisType = bestYAxis;
+        setYRange(new Range(minYRange, maxYRange));
+        Range consolidatedYRange = new Range(yMin, yMax);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setPaint(new GradientPaint(0, 0, ColourSettings.getColor(ColourKey.GRAPH_PANE_BACKGROUND_TOP), 0, height, ColourSettings.getColor(ColourKey.GRAPH_PANE_BACKGROUND_BOTTOM)));
+        g2.fillRect(0, 0, width, height);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        boolean nothingRendered = true;
+        String message = null;
+        int priority = -1;
+        for (int i = 0; i < tracks.length; i++) {
+            AxisRange axes = (AxisRange)renderers[i].getInstruction(DrawingInstruction.AXIS_RANGE);
+            renderers[i].addInstruction(DrawingInstruction.AXIS_RANGE, new AxisRange(axes != null ? axes.getXRange() : xRange, consolidatedYRange));
+            try {
+                renderers[i].render(g2, this);
+                nothingRendered = false;
+            } catch (RenderingException rx) {
+                if (rx.getPriority() > priority) {
+                    message = rx.getMessage();
+                    priority = rx.getPriority();
+                }
+            } catch (Throwable x) {
+                LOG.error("Error rendering " + tracks[i] + " offscreen.", x);
+                message = MiscUtils.getMessage(x);
+                priority = RenderingException.ERROR_PRIORITY;
+            }
+        }
+        if (nothingRendered && message != null) {
+            drawMessage(g2, message);
+        }
+        return image;
+    }
+
+    /**
+     * Draw the first line of a message in the centre of the pane.
+     */
+    private void drawMessage(Graphics2D g2, String message) {
+        int returnPos = message.indexOf('\n');
+        if (returnPos > 0) {
+            message = message.substring(0, returnPos);
+        }
+        Font font = g2.getFont().deriveFont(Font.PLAIN, width > 500 ? 36 : (width > 150 ? 24 : 12));
+        g2.setFont(font);
+        g2.setColor(ColourSettings.getColor(ColourKey.GRAPH_PANE_MESSAGE));
+        Rectangle2D bounds = font.getStringBounds(message, g2.getFontRenderContext());
+        FontMetrics metrics = g2.getFontMetrics();
+        g2.drawString(message, (width - (int)bounds.getWidth()) / 2, height / 2 + (metrics.getAscent() - metrics.getDescent()) / 2);
+    }
+
+    @Override
+    public int transformXPixel(double pix) {
+        return (int)Math.floor(pix / unitWidth + xMin);
+    }
+
+    @Override
+    public double transformYPixel(double pix) {
+        return (height - pix) / unitHeight + yMin;
+    }
+
+    @Override
+    public double transformXPos(int pos) {
+        return (pos - xMin) * unitWidth;
+    }
+
+    @Override
+    public double transformYPos(double pos) {
+        return height - ((pos - yMin) * unitHeight);
+    }
+
+    @Override
+    public void setRenderForced() {
+    }
+
+    @Override
+    public void repaint() {
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    @Override
+    public double getUnitWidth() {
+        return unitWidth;
+    }
+
+    @Override
+    public double getUnitHeight() {
+        return unitHeight;
+    }
+
+    @Override
+    public void setUnitHeight(double h) {
+        unitHeight = h;
+    }
+
+    @Override
+    public void setXRange(Range r) {
+        if (r != null) {
+            xMin = r.getFrom();
+            xMax = r.getTo();
+            unitWidth = (double)width / (xMax - xMin + 1);
+        }
+    }
+
+    @Override
+    public Range getYRange() {
+        return new Range(yMin, yMax);
+    }
+
+    @Override
+    public void setYRange(Range r) {
+        if (r != null && yAxisType != AxisType.NONE) {
+            yMin = r.getFrom();
+            yMax = r.getTo();
+            if (scaledToFit) {
+                unitHeight = (double)height / (yMax - yMin);
+            }
+        }
+    }
+
+    /**
+     * Like GraphPane, but instead of resizing ourself we just note the height for the next rendering pass.
+     */
+    @Override
+    public boolean needsToResize() {
+        if (!scaledToFit) {
+            int expectedHeight = Math.min(Math.max((int)((yMax - yMin) * unitHeight), minHeight), MAX_HEIGHT);
+            if (expectedHeight != height) {
+                requestedHeight = expectedHeight;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public FrameAdapter getParentFrame() {
+        return frameProxy;
+    }
+
+    @Override
+    public boolean isScaledToFit() {
+        return scaledToFit;
+    }
+
+    @Override
+    public void setScaledToFit(boolean value) {
+        scaledToFit = value;
+    }
+
+    @Override
+    public void addPopupListener(Listener<PopupEvent> l) {
+    }
+
+    @Override
+    public void removePopupListener(Listener<PopupEvent> l) {
+    }
+
+    @Override
+    public void firePopupEvent(PopupPanel panel) {
+    }
+
+    @Override
+    public void popupHidden() {
+    }
+
+    @Override
+    public void recordSelected(Record rec) {
+    }
+
+    /**
+     * Renderers occasionally talk to their parent frame.  Requests which would change the frame's
+     * appearance are redirected to the offscreen pane.
+     */
+    private class FrameProxy implements FrameAdapter {
+        @Override
+        public void drawModeChanged(Track track) {
+        }
+
+        @Override
+        public JPanel getLayerCanvas(SavantPanelPlugin plugin, boolean mayCreate) {
+            return null;
+        }
+
+        @Override
+        public GraphPaneAdapter getGraphPane() {
+            return OffscreenGraphPane.this;
+        }
+
+        @Override
+        public void forceRedraw() {
+        }
+
+        @Override
+        public void setHeightFromSlider() {
+            unitHeight = frame.getIntervalHeight();
+            scaledToFit = false;
+        }
+
+        @Override
+        public Track[] getTracks() {
+            return frame.getTracks();
+        }
+
+        @Override
+        public void handleEvent(TrackCreationEvent evt) {
+        }
+
+        @Override
+        public int getIntervalHeight() {
+            return frame.getIntervalHeight();
+        }
+
+        @Override
+        public void setCloseable(boolean closeable) {
+        }
+
+        @Override
+        public void handleEvent(DataRetrievalEvent evt) {
+        }
+    }
+}
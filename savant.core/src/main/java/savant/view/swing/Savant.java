@@ -54,6 +54,7 @@
 import org.ut.biolab.savant.analytics.savantanalytics.AnalyticsAgent;
 
 import savant.api.adapter.DataSourceAdapter;
+import savant.data.types.Genome;
 import savant.api.event.BookmarksChangedEvent;
 import savant.api.event.GenomeChangedEvent;
 import savant.api.event.PluginEvent;
@@ -72,6 +73,7 @@
 import savant.util.ColourKey;
 import savant.util.MiscUtils;
 import savant.util.SavantHTTPAuthenticator;
+import savant.util.StartupProfiler;
 import savant.util.Version;
 import savant.util.error.report.BugReportDialog;
 import savant.util.swing.TrackChooser;
@@ -192,6 +194,10 @@ private void initDocking() {
     private LocationController locationController = LocationController.getInstance();
     private static Savant instance = null;
 
+    /** Name of the startup phase which installs plugins passed on the command-line. */
+    private static final String INSTALL_PLUGINS_PHASE = "Installing plugins";
+    private static final String ANALYTICS_SESSION_PHASE = "Analytics session";
+
     public static synchronized Savant getInstance() {
         if (instance == null) {
             instance = new Savant();
@@ -319,24 +325,41 @@ public void handleEvent(GenomeChangedEvent event) {
 
         s.setStatus("Initializing GUI");
 
+        StartupProfiler profiler = StartupProfiler.getInstance();
+        StartupProfiler.Phase phase = profiler.begin("Initializing GUI");
         initComponents();
         customizeUI();
         init();
         initHiddenShortcuts();
+        phase.end();
 
         if (BrowserSettings.getCheckVersionOnStartup()) {
-            s.setStatus("Checking version");
-            checkVersion(false);
+            profiler.submit("Checking version", new Runnable() {
+                @Override
+                public void run() {
+                    checkVersion(false);
+                }
+            });
         }
 
         if (BrowserSettings.getCollectAnonymousUsage()) {
-            logUsageStats();
+            profiler.submit("Logging usage statistics", new Runnable() {
+                @Override
+                public void run() {
+                    // Events logged before the session has started would be dropped.
+                    StartupProfiler.getInstance().waitFor(ANALYTICS_SESSION_PHASE);
+                    logUsageStats();
+                }
+            });
         }
 
         if (pluginsEnabled) {
 
             s.setStatus("Loading plugins");
 
+            // Plugins named on the command-line have to be downloaded before we scan the plugins directory.
+            profiler.waitFor(INSTALL_PLUGINS_PHASE);
+            phase = profiler.begin("Loading plugins");
 
             PluginController pluginController = PluginController.getInstance();
             pluginController.addListener(new Listener<PluginEvent>() {
@@ -358,10 +381,12 @@ public void handleEvent(PluginEvent event) {
                 }
             });
             pluginController.loadPlugins(DirectorySettings.getPluginsDirectory());
+            phase.end();
         }
 
         s.setStatus("Organizing layout");
 
+        phase = profiler.begin("Organizing layout");
         displayBookmarksPanel();
 
         if (turnExperimentalFeaturesOff) {
@@ -369,9 +394,11 @@ public void handleEvent(PluginEvent event) {
         }
 
         s.setVisible(false);
+        phase.end();
 
         if (isStandalone()) {
             makeGUIVisible();
+            profiler.markInteractive();
         }
     }
 
@@ -1192,13 +1219,21 @@ private void bugReportItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN
      */
     public static void main(String args[]) {
 
-        AnalyticsAgent.onStartSession("Savant", BrowserSettings.VERSION);
+        StartupProfiler profiler = StartupProfiler.getInstance();
+
+        // Phases which only touch the network or the file-system run in the background while we set up the GUI.
+        profiler.submit(ANALYTICS_SESSION_PHASE, new Runnable() {
+            @Override
+            public void run() {
+                AnalyticsAgent.onStartSession("Savant", BrowserSettings.VERSION);
+            }
+        });
 
         try {
             boolean loadProject = false;
             boolean loadPlugin = false;
             String loadProjectUrl = null;
-            List<String> loadPluginUrls = new ArrayList<String>();
+            final List<String> loadPluginUrls = new ArrayList<String>();
             for (int i = 0; i < args.length; i++) {
                 String s = args[i];
                 if (s.startsWith("--")) { //build
@@ -1227,13 +1262,34 @@ public static void main(String args[]) {
             }
 
             System.setProperty("java.net.useSystemProxies", "true");
-            installMissingPlugins(loadPluginUrls);
+            if (loadPluginUrls.size() > 0) {
+                profiler.submit(INSTALL_PLUGINS_PHASE, new Runnable() {
+                    @Override
+                    public void run() {
+                        installMissingPlugins(loadPluginUrls);
+                    }
+                });
+            }
+            profiler.submit("Copying built-in plugins", new Runnable() {
+                @Override
+                public void run() {
+                    // The constructor copies the built-in plugins; getInstance() will block until it's done.
+                    PluginController.getInstance();
+                }
+            });
+            profiler.submit("Fetching default genomes", new Runnable() {
+                @Override
+                public void run() {
+                    Genome.getDefaultGenomes();
+                }
+            });
 
             //java.awt.EventQueue.invokeLater(new Runnable() {
 
             //@Override
             //public void run() {
 
+            StartupProfiler.Phase phase = profiler.begin("Look and feel");
             System.setProperty("apple.laf.useScreenMenuBar", "true");
             com.jidesoft.utils.Lm.verifyLicense("Marc Fiume", "Savant Genome Browser", "1BimsQGmP.vjmoMbfkPdyh0gs3bl3932");
             UIManager.put("JideSplitPaneDivider.border", 5);
@@ -1244,10 +1300,13 @@ public static void main(String args[]) {
             if (MiscUtils.WINDOWS) {
                 LookAndFeelFactory.installJideExtension(LookAndFeelFactory.XERTO_STYLE_WITHOUT_MENU);
             }
+            phase.end();
 
             // Load project immediately if argument exists.
             if (Savant.getInstance().isWebStart() && loadProjectUrl != null) {
+                phase = profiler.begin("Loading project");
                 ProjectController.getInstance().loadProjectFromURL(loadProjectUrl);
+                phase.end();
             }
         } catch (Exception x) {
             LOG.error("Error in main()", x);
@@ -1822,11 +1881,33 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
             }
         });
 
+        JMenuItem hiddenStartupProfile = new JMenuItem("");
+        hiddenStartupProfile.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_P, MiscUtils.MENU_MASK | java.awt.event.InputEvent.SHIFT_MASK));
+        hiddenStartupProfile.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                showStartupProfile();
+            }
+        });
+
         hiddenBar.add(hiddenBookmarkPrev);
         hiddenBar.add(hiddenBookmarkNext);
+        hiddenBar.add(hiddenStartupProfile);
         this.add(hiddenBar);
     }
 
+    /**
+     * Debugging aid which displays the timings recorded during startup.
+     */
+    private void showStartupProfile() {
+        JTextArea text = new JTextArea(StartupProfiler.getInstance().getReport());
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        text.setEditable(false);
+        JScrollPane scroller = new JScrollPane(text);
+        scroller.setPreferredSize(new Dimension(640, 320));
+        JOptionPane.showMessageDialog(this, scroller, "Startup Profile", JOptionPane.PLAIN_MESSAGE);
+    }
+
     public void openTrack() {
         LoadTrackDialog ltd = new LoadTrackDialog(Savant.getInstance(),true);
         ltd.setVisible(true);
@@ -33,6 +33,11 @@ public BAMCoverageTrack(DataSourceAdapter dataSource) throws SavantTrackCreation
         super(dataSource, new ContinuousTrackRenderer());
     }
 
+    @Override
+    protected boolean isDataNeeded(Resolution res) {
+        return res != Resolution.HIGH;
+    }
+
     @Override
     public void prepareForRendering(String ref, Range r) {
 
@@ -46,7 +46,6 @@
 import savant.api.event.DataRetrievalEvent;
 import savant.api.util.Resolution;
 import savant.controller.GenomeController;
-import savant.controller.LocationController;
 import savant.data.types.BAMIntervalRecord;
 import savant.data.types.Genome;
 import savant.data.types.PileupRecord;
@@ -97,7 +96,7 @@ public void render(Graphics2D g2, GraphPaneAdapter gp) throws RenderingException
                 Genome genome = GenomeController.getInstance().getGenome();
                 if (genome.isSequenceSet()) {
                     AxisRange axisRange = (AxisRange) instructions.get(DrawingInstruction.AXIS_RANGE);
-                    String ref = LocationController.getInstance().getReferenceName();
+                    String ref = getReference();
                     Range r = axisRange.getXRange();
                     try {
                         refSeq = genome.getSequence(ref, r);
@@ -575,7 +574,7 @@ private void renderArcPairedMode(Graphics2D g2, GraphPaneAdapter gp) {
                     int alignmentStart;
                     int mateAlignmentStart = samRecord.getMateAlignmentStart();
                     if (samRecord.getAlignmentStart() > mateAlignmentStart) {
-                        if (!(mateAlignmentStart < LocationController.getInstance().getRangeStart())) {
+                        if (!(mateAlignmentStart < axisRange.getXMin())) {
                             // this is the second in the pair, and it doesn't span the beginning of the range, so don't draw anything
                             continue;
                         } else {
@@ -26,6 +26,7 @@
 import savant.api.data.ContinuousRecord;
 import savant.api.data.Record;
 import savant.api.util.Resolution;
+import savant.data.types.SummaryContinuousRecord;
 import savant.exception.SavantTrackCreationCancelledException;
 import savant.settings.ResolutionSettings;
 import savant.util.*;
@@ -42,6 +43,11 @@ public ContinuousTrack(DataSourceAdapter track) throws SavantTrackCreationCancel
         super(track, new ContinuousTrackRenderer());
     }
 
+    @Override
+    protected boolean isDataNeeded(Resolution res) {
+        return true;
+    }
+
     @Override
     public void prepareForRendering(String ref, Range r) {
 
@@ -82,9 +88,15 @@ public static float[] getExtremeValues(List<Record> data) {
         float min = Float.MAX_VALUE;
         if (data != null) {
             for (Record r: data) {
-                float val = ((ContinuousRecord)r).getValue();
-                if (val > max) max = val;
-                if (val < min) min = val;
+                if (r instanceof SummaryContinuousRecord) {
+                    SummaryContinuousRecord sr = (SummaryContinuousRecord)r;
+                    if (sr.getMax() > max) max = sr.getMax();
+                    if (sr.getMin() < min) min = sr.getMin();
+                } else {
+                    float val = ((ContinuousRecord)r).getValue();
+                    if (val > max) max = val;
+                    if (val < min) min = val;
+                }
             }
         }
 
@@ -38,6 +38,7 @@
 import savant.api.data.Record;
 import savant.api.event.DataRetrievalEvent;
 import savant.controller.LocationController;
+import savant.data.types.SummaryContinuousRecord;
 import savant.exception.RenderingException;
 import savant.selection.SelectionController;
 import savant.util.AxisRange;
@@ -104,7 +105,8 @@ public void render(Graphics2D g2, GraphPaneAdapter gp) throws RenderingException
             for (int i = 0; i < data.size(); i++) {
                 ContinuousRecord continuousRecord = (ContinuousRecord)data.get(i);
                 int xPos = continuousRecord.getPosition();
-                float yPos = continuousRecord.getValue();
+                // For summarised data, plot the maximum so that peaks remain visible.
+                float yPos = continuousRecord instanceof SummaryContinuousRecord ? ((SummaryContinuousRecord)continuousRecord).getMax() : continuousRecord.getValue();
                 if (Float.isNaN(yPos)) {
                     // Hit a position with no data.  May need to close off the current path.
                     if (haveOpenPath) {
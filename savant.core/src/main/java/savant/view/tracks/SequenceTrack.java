@@ -78,7 +78,7 @@ public void prepareForRendering(String ref, Range r) {
     /**
      * We often want to retrieve just the sequence.  This will be stored in a single SequenceRecord.
      */
-    public byte[] getSequence(String ref, RangeAdapter r) throws IOException, InterruptedException {
+    public synchronized byte[] getSequence(String ref, RangeAdapter r) throws IOException, InterruptedException {
         List<SequenceRecord> recs = getDataSource().getRecords(ref, r, Resolution.HIGH, null);
         if (recs != null && recs.size() > 0) {
             return recs.get(0).getSequence();
@@ -25,6 +25,7 @@
 import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.text.NumberFormat;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,6 +43,7 @@
 import savant.api.event.DataRetrievalEvent;
 import savant.api.util.DialogUtils;
 import savant.api.util.Resolution;
+import savant.controller.RetrievalCoordinator;
 import savant.controller.TrackController;
 import savant.exception.RenderingException;
 import savant.exception.SavantTrackCreationCancelledException;
@@ -364,6 +366,66 @@ public TrackRenderer getRenderer() {
      */
     public abstract void prepareForRendering(String ref, Range r);
 
+    /**
+     * Does this track display data at the given resolution?  Most tracks only retrieve data at
+     * high resolution, and otherwise ask the user to zoom in.
+     */
+    protected boolean isDataNeeded(Resolution res) {
+        return res == Resolution.HIGH;
+    }
+
+    /**
+     * Retrieve data for the given range synchronously, without disturbing the data which the
+     * track is currently displaying.  Intended for offscreen rendering.
+     *
+     * @param ref the reference containing the range
+     * @param r the range to be retrieved
+     * @return the track's data for the range, or null if the track doesn't display data at this resolution
+     */
+    public List<Record> retrieveDataForRange(String ref, Range r) throws Exception {
+        Resolution res = getResolution(r);
+        if (isDataNeeded(res) && containsReference(ref)) {
+            return retrieveData(ref, r, res, filter);
+        }
+        return null;
+    }
+
+    /**
+     * Create a renderer which can draw the given range independently of the track's own renderer,
+     * so that images can be generated offscreen without changing the current view.  The new
+     * renderer takes its settings (mode, colour scheme, etc.) from the track's own renderer.
+     *
+     * @param ref the reference containing the range
+     * @param r the range to be drawn
+     * @param data data for the range, as returned by <code>retrieveDataForRange</code>
+     * @return a renderer ready to be drawn onto an offscreen graph pane
+     */
+    public TrackRenderer createOffscreenRenderer(String ref, Range r, List<Record> data) throws Exception {
+        TrackRenderer result = renderer.getClass().newInstance();
+        result.setTrackName(name);
+
+        EnumMap<DrawingInstruction, Object> instructions = new EnumMap<DrawingInstruction, Object>(renderer.instructions);
+        instructions.remove(DrawingInstruction.PROGRESS);
+        instructions.remove(DrawingInstruction.ERROR);
+        AxisRange axes = (AxisRange)instructions.get(DrawingInstruction.AXIS_RANGE);
+        if (axes != null) {
+            instructions.put(DrawingInstruction.AXIS_RANGE, new AxisRange(r, axes.getYRange()));
+        }
+        instructions.put(DrawingInstruction.RANGE, r);
+        Resolution res = getResolution(r);
+        instructions.put(DrawingInstruction.RESOLUTION, res);
+        instructions.put(DrawingInstruction.REFERENCE, ref);
+        instructions.put(DrawingInstruction.REFERENCE_EXISTS, containsReference(ref));
+        result.instructions.putAll(instructions);
+
+        if (isDataNeeded(res)) {
+            result.handleEvent(new DataRetrievalEvent(this, data, r));
+        } else {
+            result.addInstruction(DrawingInstruction.ERROR, ZOOM_MESSAGE);
+        }
+        return result;
+    }
+
     /**
      * Method which plugins can use to force the Track to repaint itself.
      */
@@ -411,12 +473,16 @@ public AxisType getYAxisType(Resolution res) {
 
     /**
      * Request data from the underlying data track at the current resolution. A
-     * new thread will be started.
+     * new thread will be started.  If the request is part of a batch being fanned
+     * out by the RetrievalCoordinator, we return immediately; otherwise we give
+     * the retriever up to a second to finish before putting up the progress-bar.
      *
      * @param reference The reference within which to retrieve objects
      * @param range The range within which to retrieve objects
      */
     public void requestData(String reference, Range range) {
+        RetrievalCoordinator coordinator = RetrievalCoordinator.getInstance();
+        coordinator.enlist(this);
         if (retriever != null) {
             if (retriever.reference.equals(reference) && retriever.range.equals(range)) {
                 LOG.debug("Nothing to request, already busy retrieving " + reference + ":" + range);
@@ -431,7 +497,9 @@ public void requestData(String reference, Range range) {
         retriever = new DataRetriever(reference, range, filter);
         retriever.start();
 
-
+        if (coordinator.isFanningOut()) {
+            return;
+        }
 
         try {
             if (retriever != null) {
@@ -489,6 +557,7 @@ public void cancelDataRequest() {
      * @throws Exception
      */
     public void saveNullData(Range r) {
+        RetrievalCoordinator.getInstance().enlist(this);
         dataInRange = null;
         fireDataRetrievalCompleted(r);
     }
@@ -24,6 +24,10 @@
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.samtools.util.RuntimeIOException;
 import org.apache.commons.logging.Log;
@@ -32,6 +36,7 @@
 import savant.api.adapter.DataSourceAdapter;
 import savant.api.util.DialogUtils;
 import savant.controller.DataSourcePluginController;
+import savant.controller.SearchController;
 import savant.data.sources.*;
 import savant.exception.SavantTrackCreationCancelledException;
 import savant.exception.UnknownSchemeException;
@@ -51,6 +56,15 @@ public class TrackFactory {
 
     private static final Log LOG = LogFactory.getLog(Track.class);
 
+    /** Maximum number of tracks whose indices and headers are fetched at the same time. */
+    private static final int MAX_CONCURRENT_CREATIONS = 6;
+
+    /** Maximum number of dictionaries being loaded at the same time. */
+    private static final int MAX_CONCURRENT_DICTIONARIES = 2;
+
+    private static ExecutorService creationExecutor;
+    private static ExecutorService dictionaryExecutor;
+
     /**
      * Create a track from an existing DataSource.  This method is synchronous, because
      * it's assumed that creating the DataSource is the time-consuming part of the process.
@@ -112,6 +126,49 @@ public static void createTrack(URI trackURI, TrackCreationListener l) {
         }
     }
 
+    /**
+     * Asynchronously create tracks for a batch of URIs, such as the tracks of a saved project.
+     * Unlike the single-track version, we don't wait for any of the tracks; they are created
+     * on a bounded pool, so that a project with many remote tracks can fetch their indices and
+     * headers concurrently without starting dozens of threads.
+     *
+     * @param trackURIs URIs of the tracks being created
+     * @param listeners listeners (generally frames) corresponding to each of the URIs
+     */
+    public static void createTracks(URI[] trackURIs, TrackCreationListener[] listeners) {
+        ExecutorService executor = getCreationExecutor();
+        for (int i = 0; i < trackURIs.length; i++) {
+            listeners[i].handleEvent(new TrackCreationEvent());
+            executor.execute(new TrackCreator(trackURIs[i], listeners[i]));
+        }
+    }
+
+    private static synchronized ExecutorService getCreationExecutor() {
+        if (creationExecutor == null) {
+            creationExecutor = createPool("TrackCreator-", MAX_CONCURRENT_CREATIONS);
+        }
+        return creationExecutor;
+    }
+
+    private static synchronized ExecutorService getDictionaryExecutor() {
+        if (dictionaryExecutor == null) {
+            dictionaryExecutor = createPool("Dictionary Loader-", MAX_CONCURRENT_DICTIONARIES);
+        }
+        return dictionaryExecutor;
+    }
+
+    private static ExecutorService createPool(final String prefix, int threads) {
+        final AtomicInteger threadNum = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
     /**
      * Create a DataSource, guessing the file-type from the file's extension.
      */
@@ -265,18 +322,19 @@ public void run() {
 
             // This is a good opportunity to load our dictionary.
             for (final Track t: tracks) {
-                new Thread("Dictionary Loader-" + MiscUtils.getFilenameFromPath(t.getName())) {
+                getDictionaryExecutor().execute(new Runnable() {
                     @Override
                     public void run() {
                         if (listener != null) {
                             try {
                                 t.getDataSource().loadDictionary();
+                                SearchController.getInstance().clearCache();
                             } catch (Exception x) {
                                 LOG.error("Unable to load dictionary for " + t.getName(), x);
                             }
                         }
                     }
-                }.start();
+                });
             }
         }
 
@@ -159,7 +159,7 @@ protected void renderPreCheck() throws RenderingException {
 
         Boolean refExists = (Boolean)instructions.get(DrawingInstruction.REFERENCE_EXISTS);
         if (refExists == null || !refExists) {
-            throw new RenderingException("No data for " + LocationController.getInstance().getReferenceName(), RenderingException.INFO_PRIORITY);
+            throw new RenderingException("No data for " + getReference(), RenderingException.INFO_PRIORITY);
         }
         RenderingException error = (RenderingException)instructions.get(DrawingInstruction.ERROR);
         if (error != null) {
@@ -170,6 +170,15 @@ protected void renderPreCheck() throws RenderingException {
         }
     }
 
+    /**
+     * The reference being rendered.  Normally the current reference, but offscreen renderers
+     * may be drawing somewhere else.
+     */
+    protected String getReference() {
+        String ref = (String)instructions.get(DrawingInstruction.REFERENCE);
+        return ref != null ? ref : LocationController.getInstance().getReferenceName();
+    }
+
     /**
      * Check whether to perform selection for this track.
      *
@@ -28,14 +28,14 @@
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.swing.*;
-import javax.swing.RowFilter.Entry;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.table.TableCellRenderer;
-import javax.swing.table.TableRowSorter;
 
 import savant.api.adapter.TrackAdapter;
 import savant.api.data.Record;
@@ -135,7 +135,6 @@ public void actionPerformed(ActionEvent e) {
 
         // create a table (the most important component)
         table = new ExtendedTable();
-        table.setAutoCreateRowSorter(true);
         table.setFillsViewportHeight(true);
 
         JPanel tmp = new JPanel();
@@ -150,7 +149,7 @@ public void mouseClicked(MouseEvent e) {
                     if (currentTrack.isSelectionAllowed()) {
                         JTable table = (JTable)e.getSource();
                         int row = table.getSelectedRow();
-                        Record r = data.get(table.getRowSorter().convertRowIndexToModel(row));
+                        Record r = tableModel.getRecord(table.getRowSorter().convertRowIndexToModel(row));
                         SelectionUtils.toggleSelection(currentTrack, r);
                         currentTrack.repaint();
                         if (onlySelected) {
@@ -207,16 +206,9 @@ private void setAutoUpdate(boolean value) {
 
     private void setOnlySelected(boolean value) {
         onlySelected = value;
-        TableRowSorter sorter = (TableRowSorter<DataTableModel>)table.getRowSorter();
-        if (onlySelected) {
-            sorter.setRowFilter(new RowFilter<DataTableModel, Integer>() {
-                @Override
-                public boolean include(Entry<? extends DataTableModel, ? extends Integer> entry) {
-                    return table.getRowSelected(entry.getIdentifier());
-                }
-            });
-        } else {
-            sorter.setRowFilter(null);
+        RecordSorter sorter = (RecordSorter)table.getRowSorter();
+        if (sorter != null) {
+            sorter.setFilter(onlySelected ? table.selectedRows : null);
         }
     }
 
@@ -228,6 +220,11 @@ private void presentDataFromCurrentTrack() {
         TrackAdapter t = currentTrack;
         tableModel = new DataTableModel(currentTrack.getDataSource());
         table.setModel(tableModel);
+        RecordSorter sorter = new RecordSorter(tableModel);
+        table.setRowSorter(sorter);
+        if (onlySelected) {
+            sorter.setFilter(table.selectedRows);
+        }
         table.setSurrendersFocusOnKeystroke(true);
         refreshData();
         refreshSelection();
@@ -258,13 +255,8 @@ private void refreshData() {
 
             s += data.size();
 
-            if (((TableRowSorter<DataTableModel>)table.getRowSorter()).getRowFilter() != null) {
+            if (((RecordSorter)table.getRowSorter()).getFilter() != null) {
                 s += " (showing " + table.getRowSorter().getViewRowCount() + " selected)";
-            } else {
-                DataTableModel dtm = (DataTableModel)tableModel;
-                if (data.size() > dtm.getMaxRows()) {
-                    s += " (showing first " + dtm.getMaxRows() + ")";
-                }
             }
 
             numItemsLabel.setText(s);
@@ -310,9 +302,12 @@ private void exportTable(TrackAdapter track) {
         }
     }
 
+    /**
+     * Export every record in the current range.  Records are written straight from the track's
+     * data, so there's no limit on the number of rows.
+     */
     private void exportAllInView(TrackAdapter track, File selectedFile) throws IOException {
         DataTableModel dtm = new DataTableModel(track.getDataSource());
-        dtm.setMaxRows(Integer.MAX_VALUE);
         dtm.setData(track.getDataInRange());
         dtm.openExport(selectedFile);
 
@@ -325,15 +320,12 @@ private void exportAllInView(TrackAdapter track, File selectedFile) throws IOExc
 
     private void exportSelectedInView(TrackAdapter track, File selectedFile) throws IOException {
         DataTableModel dtm = new DataTableModel(track.getDataSource());
-        dtm.setMaxRows(Integer.MAX_VALUE);
         dtm.setData(track.getDataInRange());
         dtm.openExport(selectedFile);
 
         int numRows = dtm.getRowCount();
-        for (int i = 0; i < numRows; i++) {
-            if (table.getRowSelected(i)){
-                dtm.exportRow(i);
-            }
+        for (int i = table.selectedRows.nextSetBit(0); i >= 0 && i < numRows; i = table.selectedRows.nextSetBit(i + 1)) {
+            dtm.exportRow(i);
         }
         dtm.closeExport();
     }
@@ -343,20 +335,26 @@ public void refreshSelection(){
         table.clearSelectedRows();
         List<Record> selected = currentTrack.getSelectedDataInRange();
 
-        if (selected != null) {
-            for (Record c : selected) {
-                int index = data.indexOf(c);
-                if (index >= 0) {
-                    table.addSelectedRow(index);
+        if (selected != null && !selected.isEmpty()) {
+            // One pass over the table, rather than an indexOf for each selected record.
+            Set<Record> selectedSet = new HashSet<Record>(selected);
+            int numRows = tableModel.getRowCount();
+            for (int i = 0; i < numRows; i++) {
+                if (selectedSet.contains(tableModel.getRecord(i))) {
+                    table.addSelectedRow(i);
                 }
             }
         }
+        if (onlySelected) {
+            table.getRowSorter().allRowsChanged();
+        }
         table.updateUI();
     }
 
     private class ExtendedTable extends JTable {
 
-        private List<Integer> selectedRows = new ArrayList<Integer>();
+        /** Model rows which correspond to selected records. */
+        private final BitSet selectedRows = new BitSet();
 
         public ExtendedTable(){
             setDefaultRenderer(Boolean.class, new BooleanRenderer());
@@ -366,22 +364,22 @@ public void clearSelectedRows(){
             selectedRows.clear();
         }
 
-        public void addSelectedRow(Integer i){
-            selectedRows.add(i);
+        public void addSelectedRow(int i){
+            selectedRows.set(i);
         }
 
         public boolean getRowSelected(int row){
-            return selectedRows.contains(row);
+            return selectedRows.get(row);
         }
 
         public boolean hasSelectedRows() {
-            return selectedRows.size() > 0;
+            return !selectedRows.isEmpty();
         }
 
         @Override
         public TableCellRenderer getCellRenderer (int row, int column){
             int modRow = table.getRowSorter().convertRowIndexToModel(row);
-            if (selectedRows.contains(modRow)){
+            if (selectedRows.get(modRow)){
                 super.getCellRenderer(row, column).getTableCellRendererComponent(this, null, false, false, row, column).setBackground(Color.GREEN);
             } else {
                 super.getCellRenderer(row, column).getTableCellRendererComponent(this, null, false, false, row, column).setBackground(Color.WHITE);
@@ -23,7 +23,10 @@
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.swing.table.AbstractTableModel;
 
 import net.sf.samtools.SAMFileWriter;
@@ -55,10 +58,23 @@ public class DataTableModel extends AbstractTableModel {
     private String[] columnNames;
     private Class[] columnClasses;
 
-    private int maxRows = 500;
+    /** Number of formatted rows to keep around for repainting. */
+    private static final int ROW_CACHE_SIZE = 1000;
 
+    /** The track's records.  Not copied, since the track doesn't modify the list once it's been handed out. */
     protected List<Record> data;
 
+    /** If some records are suppressed (e.g. NaNs in continuous tracks), the indices in data of those which are visible. */
+    private int[] validRows;
+
+    /** Formatted values for recently-displayed rows, keyed by model row. */
+    private final Map<Integer, Object[]> rowCache = new LinkedHashMap<Integer, Object[]>(ROW_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+            return size() > ROW_CACHE_SIZE;
+        }
+    };
+
     /** For tabix, some of the columns may not be meaningful for end-users, so have a little lookup table. */
     private int[] remappedColumns;
 
@@ -130,7 +146,23 @@ public Class getColumnClass(int column) {
 
     @Override
     public Object getValueAt(int row, int column) {
-        Record datum = data.get(row);
+        Object[] values = rowCache.get(row);
+        if (values == null) {
+            Record datum = getRecord(row);
+            values = new Object[columnNames.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getValue(datum, i);
+            }
+            rowCache.put(row, values);
+        }
+        return values[column];
+    }
+
+    /**
+     * Derive the value of the given column directly from the record.  Used for filling the row
+     * cache, and by the sorter, which needs only a single column.
+     */
+    Object getValue(Record datum, int column) {
         if (remappedColumns != null) {
             return ((TabixIntervalRecord)datum).getValues()[remappedColumns[column]];
         } else {
@@ -237,10 +269,7 @@ public Object getValueAt(int row, int column) {
     @Override
     public int getRowCount() {
         if (data != null) {
-            if (data.size() > maxRows) {
-                return maxRows;
-            }
-            return data.size();
+            return validRows != null ? validRows.length : data.size();
         }
         return 0;
     }
@@ -250,35 +279,36 @@ public int getColumnCount() {
         return columnNames.length;
     }
 
+    /**
+     * Record corresponding to the given model row.
+     */
+    public Record getRecord(int row) {
+        return data.get(validRows != null ? validRows[row] : row);
+    }
+
+    /**
+     * Set the records to be displayed.  The list is not copied, so the caller must not modify it
+     * afterwards; rows are only formatted when they are actually painted.
+     */
     public void setData(List<Record> dataInRange) {
-        if (dataInRange == null) { 
-            data = null;
-        } else {
-            if (dataSource.getDataFormat() == DataFormat.CONTINUOUS) {
-                // Continuous tracks now use NaNs for missing values.  Filter them out.
-                data = new ArrayList<Record>();
-                for (Record r: dataInRange) {
-                    if (!Float.isNaN(((ContinuousRecord)r).getValue())) {
-                        data.add(r);
-                        if (data.size() >= maxRows) {
-                            break;
-                        }
-                    }
+        data = dataInRange;
+        validRows = null;
+        rowCache.clear();
+        if (data != null && dataSource.getDataFormat() == DataFormat.CONTINUOUS) {
+            // Continuous tracks now use NaNs for missing values.  Filter them out.
+            int[] rows = new int[data.size()];
+            int n = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (!Float.isNaN(((ContinuousRecord)data.get(i)).getValue())) {
+                    rows[n++] = i;
                 }
-            } else {
-                data = dataInRange;
+            }
+            if (n < rows.length) {
+                validRows = Arrays.copyOf(rows, n);
             }
         }
     }
 
-    public void setMaxRows(int maxNumRows) {
-        maxRows = maxNumRows;
-    }
-
-    public int getMaxRows() {
-        return maxRows;
-    }
-
     /**
      * Open the given file for export.  Write the file header (if any).
      * @param destFile
@@ -332,7 +362,7 @@ public void closeExport() {
      * @param row
      */
     public void exportRow(int row) {
-        Record datum = data.get(row);
+        Record datum = getRecord(row);
         switch (dataSource.getDataFormat()) {
             case SEQUENCE:
                 exportWriter.println(new String(((SequenceRecord)datum).getSequence()));
@@ -0,0 +1,229 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+
+/**
+ * Sorts and filters the rows of a <code>DataTableModel</code>.  Unlike <code>TableRowSorter</code>,
+ * which allocates an entry object per row and formats each cell for every comparison, this
+ * extracts the sort column once and permutes a plain array of row indices, so that tables with
+ * hundreds of thousands of records remain responsive.
+ */
+class RecordSorter extends RowSorter<DataTableModel> {
+
+    private final DataTableModel model;
+
+    private List<SortKey> sortKeys = Collections.emptyList();
+
+    /** If non-null, only model rows whose bits are set are shown. */
+    private BitSet filter;
+
+    /** Maps view rows to model rows; null if the view is unsorted and unfiltered. */
+    private int[] viewToModel;
+
+    /** Maps model rows to view rows (-1 if filtered out); null if the view is unsorted and unfiltered. */
+    private int[] modelToView;
+
+    RecordSorter(DataTableModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public DataTableModel getModel() {
+        return model;
+    }
+
+    /**
+     * Restrict the view to the given model rows.  The set is not copied, so the caller should
+     * invoke <code>allRowsChanged</code> after modifying it.
+     */
+    void setFilter(BitSet rows) {
+        filter = rows;
+        sort();
+    }
+
+    BitSet getFilter() {
+        return filter;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        SortOrder order = SortOrder.ASCENDING;
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+            order = SortOrder.DESCENDING;
+        }
+        setSortKeys(Collections.singletonList(new SortKey(column, order)));
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        if (keys == null || keys.isEmpty()) {
+            sortKeys = Collections.emptyList();
+        } else {
+            // Only the primary key is used.
+            sortKeys = Collections.singletonList((SortKey)keys.get(0));
+        }
+        fireSortOrderChanged();
+        sort();
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        return viewToModel != null ? viewToModel[index] : index;
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        return modelToView != null ? modelToView[index] : index;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return viewToModel != null ? viewToModel.length : model.getRowCount();
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        sortKeys = Collections.emptyList();
+        sort();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        sort();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        sort();
+    }
+
+    /**
+     * Rebuild the row mapping from the current sort key and filter.
+     */
+    private void sort() {
+        int[] oldViewToModel = viewToModel;
+        int numRows = model.getRowCount();
+
+        if (sortKeys.isEmpty() && filter == null) {
+            viewToModel = null;
+            modelToView = null;
+        } else {
+            int[] rows = new int[numRows];
+            int n = 0;
+            for (int i = 0; i < numRows; i++) {
+                if (filter == null || filter.get(i)) {
+                    rows[n++] = i;
+                }
+            }
+            if (n < numRows) {
+                rows = Arrays.copyOf(rows, n);
+            }
+
+            if (!sortKeys.isEmpty()) {
+                SortKey key = sortKeys.get(0);
+                int column = key.getColumn();
+
+                // Extract the column values once, indexed by model row.
+                Comparable[] values = new Comparable[numRows];
+                for (int r: rows) {
+                    values[r] = (Comparable)model.getValue(model.getRecord(r), column);
+                }
+                mergeSort(rows, new int[rows.length], 0, rows.length, values, key.getSortOrder() == SortOrder.DESCENDING ? -1 : 1);
+            }
+
+            viewToModel = rows;
+            modelToView = new int[numRows];
+            Arrays.fill(modelToView, -1);
+            for (int i = 0; i < rows.length; i++) {
+                modelToView[rows[i]] = i;
+            }
+        }
+        fireRowSorterChanged(oldViewToModel);
+    }
+
+    /**
+     * Stable sort of row indices by their values, so that rows with equal keys retain their
+     * order within the track.
+     */
+    private static void mergeSort(int[] rows, int[] scratch, int from, int to, Comparable[] values, int sign) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(rows, scratch, from, mid, values, sign);
+        mergeSort(rows, scratch, mid, to, values, sign);
+        if (compare(values[rows[mid - 1]], values[rows[mid]]) * sign <= 0) {
+            // Already in order.
+            return;
+        }
+        System.arraycopy(rows, from, scratch, from, to - from);
+        int i = from, j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compare(values[scratch[i]], values[scratch[j]]) * sign <= 0)) {
+                rows[k] = scratch[i++];
+            } else {
+                rows[k] = scratch[j++];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Comparable a, Comparable b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        } else if (b == null) {
+            return 1;
+        }
+        return a.compareTo(b);
+    }
+}
@@ -26,6 +26,8 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,16 +53,43 @@
 public class DiffDataSource implements DataSourceAdapter<ContinuousRecord> {
     private static final Log LOG = LogFactory.getLog(DiffDataSource.class);
 
+    /**
+     * Roughly the number of pixels across which a track will be drawn.  We never return
+     * more than twice this many records, no matter how dense the inputs are.
+     */
+    private static final int NOTIONAL_SCREEN_WIDTH = 2000;
+
+    /** Used to fetch input B while the calling thread fetches input A. */
+    private static final ExecutorService FETCHER = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "DiffFetcher-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     /** Our two input data-sources. */
     DataSourceAdapter<? extends ContinuousRecord> inputA, inputB;
     
     private URI uri;
 
+    /** How the values of the two inputs are combined. */
+    private final DiffOperator operator;
+
     /**
      * Construct a data-source for the given diff:// URI.
      */
     public DiffDataSource(URI uri) throws URISyntaxException {
         this.uri = uri;
+        String ssp = uri.getRawSchemeSpecificPart();
+        int parenPos = ssp.indexOf('(');
+        if (!ssp.startsWith("//") || parenPos < 0 || !ssp.endsWith(")")) {
+            throw new URISyntaxException(uri.toString(), "Expected diff://operator(uriA;uriB)");
+        }
+        operator = DiffOperator.fromKey(ssp.substring(2, parenPos));
     }
 
     /**
@@ -95,66 +124,139 @@ public Set<String> getReferenceNames() {
     }
 
     /**
-     * The number of records we return will be based on the first input.  In some cases,
-     * the second input may not happen to have a point at the expected location, so
-     * we may have to interpolate.
+     * The two inputs are aligned to a common grid of buckets, about one per pixel.  Each input's
+     * records are averaged into its buckets in a single forward pass, gaps are filled by linear
+     * interpolation, and the operator is then applied bucket by bucket.  Buckets where the
+     * operator has no meaningful result (e.g. a ratio where B is zero) are omitted.  All of this is done
+     * in primitive arrays, and we only create records for the final result.
      * 
      * The data-sources are expected to return records in order, so we can count on that
      * to simplify our task.
      */
     @Override
-    public List<ContinuousRecord> getRecords(String ref, RangeAdapter range, Resolution res, RecordFilterAdapter filter) throws InterruptedException, IOException {
-        List<ContinuousRecord> result = null;
+    public List<ContinuousRecord> getRecords(final String ref, final RangeAdapter range, final Resolution res, final RecordFilterAdapter filter) throws InterruptedException, IOException {
+        List<ContinuousRecord> result = new ArrayList<ContinuousRecord>();
         if (inputsAttached()) {
-            List<? extends ContinuousRecord> aRecords = inputA.getRecords(ref, range, res, filter);
-            List<? extends ContinuousRecord> bRecords = inputB.getRecords(ref, range, res, filter);
-
-            result = new ArrayList<ContinuousRecord>(aRecords.size());
-            int j = 0;
-            ContinuousRecord recB = bRecords.get(j);
-            for (int i = 0; i < aRecords.size(); i++) {
-                ContinuousRecord recA = aRecords.get(i);
-                int pos = recA.getPosition();
-
-                // Figure out which record in B corresponds to A.
-                while (recB.getPosition() < pos && j + 1 < bRecords.size()) {
-                    j++;
-                    recB = bRecords.get(j);
+            // Fetch the two inputs concurrently, since either may involve a trip to the network.
+            Future<List<? extends ContinuousRecord>> futureB = FETCHER.submit(new Callable<List<? extends ContinuousRecord>>() {
+                @Override
+                public List<? extends ContinuousRecord> call() throws Exception {
+                    return inputB.getRecords(ref, range, res, filter);
                 }
-                
-                // For the purposes of this demonstration, we'll treat NaNs as zero.
-                float value = recA.getValue();
-                if (Float.isNaN(value)) {
-                    value = 0.0f;
+            });
+            List<? extends ContinuousRecord> aRecords, bRecords;
+            try {
+                aRecords = inputA.getRecords(ref, range, res, filter);
+                bRecords = futureB.get();
+            } catch (ExecutionException x) {
+                Throwable cause = x.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                } else if (cause instanceof InterruptedException) {
+                    throw (InterruptedException)cause;
+                }
+                throw new IOException("Unable to retrieve records from " + inputB.getName(), cause);
+            } finally {
+                futureB.cancel(true);
+            }
+
+            int step = getBucketWidth(range.getLength());
+            int firstBucket = range.getFrom() / step;
+            int numBuckets = range.getTo() / step - firstBucket + 1;
+            float[] aValues = bucketize(aRecords, step, firstBucket, numBuckets);
+            float[] bValues = bucketize(bRecords, step, firstBucket, numBuckets);
+
+            for (int i = 0; i < numBuckets; i++) {
+                float value = operator.apply(aValues[i], bValues[i]);
+                if (!Float.isNaN(value)) {
+                    result.add(GenericContinuousRecord.valueOf(ref, Math.max((firstBucket + i) * step, range.getFrom()), value));
                 }
-                value -= interpolate(bRecords, j, pos);
-                result.add(GenericContinuousRecord.valueOf(ref, pos, value));
             }
         }
         return result;
     }
 
     /**
-     * Because the two input data-sources may be returning differing numbers of records,
-     * we may have to interpolate.  Arbitrarily, we decide that inputA provides the
-     * bench-mark and inputB gets interpolated.
+     * Average the given records into buckets, and then fill any empty buckets by interpolating
+     * between their populated neighbours.  The nearest records on either side of the range are
+     * used to fill the gaps at its edges; buckets with no data on one side or the other are
+     * left as NaN.
      */
-    private float interpolate(List<? extends ContinuousRecord> bRecords, int j, int pos) {
-        float result = 0.0f;
-        if (j < bRecords.size()) {
-            ContinuousRecord recB = bRecords.get(j);
+    private static float[] bucketize(List<? extends ContinuousRecord> records, int step, int firstBucket, int numBuckets) throws InterruptedException {
+        float[] values = new float[numBuckets];
+        int[] counts = new int[numBuckets];
 
-            if (recB.getPosition() == pos || j == 0) {
-                // Simple case.  We have a data-point at the exact position.
-                result = recB.getValue();
-            } else if (recB.getPosition() > pos) {
-                // If we got here, recB is further on in the chromosome than pos, so we need to interpolate with the preceding data-point.
-                ContinuousRecord prevRecB = bRecords.get(j - 1);
-                float weight = (float)(pos - prevRecB.getPosition()) / (recB.getPosition() - prevRecB.getPosition());
-                result = prevRecB.getValue() * weight + recB.getValue() * (1.0f - weight);
+        // Nearest data-points outside our buckets, expressed as (possibly out-of-range) bucket indices.
+        int before = Integer.MIN_VALUE, after = Integer.MAX_VALUE;
+        float beforeValue = Float.NaN, afterValue = Float.NaN;
+
+        int n = 0;
+        for (ContinuousRecord rec: records) {
+            float value = rec.getValue();
+            if (!Float.isNaN(value)) {
+                int b = rec.getPosition() / step - firstBucket;
+                if (b < 0) {
+                    before = b;
+                    beforeValue = value;
+                } else if (b >= numBuckets) {
+                    if (b < after) {
+                        after = b;
+                        afterValue = value;
+                    }
+                } else {
+                    values[b] += value;
+                    counts[b]++;
+                }
+            }
+            if ((++n & 0xFFFF) == 0 && Thread.interrupted()) {
+                throw new InterruptedException();
             }
         }
-        return Float.isNaN(result) ? 0.0f : result;
+
+        int prev = before;
+        float prevValue = beforeValue;
+        for (int b = 0; b < numBuckets; b++) {
+            if (counts[b] > 0) {
+                values[b] /= counts[b];
+                fillGap(values, prev, prevValue, b, values[b]);
+                prev = b;
+                prevValue = values[b];
+            }
+        }
+        fillGap(values, prev, prevValue, after, afterValue);
+        return values;
+    }
+
+    /**
+     * Interpolate linearly across the empty buckets between <code>b0</code> and <code>b1</code>,
+     * either of which may lie outside the array.  If there's no data-point on one side of the
+     * gap, the gap is filled with NaN.
+     */
+    private static void fillGap(float[] values, int b0, float v0, int b1, float v1) {
+        int start = Math.max(b0 + 1, 0);
+        int end = Math.min(b1, values.length);
+        if (b0 == Integer.MIN_VALUE || b1 == Integer.MAX_VALUE) {
+            for (int i = start; i < end; i++) {
+                values[i] = Float.NaN;
+            }
+        } else {
+            float delta = (v1 - v0) / (b1 - b0);
+            for (int i = start; i < end; i++) {
+                values[i] = v0 + delta * (i - b0);
+            }
+        }
+    }
+
+    /**
+     * Width (in bases) of each bucket for the given range.  As with TDF files, we use powers
+     * of two so that the bucket grid stays put as the user pans.
+     */
+    private static int getBucketWidth(int rangeLen) {
+        int step = 1;
+        while (step < rangeLen / NOTIONAL_SCREEN_WIDTH) {
+            step <<= 1;
+        }
+        return step;
     }
 
     /**
@@ -215,8 +317,10 @@ public List<BookmarkAdapter> lookup(String string) {
     /**
      * Utility method to calculate the URI which will be used to specify the difference between the two given tracks.
      */
-    public static URI getDiffURI(TrackAdapter trackA, TrackAdapter trackB) throws URISyntaxException {
-        return new URI("diff://(" + trackA.getDataSource().getURI() + ";" + trackB.getDataSource().getURI() + ")");
+    public static URI getDiffURI(TrackAdapter trackA, TrackAdapter trackB, DiffOperator op) throws URISyntaxException {
+        // Plain differences retain the URI format used by earlier versions of the plugin.
+        String key = op == DiffOperator.DIFFERENCE ? "" : op.getKey();
+        return new URI("diff://" + key + "(" + trackA.getDataSource().getURI() + ";" + trackB.getDataSource().getURI() + ")");
     }
 
     /**
@@ -229,7 +333,8 @@ private boolean inputsAttached() {
             return true;
         }
         try {
-            String uriString = uri.getRawSchemeSpecificPart().substring(3);     // Trim off the initial "diff://("
+            String uriString = uri.getRawSchemeSpecificPart();
+            uriString = uriString.substring(uriString.indexOf('(') + 1);        // Trim off the initial "//operator("
             uriString = uriString.substring(0, uriString.length() - 1);         // Trim off the final ")"
             int delimiterPos = uriString.indexOf(';');
             if (delimiterPos > 0) {
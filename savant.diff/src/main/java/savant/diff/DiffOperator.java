@@ -0,0 +1,102 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.diff;
+
+
+/**
+ * Operations which can be used to combine the values of the two input tracks.
+ */
+public enum DiffOperator {
+    DIFFERENCE("A \u2212 B") {
+        @Override
+        public float apply(float a, float b) {
+            // For compatibility with the original Diff plugin, a missing value is treated as zero.
+            if (Float.isNaN(a)) {
+                return Float.isNaN(b) ? Float.NaN : -b;
+            }
+            return Float.isNaN(b) ? a : a - b;
+        }
+    },
+    RATIO("A / B") {
+        @Override
+        public float apply(float a, float b) {
+            return b != 0.0f ? a / b : Float.NaN;
+        }
+    },
+    LOG2_RATIO("log\u2082(A / B)") {
+        @Override
+        public float apply(float a, float b) {
+            return a > 0.0f && b > 0.0f ? (float)(Math.log(a / b) / LN2) : Float.NaN;
+        }
+    },
+    MIN("min(A, B)") {
+        @Override
+        public float apply(float a, float b) {
+            return Float.isNaN(a) ? b : (Float.isNaN(b) ? a : Math.min(a, b));
+        }
+    },
+    MAX("max(A, B)") {
+        @Override
+        public float apply(float a, float b) {
+            return Float.isNaN(a) ? b : (Float.isNaN(b) ? a : Math.max(a, b));
+        }
+    };
+
+    private static final double LN2 = Math.log(2.0);
+
+    private final String description;
+
+    DiffOperator(String desc) {
+        description = desc;
+    }
+
+    /**
+     * Combine a value from input A with the corresponding value from input B.  Either value
+     * may be NaN if the input has no data at that location.
+     *
+     * @return the combined value, or NaN if there is no meaningful result
+     */
+    public abstract float apply(float a, float b);
+
+    /**
+     * Name used to identify the operator in diff:// URIs.
+     */
+    public String getKey() {
+        return name().toLowerCase().replace("_", "");
+    }
+
+    /**
+     * Look up the operator for the given URI key.  An empty key indicates a plain difference,
+     * as used by the URIs of the original Diff plugin.
+     */
+    public static DiffOperator fromKey(String key) {
+        for (DiffOperator op: values()) {
+            if (op.getKey().equals(key)) {
+                return op;
+            }
+        }
+        return DIFFERENCE;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -28,6 +28,7 @@
 import java.net.URI;
 import java.net.URISyntaxException;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JList;
 import javax.swing.ListSelectionModel;
@@ -44,6 +45,7 @@
  */
 public class SourceDialog extends JDialog {
     private JList aList, bList;
+    private JComboBox operatorCombo;
     URI result;
 
     /**
@@ -73,6 +75,14 @@ public SourceDialog(TrackAdapter[] availableTracks) {
         gbc.gridwidth = GridBagConstraints.REMAINDER;
         add(bList, gbc);
 
+        operatorCombo = new JComboBox(DiffOperator.values());
+        gbc.gridy = 1;
+        gbc.gridwidth = 2;
+        gbc.weighty = 0.0;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.anchor = GridBagConstraints.WEST;
+        add(operatorCombo, gbc);
+
         JButton okButton = new JButton("OK");
         okButton.addActionListener(new ActionListener() {
             @Override
@@ -81,7 +91,7 @@ public void actionPerformed(ActionEvent ae) {
                 TrackAdapter trackB = (TrackAdapter)bList.getSelectedValue();
                 if (trackA != trackB) {
                     try {
-                        result = DiffDataSource.getDiffURI(trackA, trackB);
+                        result = DiffDataSource.getDiffURI(trackA, trackB, (DiffOperator)operatorCombo.getSelectedItem());
                         setVisible(false);
                     } catch (URISyntaxException x) {
                         DialogUtils.displayException("URI Syntax Exception", String.format("Unable to create a URI from %s and %s.", trackA, trackB), x);
@@ -32,7 +32,12 @@
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -45,19 +50,15 @@
 import org.apache.commons.logging.LogFactory;
 
 import savant.api.adapter.BookmarkAdapter;
-import savant.api.adapter.RangeAdapter;
-import savant.api.adapter.TrackAdapter;
-import savant.api.event.ExportEvent;
 import savant.api.util.BookmarkUtils;
-import savant.api.util.Listener;
-import savant.api.util.NavigationUtils;
-import savant.api.util.RangeUtils;
 import savant.controller.FrameController;
 import savant.plugin.SavantPanelPlugin;
+import savant.util.MiscUtils;
+import savant.util.Range;
 import savant.util.swing.PathField;
 import savant.view.swing.ExportImage;
 import savant.view.swing.Frame;
-import savant.view.swing.GraphPane;
+import savant.view.swing.OffscreenGraphPane;
 
 /**
  * @author AndrewBrook
@@ -77,19 +78,14 @@ public class ExportPlugin extends SavantPanelPlugin {
     //export variables
     private int currentBookmark;
     private int numBookmarks;
-    private int numFrames;
-    private int framesDone;
+    private List<Frame> frames;
     private BookmarkAdapter[] bookmarks;
 
-    //these will be stored to return to later
-    private String currentReference;
-    private RangeAdapter currentRange;
-
     //private Thread exportThread;
     private JDialog progressDialog;
     private Thread exportThread;
     private JOptionPane progressPanel;
-    private boolean exportCancelled = false;
+    private volatile boolean exportCancelled = false;
 
     @Override
     public void init(JPanel canvas) {
@@ -196,10 +192,6 @@ public void run() {
 
     public void runTool() throws InterruptedException {
 
-        //store current location
-        currentReference = NavigationUtils.getCurrentReferenceName();
-        currentRange = NavigationUtils.getCurrentRange();
-    
         //output init
         baseFolder = pf.getPath();
         if (baseFolder.equals("")) {
@@ -220,132 +212,113 @@ public void runTool() throws InterruptedException {
 
         //init bookmarks
         bookmarks = BookmarkUtils.getBookmarks();
-        if (bookmarks.length == 0 || FrameController.getInstance().getFrames().isEmpty()) {
+        frames = new ArrayList<Frame>();
+        for (Frame f: FrameController.getInstance().getFrames()) {
+            if (f.getTracks() != null && f.getTracks().length > 0) {
+                frames.add(f);
+            }
+        }
+        if (bookmarks.length == 0 || frames.isEmpty()) {
             outputLabel.setText("     There is nothing to export.");
             return;
         }
 
         //store export info
-        numFrames = FrameController.getInstance().getFrames().size();
         numBookmarks = bookmarks.length - 1;
         currentBookmark = 0;
 
         runExport();
-        
-    }
-
-    private void cancelExport() {
-        closeIndex();
-        for(int i = 0; i < FrameController.getInstance().getFrames().size(); i++) {
-            Frame f = FrameController.getInstance().getFrames().get(i);
-            ((GraphPane)f.getGraphPane()).removeExportListeners();
-        }
-        endRun(false);
-        exportCancelled = false;
     }
 
-
     /*
      * Update the progress of export
      */
     private void updateRunLabel() {
-        String message = "     Running Export: " + (currentBookmark+1) + "/" + (numBookmarks+1);
-        outputLabel.setText("Export in progress");
-        if (progressPanel != null) {
-            progressPanel.setMessage(message);
-        }
-    }
-
-    private void runExport() {
-
-        if (exportCancelled) {
-            cancelExport();
-            return;
-        }
-
-        updateRunLabel();
-
-        framesDone = 0;
-
-        final BookmarkAdapter bm = bookmarks[currentBookmark];
-        final String reference = bm.getReference();
-        RangeAdapter rangeAd = bm.getRange();
-        final RangeAdapter range = RangeUtils.createRange(rangeAd.getFrom(), rangeAd.getTo());
-        String annotation = bm.getAnnotation();
-
-        //TODO: multiple tracks per frame??
-        for(int i = 0; i < numFrames; i++) {
-            final int index = i;
-            Frame frame = FrameController.getInstance().getFrames().get(i);
-
-            //track info
-            TrackAdapter t = frame.getTracks()[0];
-            final GraphPane gp = (GraphPane)frame.getGraphPane();
-
-            Listener<ExportEvent> eel = new Listener<ExportEvent>() {
-
-                @Override
-                public void handleEvent(ExportEvent evt) {
-                    if (evt.getRange().equals(range)) {
-                        gp.removeExportListener(this);
-                        nextBookmark();
-                    }
+        final String message = "     Running Export: " + (currentBookmark+1) + "/" + (numBookmarks+1);
+        MiscUtils.invokeLaterIfNecessary(new Runnable() {
+            @Override
+            public void run() {
+                outputLabel.setText("Export in progress");
+                if (progressPanel != null) {
+                    progressPanel.setMessage(message);
                 }
-            };
-            gp.addExportEventListener(eel);
-            
-        }
-        NavigationUtils.navigateTo(reference, range);
+            }
+        });
     }
 
-    /*
-     * If another bookmark exists, begin exporting it
+    /**
+     * Render all the bookmarks offscreen, without disturbing the current view.  Several bookmarks
+     * are rendered at once, and a window of upcoming bookmarks is kept in flight so that their
+     * data is being retrieved while earlier ones are drawn.  Images are added to the index in
+     * bookmark order.
      */
-    public void nextBookmark() {
-        framesDone++;
-        if (framesDone == numFrames) {
-            createImage(currentBookmark, bookmarks[currentBookmark]);
-            currentBookmark++;
-            if (currentBookmark > numBookmarks) {
-                closeIndex();
-                return;
+    private void runExport() throws InterruptedException {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadNum = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Export-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
             }
-            runExport();
+        });
+
+        boolean success = true;
+        try {
+            LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+            int nextBookmark = 0;
+            while (currentBookmark <= numBookmarks) {
+                while (nextBookmark <= numBookmarks && pending.size() < numThreads * 2) {
+                    final int index = nextBookmark++;
+                    pending.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return createImage(index, bookmarks[index]);
+                        }
+                    }));
+                }
+                if (exportCancelled) {
+                    success = false;
+                    break;
+                }
+                updateRunLabel();
+                BookmarkAdapter bm = bookmarks[currentBookmark];
+                try {
+                    String filename = pending.removeFirst().get();
+                    addImageToIndex(filename, bm.getReference() + "   " + bm.getRange() + "   " + bm.getAnnotation());
+                } catch (ExecutionException x) {
+                    LOG.error("Unable to export " + bm.getReference() + ":" + bm.getRange(), x.getCause());
+                    success = false;
+                }
+                currentBookmark++;
+            }
+        } finally {
+            executor.shutdownNow();
+            closeIndex();
+            endRun(success);
+            exportCancelled = false;
         }
     }
 
-    public void createImage(int increment, BookmarkAdapter bm) {
+    /**
+     * Render the given bookmark offscreen and save it as a PNG.
+     *
+     * @return the name of the image file
+     */
+    private String createImage(int increment, BookmarkAdapter bm) throws Exception {
+        String reference = bm.getReference();
+        Range range = new Range(bm.getRange().getFrom(), bm.getRange().getTo());
 
-        String[] trackNames = new String[FrameController.getInstance().getFrames().size()];
-        for(int i = 0; i < trackNames.length; i++) {
-            trackNames[i] = FrameController.getInstance().getFrames().get(i).getTracks()[0].getName();
+        List<BufferedImage> images = new ArrayList<BufferedImage>();
+        for (Frame f: frames) {
+            images.add(new OffscreenGraphPane(f).render(reference, range));
         }
+        BufferedImage out = ExportImage.composeImages(images, reference, range);
 
-        BufferedImage out = ExportImage.beginExport(trackNames, increment);
-
-        //save image
-        boolean success = save(out, increment, bm);
-        endRun(success);
-    }
-    
-    private boolean save(BufferedImage image, int increment, BookmarkAdapter bm) {
         String filename = this.baseFile + increment + ".png";
-
-        File file = new File(filename);
-        try {
-            ImageIO.write(image, "PNG", new File(filename));
-        } catch (IOException ex) {
-            return false;
-        }
-
-        String reference = bm.getReference();
-        //Range range = bm.getRange();
-        RangeAdapter range = bm.getRange();
-        String annotation = bm.getAnnotation();
-        String text = reference + "   " + range + "   " + annotation;
-        addImageToIndex(filename, text);
-
-        return true;
+        ImageIO.write(out, "PNG", new File(filename));
+        return filename;
     }
 
     private boolean initIndex() {
@@ -389,9 +362,6 @@ private boolean addImageToIndex(String filename, String text) {
     }
 
     private void endRun(boolean success) {
-        //Return browser to original location
-        NavigationUtils.navigateTo(currentReference, currentRange);
-
         //reset output
         if (success) {
             outputLabel.setText("     Created file " + indexFile);
@@ -0,0 +1,413 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.geneontology;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Compact, immutable representation of the Gene Ontology as a DAG.  Terms are identified by
+ * consecutive integers, each term's children are stored as a slice of a single int array
+ * (compressed sparse rows), and the genomic locations associated with each term are stored
+ * the same way, with RefSeq IDs and chromosome names interned in a shared string table.
+ *
+ * Once compiled, the DAG is saved in a binary file next to the mapping file, so that
+ * subsequent sessions don't have to download and parse the ontology again.
+ */
+class GODag {
+    private static final Log LOG = LogFactory.getLog(GODag.class);
+
+    /** Page shown for the (fake) root of the ontology. */
+    static final String ROOT_URL = "http://amigo.geneontology.org/cgi-bin/amigo/go.cgi";
+
+    /** Prefix of the page shown for an individual term. */
+    static final String TERM_URL = "http://amigo.geneontology.org/cgi-bin/amigo/term-details.cgi?term=";
+
+    /** Compiled DAGs older than this are recompiled from the latest ontology. */
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    private static final int MAGIC = 0x474f4441;    // "GODA"
+    private static final int FORMAT_VERSION = 1;
+
+    /** Number of ints stored for each location: RefSeq ID, chromosome, start, and end. */
+    private static final int LOC_FIELDS = 4;
+
+    private final String[] ids;
+    private final String[] names;
+    private final int[] roots;
+    private final int[] childStart;
+    private final int[] children;
+    private final String[] strings;
+    private final int[] locStart;
+    private final int[] locs;
+
+    private GODag(String[] ids, String[] names, int[] roots, int[] childStart, int[] children, String[] strings, int[] locStart, int[] locs) {
+        this.ids = ids;
+        this.names = names;
+        this.roots = roots;
+        this.childStart = childStart;
+        this.children = children;
+        this.strings = strings;
+        this.locStart = locStart;
+        this.locs = locs;
+    }
+
+    /**
+     * Get the DAG for the given mapping file, compiling it from the latest ontology if we
+     * don't have an up-to-date binary copy.
+     *
+     * @param mapFile the file mapping GO IDs to RefSeq IDs and genomic locations
+     */
+    static GODag getDag(String mapFile) throws Exception {
+        File map = new File(mapFile);
+        File dagFile = new File(mapFile + ".dag");
+        if (dagFile.exists() && dagFile.lastModified() >= map.lastModified() && System.currentTimeMillis() - dagFile.lastModified() < MAX_AGE) {
+            try {
+                return load(dagFile);
+            } catch (IOException x) {
+                LOG.info("Unable to read " + dagFile + "; recompiling.", x);
+            }
+        }
+        GODag result = XMLontology.makeDag(mapFile);
+        try {
+            result.save(dagFile);
+        } catch (IOException x) {
+            // Not fatal; we'll just have to compile the ontology again next time.
+            LOG.warn("Unable to save compiled ontology to " + dagFile + ".", x);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of terms in the ontology
+     */
+    int size() {
+        return ids.length;
+    }
+
+    int getRootCount() {
+        return roots.length;
+    }
+
+    int getRoot(int i) {
+        return roots[i];
+    }
+
+    int getChildCount(int term) {
+        return childStart[term + 1] - childStart[term];
+    }
+
+    int getChild(int term, int i) {
+        return children[childStart[term] + i];
+    }
+
+    String getID(int term) {
+        return ids[term];
+    }
+
+    String getName(int term) {
+        return names[term];
+    }
+
+    String getURL(int term) {
+        return TERM_URL + ids[term];
+    }
+
+    int getLocationCount(int term) {
+        return (locStart[term + 1] - locStart[term]) / LOC_FIELDS;
+    }
+
+    String getRefSeq(int term, int i) {
+        return strings[locs[locStart[term] + i * LOC_FIELDS]];
+    }
+
+    String getChromosome(int term, int i) {
+        return strings[locs[locStart[term] + i * LOC_FIELDS + 1]];
+    }
+
+    int getStart(int term, int i) {
+        return locs[locStart[term] + i * LOC_FIELDS + 2];
+    }
+
+    int getEnd(int term, int i) {
+        return locs[locStart[term] + i * LOC_FIELDS + 3];
+    }
+
+    /**
+     * Write the DAG to the given file.  It's written to a temporary file first, so that an
+     * interrupted write can't leave a corrupt DAG behind.
+     */
+    void save(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeStrings(out, ids);
+            writeStrings(out, names);
+            writeInts(out, roots);
+            writeInts(out, childStart);
+            writeInts(out, children);
+            writeStrings(out, strings);
+            writeInts(out, locStart);
+            writeInts(out, locs);
+            out.close();
+        } catch (IOException x) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            tmp.delete();
+            throw x;
+        }
+        f.delete();
+        if (!tmp.renameTo(f)) {
+            throw new IOException("Unable to rename " + tmp + " to " + f);
+        }
+    }
+
+    static GODag load(File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(f + " is not a compatible ontology file.");
+            }
+            return new GODag(readStrings(in), readStrings(in), readInts(in), readInts(in), readInts(in), readStrings(in), readInts(in), readInts(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strs) throws IOException {
+        out.writeInt(strs.length);
+        for (String s: strs) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] result = new String[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readUTF();
+        }
+        return result;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] vals) throws IOException {
+        out.writeInt(vals.length);
+        for (int v: vals) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] result = new int[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readInt();
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates terms and relationships while the ontology is being parsed, and then
+     * compiles them into a <code>GODag</code>.
+     */
+    static class Builder {
+        private final Map<String, Integer> termIndices = new HashMap<String, Integer>();
+        private final List<String> ids = new ArrayList<String>();
+        private final List<String> names = new ArrayList<String>();
+        private final List<Integer> roots = new ArrayList<Integer>();
+        private IntList edgeParents = new IntList();
+        private IntList edgeChildren = new IntList();
+
+        /**
+         * Add a term to the ontology.
+         *
+         * @param id the GO ID of the term
+         * @param name the term's description
+         * @param parentIDs GO IDs of the term's parents (via is_a relationships)
+         * @param isRoot true if the term is the root of one of the ontology's namespaces
+         */
+        void addTerm(String id, String name, List<String> parentIDs, boolean isRoot) {
+            int t = getIndex(id);
+            names.set(t, name);
+            if (isRoot) {
+                roots.add(t);
+            }
+            for (String p: new LinkedHashSet<String>(parentIDs)) {
+                edgeParents.add(getIndex(p));
+                edgeChildren.add(t);
+            }
+        }
+
+        private int getIndex(String id) {
+            Integer result = termIndices.get(id);
+            if (result == null) {
+                result = ids.size();
+                termIndices.put(id, result);
+                ids.add(id);
+                names.add(null);
+            }
+            return result;
+        }
+
+        /**
+         * Compile the accumulated terms, together with the locations from the mapping file.
+         */
+        GODag build(String mapFile) throws IOException {
+            int n = ids.size();
+            final String[] idArray = ids.toArray(new String[n]);
+            final String[] nameArray = names.toArray(new String[n]);
+            for (int i = 0; i < n; i++) {
+                // A parent which was never defined (e.g. because it is obsolete).
+                if (nameArray[i] == null) {
+                    nameArray[i] = idArray[i];
+                }
+            }
+            Comparator<Integer> byName = new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = nameArray[a].compareTo(nameArray[b]);
+                    return result != 0 ? result : idArray[a].compareTo(idArray[b]);
+                }
+            };
+
+            Collections.sort(roots, byName);
+            int[] rootArray = new int[roots.size()];
+            for (int i = 0; i < rootArray.length; i++) {
+                rootArray[i] = roots.get(i);
+            }
+
+            // Bucket the edges by parent, then sort each parent's children by name.
+            int[] childStart = new int[n + 1];
+            for (int i = 0; i < edgeParents.size(); i++) {
+                childStart[edgeParents.get(i) + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                childStart[i + 1] += childStart[i];
+            }
+            int[] fill = childStart.clone();
+            int[] children = new int[edgeParents.size()];
+            for (int i = 0; i < edgeParents.size(); i++) {
+                children[fill[edgeParents.get(i)]++] = edgeChildren.get(i);
+            }
+            edgeParents = null;
+            edgeChildren = null;
+            for (int p = 0; p < n; p++) {
+                int count = childStart[p + 1] - childStart[p];
+                if (count > 1) {
+                    Integer[] sorted = new Integer[count];
+                    for (int i = 0; i < count; i++) {
+                        sorted[i] = children[childStart[p] + i];
+                    }
+                    Arrays.sort(sorted, byName);
+                    for (int i = 0; i < count; i++) {
+                        children[childStart[p] + i] = sorted[i];
+                    }
+                }
+            }
+
+            // Read the locations, interning the RefSeq IDs and chromosome names.
+            Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+            List<String> strings = new ArrayList<String>();
+            IntList rows = new IntList();
+            int[] locCounts = new int[n + 1];
+            BufferedReader reader = new BufferedReader(new FileReader(mapFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] split = line.split("\t");
+                    if (split.length < 5) {
+                        continue;
+                    }
+                    // Older mapping files used underscores in place of colons.
+                    Integer t = termIndices.get(split[0].replace('_', ':'));
+                    if (t != null) {
+                        try {
+                            int start = Integer.parseInt(split[3].trim());
+                            int end = Integer.parseInt(split[4].trim());
+                            rows.add(t);
+                            rows.add(intern(split[1], stringIndices, strings));
+                            rows.add(intern(split[2], stringIndices, strings));
+                            rows.add(start);
+                            rows.add(end);
+                            locCounts[t + 1] += LOC_FIELDS;
+                        } catch (NumberFormatException ignored) {
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            int[] locStart = locCounts;
+            for (int i = 0; i < n; i++) {
+                locStart[i + 1] += locStart[i];
+            }
+            fill = locStart.clone();
+            int[] locs = new int[locStart[n]];
+            for (int i = 0; i < rows.size(); i += LOC_FIELDS + 1) {
+                int dest = fill[rows.get(i)];
+                for (int j = 0; j < LOC_FIELDS; j++) {
+                    locs[dest + j] = rows.get(i + j + 1);
+                }
+                fill[rows.get(i)] += LOC_FIELDS;
+            }
+
+            return new GODag(idArray, nameArray, rootArray, childStart, children, strings.toArray(new String[0]), locStart, locs);
+        }
+
+        private static int intern(String s, Map<String, Integer> indices, List<String> strings) {
+            Integer result = indices.get(s);
+            if (result == null) {
+                result = strings.size();
+                indices.put(s, result);
+                strings.add(s);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Minimal growable array of ints, so that we don't have to box every value while building.
+     */
+    private static class IntList {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.geneontology;
+
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+
+/**
+ * Presents a <code>GODag</code> to a JTree.  Nothing is created for a term until the JTree
+ * actually asks for it (i.e. when its parent is expanded), and a term which appears under
+ * several parents is represented by the same <code>Term</code> object in each place.
+ */
+class GOTreeModel implements TreeModel {
+
+    private final GODag dag;
+
+    /** Fake root, whose children are the roots of the ontology's namespaces. */
+    private final Term root = new Term(-1);
+
+    /** Term objects, created on demand. */
+    private final Term[] terms;
+
+    GOTreeModel(GODag dag) {
+        this.dag = dag;
+        terms = new Term[dag.size()];
+    }
+
+    GODag getDag() {
+        return dag;
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        int p = ((Term)parent).index;
+        return getTerm(p < 0 ? dag.getRoot(index) : dag.getChild(p, index));
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        int p = ((Term)parent).index;
+        return p < 0 ? dag.getRootCount() : dag.getChildCount(p);
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return getChildCount(node) == 0;
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent != null && child != null) {
+            int c = ((Term)child).index;
+            int n = getChildCount(parent);
+            for (int i = 0; i < n; i++) {
+                if (((Term)getChild(parent, i)).index == c) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The ontology is read-only, so this should never be called.
+     */
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+    }
+
+    /**
+     * The ontology never changes, so there's nothing to notify listeners about.
+     */
+    @Override
+    public void addTreeModelListener(TreeModelListener l) {
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener l) {
+    }
+
+    private Term getTerm(int t) {
+        if (terms[t] == null) {
+            terms[t] = new Term(t);
+        }
+        return terms[t];
+    }
+
+    /**
+     * Node object handed out to the JTree.  The index is -1 for the fake root.
+     */
+    class Term {
+        final int index;
+
+        private Term(int index) {
+            this.index = index;
+        }
+
+        String getURL() {
+            return index < 0 ? GODag.ROOT_URL : dag.getURL(index);
+        }
+
+        @Override
+        public String toString() {
+            return index < 0 ? "..." : dag.getName(index) + " [" + dag.getID(index) + "]";
+        }
+    }
+}
@@ -30,10 +30,7 @@
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
 import java.util.TreeSet;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -58,7 +55,6 @@
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
-import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeSelectionModel;
 import savant.api.util.NavigationUtils;
 import savant.api.util.RangeUtils;
@@ -73,9 +69,9 @@ public class ParentChildrenTree extends JPanel
 HyperlinkListener, WindowListener, PropertyChangeListener{
     
     /**
-     * Tree, as user-defined, that can be displayed.
+     * The ontology being displayed.
      */
-    private XTree tree;
+    private GODag dag;
     
     /**
      * Actual JTree
@@ -97,11 +93,6 @@ public class ParentChildrenTree extends JPanel
      */
     private URL url;
     
-    /**
-     * The actual root of the tree.
-     */
-    private DefaultMutableTreeNode actualRoot;
-    
     /**
      * Dialog panel.
      */
@@ -119,9 +110,9 @@ public class ParentChildrenTree extends JPanel
     
     
     /**
-     * The node which has currently been selected.
+     * The term which has currently been selected (-1 for the root).
      */
-    private XNode currentlySelected;
+    private int currentlySelected = -1;
     
     /**
      * The frame to contain this panel
@@ -165,19 +156,19 @@ public class ParentChildrenTree extends JPanel
     public static ParentChildrenTree getTree(String mapFile) throws Exception{
         
         ParentChildrenTree gui_tree = new ParentChildrenTree
-                (XMLontology.makeTree(mapFile));
+                (GODag.getDag(mapFile));
         return gui_tree;
     }
     
     
     /**
      * Initializing steps all done in constructor.
-     * @param tree the tree upon which this UI will be made. 
+     * @param dag the ontology upon which this UI will be made. 
      */
-    public ParentChildrenTree(XTree tree){
+    ParentChildrenTree(GODag dag){
         
-        // The current tree.
-        this.tree = tree;
+        // The current ontology.
+        this.dag = dag;
         
         // To keep track of the pages which have been visited.
         pagesVisited = new LinkedList();
@@ -185,19 +176,8 @@ public ParentChildrenTree(XTree tree){
         // Set layout manager
         this.setLayout(new BorderLayout());
         
-        // Root of the tree (dummy).
-        XNode root = new XNode("...", false);
-        root.setDescription("...");
-        root.setLocs(new ArrayList< ArrayList<String> >());
-        root.setURL("http://amigo.geneontology.org/cgi-bin/amigo/go.cgi");
-        
-        actualRoot = new DefaultMutableTreeNode(root);
-        
-        // Create and add the rest of the nodes in the tree.
-        addNodes();
-        
-        // Add the root to the actual jTree, and make tree responsive to selection.
-        this.jTree = new JTree(actualRoot);
+        // The tree's nodes are only created as they are expanded.  Make tree responsive to selection.
+        this.jTree = new JTree(new GOTreeModel(dag));
         jTree.getSelectionModel().setSelectionMode
                 (TreeSelectionModel.SINGLE_TREE_SELECTION);
         jTree.addTreeSelectionListener(this);
@@ -272,97 +252,19 @@ public ParentChildrenTree(XTree tree){
     }
     
     
-    /**
-     * Add the nodes other than the root to the tree. Move in a breadth-first
-     * fashion.
-     */
-    private void addNodes(){
-        
-        // To contain the roots of the tree.
-        Set<XNode> roots = tree.getRootNodes();
-        
-        // Get the name of the children while going down the tree.
-        TreeSet<XNode> children;
-        
-        // The child in consideration in context.
-        DefaultMutableTreeNode child;
-        
-        // To contain the parent nodes (to be used when displaying) in question.
-        List<DefaultMutableTreeNode> parentNodes = 
-                new ArrayList<DefaultMutableTreeNode>();
-        
-        
-        // To contain the children nodes in question.
-        List<DefaultMutableTreeNode> childrenNodes = 
-                new ArrayList<DefaultMutableTreeNode>();
-        
-        
-        // Add all roots to the tree.
-        for (XNode root: roots){
-        
-            // Connect the root to its children.
-            child = new DefaultMutableTreeNode(root);
-            actualRoot.add(child);
-            
-            // The future parents to be considered.
-            parentNodes.add(child);
-        }
-        
-        // While we still have children nodes...
-        while(!parentNodes.isEmpty()){
-            
-            // Go through the tree in a breadth-first manner.
-            for (DefaultMutableTreeNode parent: parentNodes){
-
-                // Get the set of children, and have the parents accept their
-                // children.
-                children = tree.getChildrenNodes
-                        (((XNode)parent.getUserObject()).getIdentifier());
-
-                for (XNode child2: children){
-
-                    child = new DefaultMutableTreeNode(child2);
-                    childrenNodes.add(child);
-                    parent.add(child);
-                }
-            }
-
-            // Now have the children become parents.
-            parentNodes = getCopy(childrenNodes);
-            childrenNodes.clear();           
-        }
-    } // addNode function
-    
-    /**
-     * Returns a copy of a list containing DefaultMutableTreeNode objects.
-     * @param source from where to copy
-     * @return the copy
-     */
-    private List<DefaultMutableTreeNode> getCopy(List<DefaultMutableTreeNode> source){
-        
-        List<DefaultMutableTreeNode> dest = 
-                new ArrayList<DefaultMutableTreeNode>();
-        
-        for (DefaultMutableTreeNode node: source){
-            
-            dest.add(node);
-        }
-        return dest;
-    } // getCopy function
-
-    
-    
     /**
      * Updates the list that is displayed in the frame (using a thread).
      */
-    private void updateList(ArrayList<ArrayList<String>> locs){
+    private void updateList(int term){
                 
-        // Get the first element of each location into an array so as to update the list.
+        // Get the RefSeq ID of each location into an array so as to update the list.
         TreeSet<String> set = new TreeSet<String>();
 
-        for (ArrayList<String> loc: locs){
+        if (term >= 0){
+            for (int i = 0; i < dag.getLocationCount(term); i++){
 
-            set.add(loc.get(0));
+                set.add(dag.getRefSeq(term, i));
+            }
         }
                
         locList.setListData(set.toArray());  
@@ -413,7 +315,7 @@ public static void showTree(String mapFile) throws Exception{
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         
         // Add the tree to the window
-        frame.add( new ParentChildrenTree(XMLontology.makeTree(mapFile)) );
+        frame.add( new ParentChildrenTree(GODag.getDag(mapFile)) );
         
         // Display the window.
         frame.pack();
@@ -594,7 +496,7 @@ else if (nameButton.equals("<Back")){
     public void valueChanged(TreeSelectionEvent e) {
 
         // Last component that has been selected.
-        DefaultMutableTreeNode component = (DefaultMutableTreeNode)
+        GOTreeModel.Term component = (GOTreeModel.Term)
                            jTree.getLastSelectedPathComponent();
 
         // If nothing has been selected.
@@ -606,16 +508,14 @@ public void valueChanged(TreeSelectionEvent e) {
         // Put the dialog out of sight.
         dialog.setVisible(false); 
         
-        // Display the url of interest.
-        XNode node = (XNode) component.getUserObject();
-        
-        // Keep track of the node which has been selected.
-        currentlySelected = node;
+        // Keep track of the term which has been selected.
+        currentlySelected = component.index;
 
         // update the jList object that is shown.
-        updateList(node.getLocs());
+        updateList(currentlySelected);
         
-        displayURL(node.getURL());
+        // Display the url of interest.
+        displayURL(component.getURL());
     }
         
      @Override
@@ -637,16 +537,17 @@ public void valueChanged(ListSelectionEvent e) {
         TreeSet<String> locations = new TreeSet<String>();
         
         // For each location, find the one that we want.
-        for (ArrayList<String> loc : currentlySelected.getLocs()){
+        for (int i = 0; currentlySelected >= 0 && i < dag.getLocationCount(currentlySelected); i++){
             
             // When we find something that we want...
             // Make sure the chromosome name has no underscores 
             // (o/w, we do not have records for this anyway).
-            if (loc.get(0).equals(located) && !loc.get(1).matches(".*_.*")){
+            String chrom = dag.getChromosome(currentlySelected, i);
+            if (dag.getRefSeq(currentlySelected, i).equals(located) && chrom.indexOf('_') < 0){
                 
                 // BED-formatting: need to subtract 1.
-                int endPos = Integer.parseInt(loc.get(3).trim()) - 1;
-                String acc = loc.get(1) + "\t" + loc.get(2) + "\t" + endPos;
+                int endPos = dag.getEnd(currentlySelected, i) - 1;
+                String acc = chrom + "\t" + dag.getStart(currentlySelected, i) + "\t" + endPos;
                 locations.add(acc);
             }
         }
@@ -43,11 +43,11 @@ class XMLontology {
             + "geneontology.org/latest-termdb/go_daily-termdb.obo-xml.gz";
     
     /**
-     * Makes and returns a tree using GO terms.
+     * Makes and returns a DAG using GO terms.
      * @param mapFile map of GO ID to genome locations.
-     * @return the tree.
+     * @return the compiled DAG.
      */
-    public static XTree makeTree(String mapFile) throws Exception{
+    public static GODag makeDag(String mapFile) throws Exception{
         
         
         // The location of the file
@@ -69,26 +69,27 @@ public static XTree makeTree(String mapFile) throws Exception{
 
             out.write(buf, 0, len);
         }
+        out.close();
+        gzip.close();
 
+        GODag.Builder builder = new GODag.Builder();
         
-        XTree tree = new XTree(mapFile);
+        Handler handler = new Handler(builder, locationOfFile);
         
-        Handler handler = new Handler(tree, locationOfFile);
-        
-        // Parse through the file, and get the xtree to be made and return it.
+        // Parse through the file, and get the DAG to be made and return it.
         parseXMLFile(true, handler);
         
         // No need to delete the file here: it is automatically deleted.
-        return tree;
+        return builder.build(mapFile);
     }
     
     
     static class Handler extends DefaultHandler{
         
         /**
-         * The tree to be populated via parsing.
+         * The DAG to be populated via parsing.
          */
-        private XTree tree;
+        private GODag.Builder builder;
         
         /**
          * The location of the file to be parsed.
@@ -96,9 +97,14 @@ static class Handler extends DefaultHandler{
         private String locationOfFile;
         
         /**
-         * The current node being filled.
+         * Identifier of the current term being filled.
+         */
+        private String currID;
+        
+        /**
+         * Description of the current term being filled.
          */
-        private XNode currNode;
+        private String currName;
         
         /**
          * List of parents for the current node.
@@ -122,11 +128,12 @@ static class Handler extends DefaultHandler{
         
 //        private StringBuilder strBuilder;
         
-        Handler(XTree tree, String locationOfFile){
+        Handler(GODag.Builder builder, String locationOfFile){
             
-            this.tree = tree;
+            this.builder = builder;
             this.locationOfFile = locationOfFile;
-            this.currNode = null;
+            this.currID = null;
+            this.currName = null;
             this.currParents = new ArrayList<String>();
             this.haveSeenTerm = false;
             this.isRoot = false;
@@ -162,7 +169,8 @@ public void endElement(String uri, String localName, String qName){
                 // If see that term is obsolete, just stop recording this info.
                 if (qName.equals("is_obsolete") && stringAcc.equals("1")){
                 
-                    currNode = null;
+                    currID = null;
+                    currName = null;
                     currParents.clear();
                     haveSeenTerm = false;
                 }
@@ -171,35 +179,30 @@ else if (haveSeenTerm){
 
                     // If we have reached the end of an element of interest, 
                     // add it to the tree.
-                    if (qName.equals("term") && currNode != null){
+                    if (qName.equals("term") && currID != null){
 
-                        // If this is not a root, do a simple addition.
-                        if (!isRoot){
-                            
-                            tree.addNode(currNode, currParents);
-                        }
-                        // But if this is a root, add as a root.
-                        else{
-                        
-                            isRoot = false;
-                            tree.addRoot(currNode);
-                        }
+                        // Roots are just terms with no parents.
+                        builder.addTerm(currID, currName, currParents, isRoot);
                         
+                        isRoot = false;
+                        currID = null;
+                        currName = null;
                         currParents.clear();
                         haveSeenTerm = false;
                     }
-                    // Create a node if we have seen the id.
+                    // Start a new term if we have seen the id.
                     if (qName.equals("id")){
 
-                        currNode = new XNode(stringAcc);
+                        currID = stringAcc;
+                        currName = null;
                     }
-                    // Set the description of the node.
+                    // Set the description of the term.
                     else if (qName.equals("name")){
 
                         // To ensure that you set the description only once.
-                        if (currNode.getDescription() == null){
+                        if (currName == null){
                             
-                            currNode.setDescription(stringAcc);
+                            currName = stringAcc;
                         }
                     }
                     // Add the list of parents.
@@ -0,0 +1,384 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.snp;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceRecord;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import savant.api.adapter.BookmarkAdapter;
+import savant.api.adapter.GenomeAdapter;
+import savant.api.adapter.RangeAdapter;
+import savant.api.util.BookmarkUtils;
+import savant.api.util.DialogUtils;
+import savant.api.util.RangeUtils;
+import savant.api.util.Resolution;
+import savant.data.sources.BAMDataSource;
+import savant.data.types.BAMIntervalRecord;
+import savant.util.MiscUtils;
+
+
+/**
+ * Runs the SNP caller over an entire BAM file (or a set of target regions), rather than just
+ * the records in the current view.  The regions are broken into chunks which are processed in
+ * parallel, each thread having its own reader; chunks which the BAM index shows to be empty
+ * are skipped without being read.  Calls are written to a VCF or BED file in genomic order.
+ */
+class BatchSNPScanner {
+    private static final Log LOG = LogFactory.getLog(BatchSNPScanner.class);
+
+    /** Size of the chunks into which the regions are broken, in bases. */
+    private static final int CHUNK_SIZE = 20000;
+
+    private final URI uri;
+    private final String trackName;
+    private final GenomeAdapter genome;
+    private final double snpPrior;
+    private final double confidence;
+
+    private ExecutorService executor;
+
+    /** Thread running <code>scan</code>, which is interrupted if the scan is cancelled. */
+    private volatile Thread scanThread;
+    private volatile boolean cancelled;
+
+    /** Readers opened by the worker threads, so that they can be closed when the scan is done. */
+    private final List<BAMDataSource> readers = Collections.synchronizedList(new ArrayList<BAMDataSource>());
+    private final ThreadLocal<BAMDataSource> threadReader = new ThreadLocal<BAMDataSource>();
+
+    private final AtomicLong numReads = new AtomicLong();
+    private final AtomicLong numBases = new AtomicLong();
+    private int numSNPs;
+    private long elapsed;
+
+    BatchSNPScanner(URI uri, String trackName, GenomeAdapter genome, double snpPrior, double confidence) {
+        this.uri = uri;
+        this.trackName = trackName;
+        this.genome = genome;
+        this.snpPrior = snpPrior;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Regions covering every reference in the BAM header.
+     */
+    static List<Region> getWholeFileRegions(SAMFileHeader header) {
+        List<Region> result = new ArrayList<Region>();
+        for (SAMSequenceRecord seq : header.getSequenceDictionary().getSequences()) {
+            result.add(new Region(seq.getSequenceName(), 1, seq.getSequenceLength()));
+        }
+        return result;
+    }
+
+    /**
+     * Read target regions from a BED file.  Header and comment lines are ignored.
+     */
+    static List<Region> readBEDRegions(File bedFile) throws IOException {
+        List<Region> result = new ArrayList<Region>();
+        BufferedReader reader = new BufferedReader(new FileReader(bedFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    throw new IOException("Invalid BED line: " + line);
+                }
+                // BED is zero-based, half-open.
+                result.add(new Region(fields[0], Integer.parseInt(fields[1]) + 1, Integer.parseInt(fields[2])));
+            }
+        } catch (NumberFormatException x) {
+            throw new IOException("Invalid BED coordinates: " + x.getMessage());
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Call SNPs over the given regions, writing the results to <code>outFile</code>.  If the file
+     * name ends in ".vcf", the output is VCF; otherwise it's BED.
+     *
+     * @return bookmarks for the SNPs which were found
+     */
+    List<BookmarkAdapter> scan(List<Region> regions, File outFile) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        scanThread = Thread.currentThread();
+        cancelled = false;
+        numReads.set(0);
+        numBases.set(0);
+        numSNPs = 0;
+
+        // Break the regions into chunks, using the index to skip the empty ones.
+        List<Region> chunks = new ArrayList<Region>();
+        BAMDataSource indexReader = new BAMDataSource(uri);
+        try {
+            for (Region r : regions) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                for (int from = r.from; from <= r.to; from += CHUNK_SIZE) {
+                    Region chunk = new Region(r.ref, from, Math.min(from + CHUNK_SIZE - 1, r.to));
+                    if (indexReader.mayHaveRecords(chunk.ref, chunk.getRange())) {
+                        chunks.add(chunk);
+                    }
+                }
+            }
+        } catch (InterruptedException x) {
+            scanThread = null;
+            throw x;
+        } finally {
+            indexReader.close();
+        }
+        LOG.info("Scanning " + chunks.size() + " non-empty chunks of " + uri);
+        showProgress(0, chunks.size());
+
+        final AtomicInteger threadNum = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "SNPScan-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        List<BookmarkAdapter> bookmarks = new ArrayList<BookmarkAdapter>();
+        boolean vcf = outFile.getName().toLowerCase().endsWith(".vcf");
+        PrintWriter writer = new PrintWriter(outFile);
+        try {
+            List<Future<List<Pileup>>> futures = new ArrayList<Future<List<Pileup>>>(chunks.size());
+            for (final Region chunk : chunks) {
+                futures.add(executor.submit(new Callable<List<Pileup>>() {
+                    @Override
+                    public List<Pileup> call() throws Exception {
+                        return scanChunk(chunk);
+                    }
+                }));
+            }
+
+            if (vcf) {
+                writer.println("##fileformat=VCFv4.1");
+                writer.println("##source=Savant SNP Finder");
+                writer.println("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Total Depth\">");
+                writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+            }
+
+            // Collect the results in chunk order, so that the output is sorted.
+            for (int i = 0; i < futures.size(); i++) {
+                String ref = chunks.get(i).ref;
+                List<Pileup> snps;
+                try {
+                    snps = futures.get(i).get();
+                } catch (ExecutionException x) {
+                    Throwable cause = x.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    } else if (cause instanceof InterruptedException) {
+                        throw (InterruptedException)cause;
+                    }
+                    throw new IOException(cause);
+                }
+                for (Pileup snp : snps) {
+                    if (!writeSNP(writer, vcf, ref, snp)) {
+                        continue;
+                    }
+                    bookmarks.add(BookmarkUtils.createBookmark(ref, RangeUtils.createRange(snp.getPosition(), snp.getPosition()),
+                            snp.getSNPNucleotide() + "/" + snp.getReferenceNucleotide() + " SNP in " + trackName));
+                    numSNPs++;
+                }
+                showProgress(i + 1, futures.size());
+            }
+        } finally {
+            scanThread = null;
+            writer.close();
+            executor.shutdownNow();
+            executor = null;
+            for (BAMDataSource r : readers) {
+                r.close();
+            }
+            readers.clear();
+            elapsed = System.currentTimeMillis() - startTime;
+            showProgress(1, 1);
+        }
+        return bookmarks;
+    }
+
+    /**
+     * Stop a scan in progress.  The thread calling <code>scan</code> will get an InterruptedException,
+     * and the worker threads are shut down on its way out.
+     */
+    void cancel() {
+        cancelled = true;
+        Thread t = scanThread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Pile up and call a single chunk.  Run on one of the worker threads.
+     */
+    private List<Pileup> scanChunk(Region chunk) throws IOException, InterruptedException {
+        BAMDataSource reader = threadReader.get();
+        if (reader == null) {
+            reader = new BAMDataSource(uri);
+            threadReader.set(reader);
+            readers.add(reader);
+        }
+
+        String genomeRef = getGenomeReference(chunk.ref);
+        if (genomeRef == null) {
+            return Collections.emptyList();
+        }
+        byte[] sequence;
+        synchronized (genome) {
+            sequence = genome.getSequence(genomeRef, chunk.getRange());
+        }
+        if (sequence == null || sequence.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<BAMIntervalRecord> records = reader.getRecords(chunk.ref, chunk.getRange(), Resolution.HIGH, null);
+        long bases = 0;
+        int reads = 0;
+        for (BAMIntervalRecord r : records) {
+            SAMRecord sam = r.getSAMRecord();
+            // Reads which straddle chunk boundaries are only counted by the chunk in which they start.
+            if (sam.getAlignmentStart() >= chunk.from) {
+                reads++;
+                bases += sam.getReadLength();
+            }
+        }
+        numReads.addAndGet(reads);
+        numBases.addAndGet(bases);
+
+        return SNPFinderPlugin.callSNPsFromPileups(TrackPileups.pileUp(trackName, chunk.from, sequence, records), snpPrior, confidence);
+    }
+
+    /**
+     * Map a reference name from the BAM file onto the genome's name for the same reference
+     * (e.g. "1" vs. "chr1").
+     */
+    private String getGenomeReference(String bamRef) {
+        if (genome.getReferenceNames().contains(bamRef)) {
+            return bamRef;
+        }
+        String homogenized = MiscUtils.homogenizeSequence(bamRef);
+        for (String ref : genome.getReferenceNames()) {
+            if (MiscUtils.homogenizeSequence(ref).equals(homogenized)) {
+                return ref;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write a single call.  Calls whose alternate allele isn't one of A, C, G, or T are skipped,
+     * since they can't be represented in VCF.
+     *
+     * @return true if the call was written
+     */
+    private boolean writeSNP(PrintWriter writer, boolean vcf, String ref, Pileup snp) {
+        if (snp.getSNPNucleotide() == Pileup.Nucleotide.OTHER) {
+            return false;
+        }
+        // Phred-scaled confidence, capped so that certain calls don't come out as Infinity.
+        double qual = Math.min(-10.0 * Math.log10(1.0 - snp.getSNPNucleotideConfidence(snpPrior)), 999.0);
+        if (vcf) {
+            Pileup.Nucleotide refNuc = snp.getReferenceNucleotide();
+            writer.printf("%s\t%d\t.\t%s\t%s\t%.1f\tPASS\tDP=%d", ref, snp.getPosition(), refNuc == Pileup.Nucleotide.OTHER ? "N" : refNuc, snp.getSNPNucleotide(), qual, (int)snp.getTotalCoverage()).println();
+        } else {
+            writer.printf("%s\t%d\t%d\t%s/%s\t%d", ref, snp.getPosition() - 1, snp.getPosition(), snp.getReferenceNucleotide(), snp.getSNPNucleotide(), (int)Math.min(qual * 10.0, 1000.0)).println();
+        }
+        return true;
+    }
+
+    private void showProgress(final int done, final int total) {
+        MiscUtils.invokeLaterIfNecessary(new Runnable() {
+            @Override
+            public void run() {
+                if (cancelled && done < total) {
+                    // Don't bring the dialog back while the scan is winding down.
+                    return;
+                }
+                DialogUtils.showProgress("Scanning for SNPs...", done >= total ? 1.0 : (double)done / total, new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent ae) {
+                        cancel();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Summary of the most recent scan, including throughput.
+     */
+    String getSummary() {
+        double secs = Math.max(elapsed, 1) / 1000.0;
+        return String.format("%d SNPs found in %d reads (%d bases) in %.1fs: %.0f reads/s, %.0f bases/s",
+                numSNPs, numReads.get(), numBases.get(), secs, numReads.get() / secs, numBases.get() / secs);
+    }
+
+    /**
+     * A region to be scanned, using the reference names from the BAM file and one-based,
+     * inclusive coordinates.
+     */
+    static class Region {
+        final String ref;
+        final int from;
+        final int to;
+
+        Region(String ref, int from, int to) {
+            this.ref = ref;
+            this.from = from;
+            this.to = to;
+        }
+
+        RangeAdapter getRange() {
+            return RangeUtils.createRange(from, to);
+        }
+    }
+}
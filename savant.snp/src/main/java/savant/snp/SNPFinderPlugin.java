@@ -25,14 +25,24 @@
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
@@ -42,16 +52,13 @@
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ChangeEvent;
 
-import net.sf.samtools.Cigar;
-import net.sf.samtools.CigarElement;
-import net.sf.samtools.CigarOperator;
-import net.sf.samtools.SAMRecord;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import savant.api.adapter.GenomeAdapter;
+import savant.api.adapter.BookmarkAdapter;
 import savant.api.adapter.TrackAdapter;
 import savant.api.util.BookmarkUtils;
+import savant.api.util.DialogUtils;
 import savant.api.util.GenomeUtils;
 import savant.api.util.NavigationUtils;
 import savant.api.util.RangeUtils;
@@ -61,9 +68,9 @@
 import savant.api.event.LocationChangedEvent;
 import savant.api.event.TrackEvent;
 import savant.api.util.Listener;
-import savant.data.types.BAMIntervalRecord;
+import savant.data.sources.BAMDataSource;
 import savant.plugin.SavantPanelPlugin;
-import savant.snp.Pileup.Nucleotide;
+import savant.util.MiscUtils;
 
 public class SNPFinderPlugin extends SavantPanelPlugin {
 
@@ -90,14 +97,30 @@ public class SNPFinderPlugin extends SavantPanelPlugin {
     // keep track of canvases
     private Map<TrackAdapter, JPanel> viewTrackToCanvasMap;
 
-    // keep track of piles
-    private Map<TrackAdapter, List<Pileup>> viewTrackToPilesMap;
+    // keep track of pileups, tile by tile
+    private Map<TrackAdapter, TrackPileups> trackPileups = new HashMap<TrackAdapter, TrackPileups>();
 
     // keep track of snps in range
-    private Map<TrackAdapter, List<Pileup>> viewTrackToSNPsMap;
+    private Map<TrackAdapter, List<Pileup>> viewTrackToSNPsMap = new HashMap<TrackAdapter, List<Pileup>>();
 
-    // keep track of all snps found
-    private Map<TrackAdapter, List<Pileup>> snpsFound;
+    // keep track of all snps found (as reference:position:nucleotide)
+    private Map<TrackAdapter, Set<String>> snpsFound;
+
+    // background threads for piling up and calling
+    private final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SNPFinder-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    // calls in progress, and a counter so that results from superseded calls can be ignored
+    private final List<Future<?>> pendingCalls = new ArrayList<Future<?>>();
+    private int generation;
 
     /* == INITIALIZATION == */
 
@@ -115,7 +138,6 @@ public void handleEvent(LocationChangedEvent event) {
                 // if a sequence could be retrieved, run the SNP finder on the
                 // data in range
                 if (sequence != null) {
-                    updateTrackCanvasMap();
                     doEverything();
                 }
             }
@@ -130,7 +152,7 @@ public void handleEvent(TrackEvent event) {
         });
 
         // initialize SNP list
-        snpsFound = new HashMap<TrackAdapter, List<Pileup>>();
+        snpsFound = new HashMap<TrackAdapter, Set<String>>();
         
         // set up the GUI
         setupGUI(canvas);
@@ -267,6 +289,18 @@ public void mouseReleased(MouseEvent e) {
         tb.add(trans_slider);
         tb.add(lab_transparency_status);
 
+        tb.add(new JToolBar.Separator());
+
+        // add a button for scanning an entire file
+        JButton scanButton = new JButton("Batch Scan...");
+        scanButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startBatchScan();
+            }
+        });
+        tb.add(scanButton);
+
         panel.add(tb, BorderLayout.NORTH);
 
         // add a text area to the GUI
@@ -384,7 +418,8 @@ private void setTransparency(int t) {
     }
 
     /**
-     * Do everything.
+     * Do everything.  The pileups and SNP calls are computed on a background thread; any
+     * computation still in progress from a previous call is cancelled.
      */
     private void doEverything() {
         if (isSNPFinderOn) {
@@ -399,207 +434,89 @@ private void doEverything() {
             }
             if (sequence != null) {
                 updateTrackCanvasMap();
-                createPileups();
                 callSNPs();
-                drawPiles();
             }
         }
     }
 
     /**
-     * Pile up.
+     * Cancel any outstanding SNP-calling, and start a new task for each track.
      */
-    private void createPileups() {
-
-        // clear existing piles
-        if (this.viewTrackToPilesMap != null) {
-            viewTrackToPilesMap.clear();
-        }
-        // create a new map (key=track, value=list of piles)
-        viewTrackToPilesMap = new HashMap<TrackAdapter, List<Pileup>>();
-
-        // for each track
-        for (TrackAdapter t : viewTrackToCanvasMap.keySet()) {
-            try {
-                // get the genomic start position of the current range
-                int startPosition = NavigationUtils.getCurrentRange().getFrom();
-
-                // make piles from SAM records in this track
-                List<Pileup> piles = makePileupsFromSAMRecords(t.getName(), t.getDataInRange(), sequence, startPosition);
-
-                // save the piles
-                this.viewTrackToPilesMap.put(t, piles);
-
-            // report errors and move on
-            } catch (Exception ex) {
-                addMessage("Error: " + ex.getMessage());
-                break;
-            }
+    private void callSNPs() {
+        for (Future<?> f : pendingCalls) {
+            f.cancel(true);
         }
-    }
-
-    /**
-     * Make pileups for SAM records.
-     */
-    private List<Pileup> makePileupsFromSAMRecords(String viewTrackName, List<Record> samRecords, byte[] sequence, int startPosition) throws IOException, InterruptedException {
-
-        // list of pileups, one per genomic position in range
-        List<Pileup> pileups = new ArrayList<Pileup>();
-
-        if (samRecords != null) {
-            // initialize the piles
-            int length = sequence.length;
-            for (int i = 0; i < length; i++) {
-                pileups.add(new Pileup(viewTrackName, startPosition + i, Pileup.getNucleotide(sequence[i])));
-            }
-
-            // go through all the samrecords and update the pileups
-            for (Record r : samRecords) {
-                SAMRecord sr = ((BAMIntervalRecord)r).getSAMRecord();
-                updatePileupsFromSAMRecord(pileups, GenomeUtils.getGenome(), sr, startPosition);
+        pendingCalls.clear();
+        final int gen = ++generation;
+
+        // Discard state for tracks which have been closed.
+        trackPileups.keySet().retainAll(viewTrackToCanvasMap.keySet());
+
+        final String ref = NavigationUtils.getCurrentReferenceName();
+        final int startPosition = NavigationUtils.getCurrentRange().getFrom();
+        final byte[] seq = sequence;
+        final double prior = snpPrior;
+        final double z = confidence;
+
+        for (final TrackAdapter t : viewTrackToCanvasMap.keySet()) {
+            TrackPileups tp = trackPileups.get(t);
+            if (tp == null) {
+                tp = new TrackPileups(t.getName());
+                trackPileups.put(t, tp);
             }
-        }
-
-        return pileups;
-    }
-
-    private void updatePileupsFromSAMRecord(List<Pileup> pileups, GenomeAdapter genome, SAMRecord samRecord, int startPosition) throws IOException, InterruptedException {
-
-        // the start and end of the alignment
-        int alignmentStart = samRecord.getAlignmentStart();
-        int alignmentEnd = samRecord.getAlignmentEnd();
-
-        // the read sequence
-        byte[] readBases = samRecord.getReadBases();
-        boolean sequenceSaved = readBases.length > 0; // true iff read sequence is set
-
-   
-        byte[] baseQualities = samRecord.getBaseQualities();
-
-        // return if no bases (can't be used for SNP calling)
-        if (!sequenceSaved) {
-            return;
-        }
-
-        // the reference sequence
-        byte[] refSeq = genome.getSequence(NavigationUtils.getCurrentReferenceName(), RangeUtils.createRange(alignmentStart, alignmentEnd));
-
-        // get the cigar object for this alignment
-        Cigar cigar = samRecord.getCigar();
-
-        // set cursors for the reference and read
-        int sequenceCursor = alignmentStart;
-        int readCursor = alignmentStart;
-
-        int pileupcursor = (int) (alignmentStart - startPosition);
-
-        // cigar variables
-        CigarOperator operator;
-        int operatorLength;
-
-        // consider each cigar element
-        for (CigarElement cigarElement : cigar.getCigarElements()) {
-
-            operatorLength = cigarElement.getLength();
-            operator = cigarElement.getOperator();
-
-            // delete
-            if (operator == CigarOperator.D) {}
-            // insert
-            else if (operator == CigarOperator.I) {}
-            // match **or mismatch**
-            else if (operator == CigarOperator.M) {
-
-                // some SAM files do not contain the read bases
-                if (sequenceSaved) {
-
-                    // determine if there's a mismatch
-                    for (int i = 0; i < operatorLength; i++) {
-
-                        int refIndex = sequenceCursor - alignmentStart + i;
-                        int readIndex = readCursor - alignmentStart + i;
-
-                        // get the base of the read at this position
-                        byte[] readBase = new byte[1];
-                        readBase[0] = readBases[readIndex];
-
-                        /*
-                         * MIKE: use this base quality to update pileup
-                         * via the 'pileOn' method.
-                         */
-                        byte[] baseQ = new byte[1];
-                        baseQ[0] = baseQualities[readIndex];
-
-                        // get the nucleotide corresponding the the readbase
-                        Nucleotide readN = Pileup.getNucleotide(readBase[0]);
-
-                        // adjust the pileup for this position, if it lies in the
-                        // current window
-                        int j = i + (int) (alignmentStart - startPosition);
-                        if (j >= 0 && j < pileups.size()) {
-                            Pileup p = pileups.get(j);
-                            p.pileOn(readN, baseQ[0]);
+            final TrackPileups state = tp;
+            final List<Record> records = t.getDataInRange();
+            pendingCalls.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final List<Pileup> snps;
+                        synchronized (state) {
+                            snps = callSNPsFromPileups(state.getPileups(ref, startPosition, seq, records), prior, z);
                         }
+                        MiscUtils.invokeLaterIfNecessary(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (gen == generation) {
+                                    addMessage(snps.size() + " SNPs found");
+                                    viewTrackToSNPsMap.put(t, snps);
+                                    addFoundSNPs(t, ref, snps);
+                                    JPanel canvas = viewTrackToCanvasMap.get(t);
+                                    if (canvas != null) {
+                                        drawPiles(snps, canvas);
+                                    }
+                                }
+                            }
+                        });
+                    } catch (InterruptedException x) {
+                        // Superseded by a newer request.
+                    } catch (final Exception x) {
+                        LOG.error("Error calling SNPs for " + t.getName(), x);
+                        MiscUtils.invokeLaterIfNecessary(new Runnable() {
+                            @Override
+                            public void run() {
+                                addMessage("Error: " + x.getMessage());
+                            }
+                        });
                     }
                 }
-            } // skipped
-            else if (operator == CigarOperator.N) {
-                // draw nothing
-            } // padding
-            else if (operator == CigarOperator.P) {
-                // draw nothing
-            } // hard clip
-            else if (operator == CigarOperator.H) {
-                // draw nothing
-            } // soft clip
-            else if (operator == CigarOperator.S) {
-                // draw nothing
-            }
-
-            if (operator.consumesReadBases()) {
-                readCursor += operatorLength;
-            }
-            if (operator.consumesReferenceBases()) {
-                sequenceCursor += operatorLength;
-                pileupcursor += operatorLength;
-            }
-        }
-    }
-
-    /* CALL SNPS FOR ALL VIEWTRACKS*/
-    private void callSNPs() {
-
-        if (this.viewTrackToSNPsMap != null) { this.viewTrackToSNPsMap.clear(); }
-        this.viewTrackToSNPsMap = new HashMap<TrackAdapter, List<Pileup>>();
-
-        for (TrackAdapter t : viewTrackToCanvasMap.keySet()) {
-            List<Pileup> piles = viewTrackToPilesMap.get(t);
-            List<Pileup> snps = callSNPsFromPileups(piles, sequence);
-            this.viewTrackToSNPsMap.put(t, snps);
-            addFoundSNPs(t, snps);
+            }));
         }
     }
 
     /**
      * Call SNP for piles for current sequence.
      */
-    private List<Pileup> callSNPsFromPileups(List<Pileup> piles, byte[] sequence) {
-
-        //addMessage("Calling SNPs");
+    static List<Pileup> callSNPsFromPileups(List<Pileup> piles, double snpPrior, double z) throws InterruptedException {
 
         List<Pileup> snps = new ArrayList<Pileup>();
 
-        int length = sequence.length;
-        Pileup.Nucleotide n;
-        Pileup p;
-        for (int i = 0; i < length; i++) {
-            n = Pileup.getNucleotide(sequence[i]);
-            p = piles.get(i);
-            //System.out.println ("I am here");
+        for (Pileup p : piles) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
             if (p.getSNPNucleotide(snpPrior) != null) {
-              //  System.out.println ("I am inside");
                 double snpConfidence = -10 * Math.log10(1-p.getSNPNucleotideConfidence(snpPrior));
-                double z = this.confidence; //-Math.log(1 - ((double)this.confidence)/50.0);
 
                 // criteria for calling snps
                 if (snpConfidence > z) {
@@ -609,8 +526,6 @@ private List<Pileup> callSNPsFromPileups(List<Pileup> piles, byte[] sequence) {
             }
         }
 
-        addMessage(snps.size() + " SNPs found");
-
         return snps;
     }
 
@@ -629,23 +544,6 @@ private void repaintPileupPanels() {
         }
     }
 
-    /**
-     * Draw piles on panels for all ViewTracks.
-     */
-    private void drawPiles() {
-
-        //lastViewTrackToCanvasMapDrawn = viewTrackToCanvasMap;
-
-        //System.out.println("Drawing annotations");
-
-        for (TrackAdapter t : viewTrackToSNPsMap.keySet()) {
-            List<Pileup> pile = viewTrackToSNPsMap.get(t);
-            drawPiles(pile, viewTrackToCanvasMap.get(t));
-        }
-
-        //System.out.println("Done drawing annotations");
-    }
-
     /**
      * Draw piles on panel.
      */
@@ -679,38 +577,123 @@ private void setSequence() {
         }
     }
 
-    private boolean foundSNPAlready(TrackAdapter t, Pileup p) {
-        if (snpsFound.containsKey(t) && snpsFound.get(t).contains(p)) {
-            //System.out.println(p.getPosition() + " found already");
-            return true;
-        } else {
-            //System.out.println(p.getPosition() + " is new");
-            return false;
+    /**
+     * Record the SNPs which have been found, bookmarking the new ones (if requested) in a single batch.
+     */
+    private void addFoundSNPs(TrackAdapter t, String ref, List<Pileup> snps) {
+        Set<String> found = snpsFound.get(t);
+        if (found == null) {
+            found = new HashSet<String>();
+            snpsFound.put(t, found);
         }
-    }
-
-    private void addFoundSNPs(TrackAdapter t, List<Pileup> snps) {
+        List<BookmarkAdapter> bookmarks = new ArrayList<BookmarkAdapter>();
         for (Pileup snp : snps) {
-            addFoundSNP(t,snp);
+            if (found.add(ref + ":" + snp.getPosition() + ":" + snp.getSNPNucleotide())) {
+                if (addBookmarks) {
+                    bookmarks.add(BookmarkUtils.createBookmark(ref, RangeUtils.createRange(snp.getPosition(), snp.getPosition()),
+                        snp.getSNPNucleotide() + "/" + snp.getReferenceNucleotide()
+                        + " SNP "
+                        + (int) snp.getCoverage(snp.getSNPNucleotide()) + "/" + (int) snp.getCoverage(snp.getReferenceNucleotide())
+                        + "; Conf = " + shortenPercentage(snp.getSNPNucleotideConfidence(snpPrior))
+                        + " in " + t.getName()));
+                }
+            }
+        }
+        if (!bookmarks.isEmpty()) {
+            BookmarkUtils.addBookmarks(bookmarks.toArray(new BookmarkAdapter[0]));
         }
     }
 
-    private void addFoundSNP(TrackAdapter t, Pileup snp) {
-        if (!this.foundSNPAlready(t, snp)) {
-            if (!snpsFound.containsKey(t)) {
-                List<Pileup> snps = new ArrayList<Pileup>();
-                snpsFound.put(t, snps);
+    /**
+     * Prompt the user for a BAM track, optional target regions, and an output file, and then
+     * call SNPs across the whole file on a background thread.
+     */
+    private void startBatchScan() {
+        if (!GenomeUtils.isGenomeLoaded()) {
+            addMessage("Error: no reference sequence loaded");
+            return;
+        }
+        List<TrackAdapter> bamTracks = new ArrayList<TrackAdapter>();
+        for (TrackAdapter t : TrackUtils.getTracks()) {
+            if (t.getDataSource() instanceof BAMDataSource) {
+                bamTracks.add(t);
+            }
+        }
+        if (bamTracks.isEmpty()) {
+            addMessage("Error: no BAM tracks loaded");
+            return;
+        }
+        TrackAdapter track = bamTracks.get(0);
+        if (bamTracks.size() > 1) {
+            track = (TrackAdapter)JOptionPane.showInputDialog(null, "Track: ", "Batch Scan", JOptionPane.QUESTION_MESSAGE, null, bamTracks.toArray(), track);
+            if (track == null) {
+                return;
+            }
+        }
+
+        String[] choices = { "Entire file", "Target regions from BED file" };
+        Object input = JOptionPane.showInputDialog(null, "Scan: ", "Batch Scan", JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+        if (input == null) {
+            return;
+        }
+        final BAMDataSource ds = (BAMDataSource)track.getDataSource();
+        final List<BatchSNPScanner.Region> regions;
+        if (input.equals(choices[0])) {
+            regions = BatchSNPScanner.getWholeFileRegions(ds.getHeader());
+        } else {
+            File bedFile = DialogUtils.chooseFileForOpen("Target Regions", null, null);
+            if (bedFile == null) {
+                return;
             }
-            if (addBookmarks) {
-                BookmarkUtils.addBookmark(BookmarkUtils.createBookmark(NavigationUtils.getCurrentReferenceName(), RangeUtils.createRange(snp.getPosition(), snp.getPosition()),
-                    snp.getSNPNucleotide() + "/" + snp.getReferenceNucleotide()
-                    + " SNP "
-                    + (int) snp.getCoverage(snp.getSNPNucleotide()) + "/" + (int) snp.getCoverage(snp.getReferenceNucleotide())
-                    + "; Conf = " + shortenPercentage(snp.getSNPNucleotideConfidence(snpPrior))
-                    + " in " + t.getName()));
+            try {
+                regions = BatchSNPScanner.readBEDRegions(bedFile);
+            } catch (IOException x) {
+                DialogUtils.displayException("Batch Scan", "Unable to read target regions.", x);
+                return;
             }
-            snpsFound.get(t).add(snp);
         }
+        final File outFile = DialogUtils.chooseFileForSave("Save SNP Calls", "SNPs.vcf");
+        if (outFile == null) {
+            return;
+        }
+
+        final BatchSNPScanner scanner = new BatchSNPScanner(ds.getURI(), track.getName(), GenomeUtils.getGenome(), snpPrior, confidence);
+        final boolean bookmarking = addBookmarks;
+        addMessage("Scanning " + track.getName() + " for SNPs");
+        new Thread("SNPFinder-BatchScan") {
+            @Override
+            public void run() {
+                try {
+                    final List<BookmarkAdapter> bookmarks = scanner.scan(regions, outFile);
+                    MiscUtils.invokeLaterIfNecessary(new Runnable() {
+                        @Override
+                        public void run() {
+                            addMessage(scanner.getSummary());
+                            if (bookmarking) {
+                                BookmarkUtils.addBookmarks(bookmarks.toArray(new BookmarkAdapter[0]));
+                            }
+                        }
+                    });
+                } catch (InterruptedException x) {
+                    LOG.info("Batch scan cancelled.");
+                    outFile.delete();
+                    MiscUtils.invokeLaterIfNecessary(new Runnable() {
+                        @Override
+                        public void run() {
+                            addMessage("Batch scan cancelled");
+                        }
+                    });
+                } catch (final Exception x) {
+                    LOG.error("Batch scan failed.", x);
+                    MiscUtils.invokeLaterIfNecessary(new Runnable() {
+                        @Override
+                        public void run() {
+                            DialogUtils.displayException("Batch Scan", "Unable to scan for SNPs.", x);
+                        }
+                    });
+                }
+            }
+        }.start();
     }
 
     private String shortenPercentage(double p) {
@@ -0,0 +1,212 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.snp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.samtools.Cigar;
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.CigarOperator;
+import net.sf.samtools.SAMRecord;
+
+import savant.api.data.Record;
+import savant.data.types.BAMIntervalRecord;
+import savant.snp.Pileup.Nucleotide;
+
+
+/**
+ * Pileups for a single alignment track, cached in fixed-size genomic tiles so that when the
+ * view moves, only the newly-exposed tiles have to be piled up again.  Tiles which scroll out
+ * of view are discarded.
+ */
+class TrackPileups {
+
+    /** Size of a tile, in bases. */
+    static final int TILE_SIZE = 1000;
+
+    private final String trackName;
+
+    /** Reference to which the cached tiles belong. */
+    private String reference;
+
+    /** Cached tiles, keyed by tile index (i.e. position / TILE_SIZE). */
+    private final Map<Integer, Tile> tiles = new HashMap<Integer, Tile>();
+
+    TrackPileups(String trackName) {
+        this.trackName = trackName;
+    }
+
+    /**
+     * Get the pileups for the given range, reusing cached tiles where possible.  The records must
+     * include every alignment which overlaps the range.
+     *
+     * @param ref reference being viewed
+     * @param start first position of the range
+     * @param sequence reference sequence for the range
+     * @param records alignments in the range (may be null if the track has no data at this resolution)
+     * @return one pileup per position in the range
+     * @throws InterruptedException if the thread is interrupted because the results are no longer needed
+     */
+    synchronized List<Pileup> getPileups(String ref, int start, byte[] sequence, List<Record> records) throws InterruptedException {
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        if (!ref.equals(reference)) {
+            tiles.clear();
+            reference = ref;
+        }
+        int end = start + sequence.length - 1;
+        int firstTile = start / TILE_SIZE;
+        int lastTile = end / TILE_SIZE;
+
+        // Forget about tiles which are no longer in view.
+        Iterator<Integer> it = tiles.keySet().iterator();
+        while (it.hasNext()) {
+            int t = it.next();
+            if (t < firstTile || t > lastTile) {
+                it.remove();
+            }
+        }
+
+        Pileup[] window = new Pileup[sequence.length];
+        boolean[] fresh = new boolean[sequence.length];
+        boolean anyFresh = false;
+        for (int t = firstTile; t <= lastTile; t++) {
+            int from = Math.max(t * TILE_SIZE, start);
+            int to = Math.min(t * TILE_SIZE + TILE_SIZE - 1, end);
+            Tile tile = tiles.get(t);
+            if (tile != null && tile.from <= from && tile.to >= to) {
+                System.arraycopy(tile.pileups, from - tile.from, window, from - start, to - from + 1);
+            } else {
+                for (int pos = from; pos <= to; pos++) {
+                    window[pos - start] = new Pileup(trackName, pos, Pileup.getNucleotide(sequence[pos - start]));
+                    fresh[pos - start] = true;
+                }
+                anyFresh = true;
+            }
+        }
+
+        if (anyFresh) {
+            for (Record r : records) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                pileOn(window, fresh, ((BAMIntervalRecord)r).getSAMRecord(), start);
+            }
+
+            // Cache the newly-computed tiles.  Tiles which are only partially in view are cached
+            // too, but will be recomputed if a larger part of them is needed later.
+            for (int t = firstTile; t <= lastTile; t++) {
+                int from = Math.max(t * TILE_SIZE, start);
+                if (fresh[from - start]) {
+                    int to = Math.min(t * TILE_SIZE + TILE_SIZE - 1, end);
+                    tiles.put(t, new Tile(from, to, Arrays.copyOfRange(window, from - start, to - start + 1)));
+                }
+            }
+        }
+        return Arrays.asList(window);
+    }
+
+    /**
+     * Pile up the given alignments over the whole of the given range, without using or
+     * updating the tile cache.  Used for batch scans, where each range is visited only once.
+     */
+    static List<Pileup> pileUp(String trackName, int start, byte[] sequence, List<? extends Record> records) throws InterruptedException {
+        Pileup[] window = new Pileup[sequence.length];
+        boolean[] fresh = new boolean[sequence.length];
+        for (int i = 0; i < sequence.length; i++) {
+            window[i] = new Pileup(trackName, start + i, Pileup.getNucleotide(sequence[i]));
+            fresh[i] = true;
+        }
+        for (Record r : records) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            pileOn(window, fresh, ((BAMIntervalRecord)r).getSAMRecord(), start);
+        }
+        return Arrays.asList(window);
+    }
+
+    /**
+     * Add the bases of the given alignment to the fresh pileups which it overlaps.
+     */
+    private static void pileOn(Pileup[] window, boolean[] fresh, SAMRecord samRecord, int startPosition) {
+
+        // the read sequence
+        byte[] readBases = samRecord.getReadBases();
+
+        // return if no bases (can't be used for SNP calling)
+        if (readBases.length == 0) {
+            return;
+        }
+        byte[] baseQualities = samRecord.getBaseQualities();
+
+        // get the cigar object for this alignment
+        Cigar cigar = samRecord.getCigar();
+
+        // offsets of the current cigar element in the window and in the read
+        int pileupCursor = samRecord.getAlignmentStart() - startPosition;
+        int readCursor = 0;
+
+        for (CigarElement cigarElement : cigar.getCigarElements()) {
+
+            int operatorLength = cigarElement.getLength();
+            CigarOperator operator = cigarElement.getOperator();
+
+            // match **or mismatch**
+            if (operator == CigarOperator.M) {
+                for (int i = 0; i < operatorLength; i++) {
+
+                    // adjust the pileup for this position, if it lies in the
+                    // current window and hasn't been computed previously
+                    int j = pileupCursor + i;
+                    if (j >= 0 && j < window.length && fresh[j]) {
+                        Nucleotide readN = Pileup.getNucleotide(readBases[readCursor + i]);
+                        window[j].pileOn(readN, readCursor + i < baseQualities.length ? baseQualities[readCursor + i] : 0);
+                    }
+                }
+            }
+
+            if (operator.consumesReadBases()) {
+                readCursor += operatorLength;
+            }
+            if (operator.consumesReferenceBases()) {
+                pileupCursor += operatorLength;
+            }
+        }
+    }
+
+    private static class Tile {
+        final int from;
+        final int to;
+        final Pileup[] pileups;
+
+        Tile(int from, int to, Pileup[] pileups) {
+            this.from = from;
+            this.to = to;
+            this.pileups = pileups;
+        }
+    }
+}
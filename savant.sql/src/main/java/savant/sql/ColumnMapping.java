@@ -19,6 +19,10 @@
  */
 package savant.sql;
 
+import java.sql.Types;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import savant.api.util.SettingsUtils;
 
 /**
@@ -113,6 +117,51 @@ public static ColumnMapping getExternalFileMapping(String file) {
         return new ColumnMapping(MappingFormat.EXTERNAL_FILE, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, file, null, null);
     }
 
+    /**
+     * Look for a UCSC-style <code>bin</code> column, which lets range queries use the
+     * table's bin index.
+     *
+     * @param columns array of column definitions from the table
+     * @return name of the bin column, or null if the table doesn't have one
+     */
+    public static String findBinColumn(Column[] columns) {
+        for (Column c: columns) {
+            if (c.name.equalsIgnoreCase(BIN)) {
+                switch (c.type) {
+                    case Types.BIGINT:
+                    case Types.INTEGER:
+                    case Types.SMALLINT:
+                    case Types.TINYINT:
+                        return c.name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a comma-separated list of the columns used by this mapping, suitable for the
+     * projection of a <code>SELECT</code> statement.
+     */
+    public String getProjection() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (String col: new String[] { chrom, start, end, value, name, name2, score, strand, thickStart, thickEnd, itemRGB,
+                                        blockStartsRelative, blockStartsAbsolute, blockEnds, blockSizes,
+                                        span, count, offset, file, lowerLimit, dataRange }) {
+            if (col != null) {
+                result.add(col);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String col: result) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(col);
+        }
+        return sb.toString();
+    }
+
     private static String findColumn(SQLDataSourcePlugin plugin, String settingName, Column[] columns) {
         String setting = SettingsUtils.getString(plugin, settingName);
         if (setting != null) {
@@ -49,18 +49,21 @@ public List<GenericContinuousRecord> getRecords(String reference, RangeAdapter r
         List<GenericContinuousRecord> result = new ArrayList<GenericContinuousRecord>();
         try {
             ResultSet rs = executeQuery(reference, range.getFrom(), range.getTo());
-            while (rs.next()) {
-                String chrom = rs.getString(columns.chrom);
-                int start = rs.getInt(columns.start);
-                int end = rs.getInt(columns.end);
-                for (int i = start; i <= end; i++) {
-                    GenericContinuousRecord rec = GenericContinuousRecord.valueOf(chrom, i, rs.getFloat(columns.value));
-                    if (filt == null || filt.accept(rec)) {
-                        result.add(rec);
+            try {
+                while (rs.next()) {
+                    String chrom = rs.getString(columns.chrom);
+                    int start = rs.getInt(columns.start);
+                    int end = rs.getInt(columns.end);
+                    for (int i = start; i <= end; i++) {
+                        GenericContinuousRecord rec = GenericContinuousRecord.valueOf(chrom, i, rs.getFloat(columns.value));
+                        if (filt == null || filt.accept(rec)) {
+                            result.add(rec);
+                        }
                     }
                 }
+            } finally {
+                closeQuery(rs);
             }
-            rs.close();
         } catch (SQLException sqlx) {
             LOG.error(sqlx);
             throw new IOException(sqlx);
@@ -28,6 +28,7 @@
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -42,6 +43,12 @@
 public class Database {
     private static final Log LOG = LogFactory.getLog(Database.class);
 
+    /** Maximum number of pooled connections used for data queries. */
+    private static final int MAX_POOLED_CONNECTIONS = 4;
+
+    /** Number of rows fetched at a time by drivers which support a fetch size. */
+    private static final int FETCH_SIZE = 1000;
+
     final String name;
     final URI serverURI;
     private final String userName;
@@ -50,6 +57,15 @@ public class Database {
     private List<Table> tables;
     private Connection connection;
 
+    /** Pooled connections not currently in use.  Also serves as the lock for the pool. */
+    private final LinkedList<Connection> idleConnections = new LinkedList<Connection>();
+
+    /** Number of pooled connections, whether idle or checked out. */
+    private int numPooledConnections;
+
+    /** Whether we're talking to MySQL, which needs special handling to stream results; null if not yet known. */
+    private Boolean mySQL;
+
     /**
      * Create a new database access object (but don't connect yet).
      *
@@ -117,6 +133,74 @@ public PreparedStatement prepareStatement(String format, Object... args) throws
         return getConnection().prepareStatement(query);
     }
 
+    /**
+     * Get a connection from the pool, opening a new one if necessary.  If all the pooled
+     * connections are in use, waits for one to be released.  The caller must return the
+     * connection using <code>releaseConnection</code>.
+     */
+    public Connection acquireConnection() throws SQLException {
+        Connection c = null;
+        synchronized (idleConnections) {
+            while (idleConnections.isEmpty() && numPooledConnections >= MAX_POOLED_CONNECTIONS) {
+                try {
+                    idleConnections.wait();
+                } catch (InterruptedException x) {
+                    throw new SQLException("Interrupted while waiting for a connection to " + name + ".", x);
+                }
+            }
+            if (idleConnections.isEmpty()) {
+                numPooledConnections++;
+            } else {
+                c = idleConnections.removeFirst();
+            }
+        }
+
+        // Opening the connection can be slow, so we do it outside the lock.
+        try {
+            if (c != null && !c.isValid(0)) {
+                LOG.info("Pooled connection to " + serverURI + " no longer valid; recreating.");
+                closeQuietly(c);
+                c = null;
+            }
+            if (c == null) {
+                c = DriverManager.getConnection(serverURI + "/" + name, userName, password);
+            }
+            return c;
+        } catch (SQLException x) {
+            synchronized (idleConnections) {
+                numPooledConnections--;
+                idleConnections.notify();
+            }
+            throw x;
+        }
+    }
+
+    /**
+     * Return a connection obtained from <code>acquireConnection</code> to the pool.
+     */
+    public void releaseConnection(Connection c) {
+        synchronized (idleConnections) {
+            idleConnections.addFirst(c);
+            idleConnections.notify();
+        }
+    }
+
+    /**
+     * Prepare a forward-only statement on a pooled connection which will stream its
+     * results rather than having the driver buffer the whole result set.
+     */
+    public PreparedStatement prepareStreamingStatement(Connection c, String format, Object... args) throws SQLException {
+        String query = String.format(format, args);
+        LOG.debug(query);
+        PreparedStatement result = c.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (mySQL == null) {
+            mySQL = c.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+        }
+        // Connector/J ignores ordinary fetch sizes; Integer.MIN_VALUE is its signal to stream row by row.
+        result.setFetchSize(mySQL ? Integer.MIN_VALUE : FETCH_SIZE);
+        return result;
+    }
+
     /**
      * Is the database currently using the given table?  If the database has not queried
      * for tables, just return false.
@@ -163,6 +247,21 @@ public void closeConnection() {
             }
             connection = null;
         }
+        synchronized (idleConnections) {
+            for (Connection c: idleConnections) {
+                closeQuietly(c);
+            }
+            numPooledConnections -= idleConnections.size();
+            idleConnections.clear();
+        }
+    }
+
+    private void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException sqlx) {
+            LOG.warn("Error closing connection to " + serverURI, sqlx);
+        }
     }
 
     public String getName() {
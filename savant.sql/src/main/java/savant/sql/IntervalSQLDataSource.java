@@ -51,17 +51,21 @@ public List<GenericIntervalRecord> getRecords(String reference, RangeAdapter ran
         List<GenericIntervalRecord> result = new ArrayList<GenericIntervalRecord>();
         try {
             ResultSet rs = executeQuery(reference, range.getFrom(), range.getTo());
-            while (rs.next()) {
-                String name = null;
-                if (columns.name != null) {
-                    name = rs.getString(columns.name);
-                }
-                GenericIntervalRecord rec = GenericIntervalRecord.valueOf(reference, Interval.valueOf(rs.getInt(columns.start) + 1, rs.getInt(columns.end)), name);
-                if (filt == null || filt.accept(rec)) {
-                    result.add(rec);
+            try {
+                // Rows are streamed, so look up the column indices once rather than by name for every row.
+                int startCol = rs.findColumn(columns.start);
+                int endCol = rs.findColumn(columns.end);
+                int nameCol = columns.name != null ? rs.findColumn(columns.name) : -1;
+                while (rs.next()) {
+                    String name = nameCol > 0 ? rs.getString(nameCol) : null;
+                    GenericIntervalRecord rec = GenericIntervalRecord.valueOf(reference, Interval.valueOf(rs.getInt(startCol) + 1, rs.getInt(endCol)), name);
+                    if (filt == null || filt.accept(rec)) {
+                        result.add(rec);
+                    }
                 }
+            } finally {
+                closeQuery(rs);
             }
-            rs.close();
         } catch (SQLException sqlx) {
             LOG.error(sqlx);
             throw new IOException(sqlx);
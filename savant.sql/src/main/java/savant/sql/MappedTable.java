@@ -20,6 +20,7 @@
 package savant.sql;
 
 import java.net.URI;
+import java.sql.SQLException;
 
 
 /**
@@ -32,6 +33,9 @@ public class MappedTable extends Table {
     ColumnMapping mapping;
     String trackName;
 
+    /** Name of the bin column, or the empty string if the table has none; null if not yet determined. */
+    private String binColumn;
+
     public MappedTable(Table t, ColumnMapping mapping, String trackName) {
         super(t.name, t.database);
         this.mapping = mapping;
@@ -65,4 +69,18 @@ public boolean isMapped() {
     public ColumnMapping getMapping() {
         return mapping;
     }
+
+    /**
+     * If the table has a UCSC-style bin column, return its name.  The column list is
+     * cached by the table, so this only requires a query the first time.
+     *
+     * @return name of the bin column, or null if there isn't one
+     */
+    public synchronized String getBinColumn() throws SQLException {
+        if (binColumn == null) {
+            String bin = ColumnMapping.findBinColumn(getColumns());
+            binColumn = bin != null ? bin : "";
+        }
+        return binColumn.length() > 0 ? binColumn : null;
+    }
 }
@@ -72,57 +72,59 @@ public List<TabixIntervalRecord> getRecords(String reference, RangeAdapter range
         List<TabixIntervalRecord> result = new ArrayList<TabixIntervalRecord>();
         try {
             ResultSet rs = executeQuery(reference, range.getFrom(), range.getTo());
+            try {
+                while (rs.next()) {
+                    int start = rs.getInt(columns.start);
+                    int end = rs.getInt(columns.end);
+                    String name = rs.getString(columns.name);
+                    String name2 = "";
+                    if (columns.name2 != null) {
+                        name2 = rs.getString(columns.name2);
+                    }
+                    float score = 0.0F;
+                    if (columns.score != null) {
+                        score = rs.getFloat(columns.score);
+                    }
+                    String strand = "";
+                    if (columns.strand != null) {
+                        strand = rs.getString(columns.strand);
+                    }
+                    int thickStart = start;
+                    if (columns.thickStart != null) {
+                        thickStart = rs.getInt(columns.thickStart);
+                    }
+                    int thickEnd = end;
+                    if (columns.thickEnd != null) {
+                        thickEnd = rs.getInt(columns.thickEnd);
+                    }
+                    int itemRGB = 0;
+                    if (columns.itemRGB != null) {
+                        itemRGB = rs.getInt(columns.itemRGB);
+                    }
 
-            while (rs.next()) {
-                int start = rs.getInt(columns.start);
-                int end = rs.getInt(columns.end);
-                String name = rs.getString(columns.name);
-                String name2 = "";
-                if (columns.name2 != null) {
-                    name2 = rs.getString(columns.name2);
-                }
-                float score = 0.0F;
-                if (columns.score != null) {
-                    score = rs.getFloat(columns.score);
-                }
-                String strand = "";
-                if (columns.strand != null) {
-                    strand = rs.getString(columns.strand);
-                }
-                int thickStart = start;
-                if (columns.thickStart != null) {
-                    thickStart = rs.getInt(columns.thickStart);
-                }
-                int thickEnd = end;
-                if (columns.thickEnd != null) {
-                    thickEnd = rs.getInt(columns.thickEnd);
-                }
-                int itemRGB = 0;
-                if (columns.itemRGB != null) {
-                    itemRGB = rs.getInt(columns.itemRGB);
-                }
-
-                String blockStarts = "";
-                if (columns.blockStartsRelative != null) {
-                    blockStarts = extractBlocks(rs.getBlob(columns.blockStartsRelative));
-                } else if (columns.blockStartsAbsolute != null) {
-                    blockStarts = extractBlocks(rs.getBlob(columns.blockStartsAbsolute));
-                }
-                String blockEnds = "";
-                if (columns.blockEnds != null) {
-                    blockEnds = extractBlocks(rs.getBlob(columns.blockEnds));
-                } else if (columns.blockSizes != null) {
-                    blockEnds = extractBlocks(rs.getBlob(columns.blockSizes));
-                }
+                    String blockStarts = "";
+                    if (columns.blockStartsRelative != null) {
+                        blockStarts = extractBlocks(rs.getBlob(columns.blockStartsRelative));
+                    } else if (columns.blockStartsAbsolute != null) {
+                        blockStarts = extractBlocks(rs.getBlob(columns.blockStartsAbsolute));
+                    }
+                    String blockEnds = "";
+                    if (columns.blockEnds != null) {
+                        blockEnds = extractBlocks(rs.getBlob(columns.blockEnds));
+                    } else if (columns.blockSizes != null) {
+                        blockEnds = extractBlocks(rs.getBlob(columns.blockSizes));
+                    }
 
-                // Because we're pretending to be Tabix, we just slam together a tab-delimited line of data.
-                String line = reference +"\t" + start + "\t" + rs.getInt(columns.end) + "\t" + name + "\t" + score + "\t" + strand + "\t" + thickStart + "\t" + thickEnd + "\t" + itemRGB + "\t" + blockStarts + "\t" + blockEnds + "\t" + name2;
-                TabixIntervalRecord rec = TabixIntervalRecord.valueOf(line, tabixMapping);
-                if (filt == null || filt.accept(rec)) {
-                    result.add(rec);
+                    // Because we're pretending to be Tabix, we just slam together a tab-delimited line of data.
+                    String line = reference +"\t" + start + "\t" + rs.getInt(columns.end) + "\t" + name + "\t" + score + "\t" + strand + "\t" + thickStart + "\t" + thickEnd + "\t" + itemRGB + "\t" + blockStarts + "\t" + blockEnds + "\t" + name2;
+                    TabixIntervalRecord rec = TabixIntervalRecord.valueOf(line, tabixMapping);
+                    if (filt == null || filt.accept(rec)) {
+                        result.add(rec);
+                    }
                 }
+            } finally {
+                closeQuery(rs);
             }
-            rs.close();
         } catch (SQLException sqlx) {
             LOG.error(sqlx);
             throw new IOException(sqlx);
@@ -48,5 +48,8 @@ public interface SQLConstants {
     public static final String LOWER_LIMIT = "LOWER_LIMIT";
     public static final String DATA_RANGE = "DATA_RANGE";
 
+    /** Name of the bin column found in most UCSC positional tables. */
+    public static final String BIN = "bin";
+
     public static final String NO_COLUMN = "(none)";
 }
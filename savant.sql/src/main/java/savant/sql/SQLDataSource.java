@@ -20,9 +20,11 @@
 package savant.sql;
 
 import java.net.URI;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
 
 import org.apache.commons.logging.Log;
@@ -48,7 +50,6 @@
     protected MappedTable table;
     protected ColumnMapping columns;
     private List<String> references;
-    private PreparedStatement prep;
 
     protected SQLDataSource(MappedTable table, List<String> references) {
         this.table = table;
@@ -56,34 +57,76 @@ protected SQLDataSource(MappedTable table, List<String> references) {
         this.references = references;
     }
 
+    /**
+     * Query the records overlapping the given range.  Each query gets its own statement
+     * on a pooled connection, so several tracks can fetch from the same database at once,
+     * and the rows are streamed rather than buffered by the driver.  The caller must pass
+     * the result set to <code>closeQuery</code> once it's done with it.
+     */
     public ResultSet executeQuery(String chrom, int start, int end) throws SQLException {
+        String tableName = table.name;
+        String where = "";
         if (columns.chrom != null) {
             // Normal track, where all the data is in one table.
-            if (prep == null) {
-                prep = table.database.prepareStatement("SELECT * FROM %s WHERE %s = ? AND ((%s >= ? AND %s <= ?) OR (%s >= ? AND %s <= ?) OR (%s < ? AND %s > ?)) ORDER BY %s", table.name, columns.chrom,
-                columns.start, columns.start, columns.end, columns.end, columns.start, columns.end, columns.start);
-            }
-            prep.setString(1, chrom);
-            prep.setInt(2, start);
-            prep.setInt(3, end);
-            prep.setInt(4, start);
-            prep.setInt(5, end);
-            prep.setInt(6, start);
-            prep.setInt(7, end);
+            where = String.format("%s = ? AND ", columns.chrom);
         } else {
             // For some UCSC tracks, the data for each chromosome is in a separate table (e.g. chr1_rmsk, chr2_rmsk,...).
-            if (prep == null) {
-                prep = table.database.prepareStatement("SELECT * FROM %s WHERE ((%s >= ? AND %s <= ?) OR (%s >= ? AND %s <= ?) OR (%s < ? AND %s > ?)) ORDER BY %s",
-                       chrom + "_" + table.trackName, columns.start, columns.start, columns.end, columns.end, columns.start, columns.end, columns.start);
+            tableName = chrom + "_" + table.trackName;
+        }
+
+        // Most UCSC tables have an indexed bin column.  Restricting the query to the bins
+        // overlapping our range lets the index do the work instead of scanning the chromosome.
+        String bin = table.getBinColumn();
+        if (bin != null) {
+            where += String.format("%s IN (%s) AND ", bin, UCSCBins.getOverlappingBinList(start - 1, end + 1));
+        }
+        where += String.format("%s >= ? AND %s <= ?", columns.end, columns.start);
+
+        Connection conn = table.database.acquireConnection();
+        PreparedStatement prep = null;
+        try {
+            prep = table.database.prepareStreamingStatement(conn, "SELECT %s FROM %s WHERE %s ORDER BY %s", getProjection(), tableName, where, columns.start);
+            int i = 1;
+            if (columns.chrom != null) {
+                prep.setString(i++, chrom);
+            }
+            prep.setInt(i++, start);
+            prep.setInt(i++, end);
+            return prep.executeQuery();
+        } catch (SQLException x) {
+            if (prep != null) {
+                prep.close();
             }
-            prep.setInt(1, start);
-            prep.setInt(2, end);
-            prep.setInt(3, start);
-            prep.setInt(4, end);
-            prep.setInt(5, start);
-            prep.setInt(6, end);
+            table.database.releaseConnection(conn);
+            throw x;
+        }
+    }
+
+    /**
+     * Columns to be selected by <code>executeQuery</code>.  By default, just the ones
+     * named by the mapping.
+     */
+    protected String getProjection() {
+        return columns.getProjection();
+    }
+
+    /**
+     * Close a result set returned by <code>executeQuery</code>, along with its statement,
+     * and return the connection to the pool.
+     */
+    protected void closeQuery(ResultSet rs) {
+        try {
+            Statement st = rs.getStatement();
+            Connection conn = st.getConnection();
+            try {
+                rs.close();
+                st.close();
+            } finally {
+                table.database.releaseConnection(conn);
+            }
+        } catch (SQLException x) {
+            LOG.warn("Unable to close query.", x);
         }
-        return prep.executeQuery();
     }
 
     @Override
@@ -0,0 +1,99 @@
+/**
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package savant.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Implementation of the UCSC binning scheme.  Most UCSC positional tables carry an
+ * indexed <code>bin</code> column, in which each feature is assigned to the smallest
+ * bin which fully contains it.  Restricting a query to the bins which overlap the
+ * window lets MySQL use the index instead of scanning the whole chromosome.
+ *
+ * See Kent et al., "The Human Genome Browser at UCSC", Genome Research 2002.
+ */
+public final class UCSCBins {
+    /** Bin offsets for each level of the standard scheme, from 128kb bins up to the single 512Mb bin. */
+    private static final int[] BIN_OFFSETS = { 512 + 64 + 8 + 1, 64 + 8 + 1, 8 + 1, 1, 0 };
+
+    /** Bin offsets for the extended scheme, used for coordinates beyond 512Mb. */
+    private static final int[] BIN_OFFSETS_EXTENDED = { 4096 + 512 + 64 + 8 + 1, 512 + 64 + 8 + 1, 64 + 8 + 1, 8 + 1, 1, 0 };
+
+    /** Extended bins are numbered starting after the last bin of the standard scheme. */
+    private static final int BIN_OFFSET_OLD_TO_EXTENDED = 4681;
+
+    private static final int BIN_FIRST_SHIFT = 17;
+    private static final int BIN_NEXT_SHIFT = 3;
+    private static final int STANDARD_MAX_END = 1 << 29;
+
+    private UCSCBins() {
+    }
+
+    /**
+     * Get the bins which may contain features overlapping the given range.  Features
+     * which end before 512Mb use the standard scheme, so for ranges which fit within it
+     * we only need the standard bins.
+     *
+     * @param start zero-based start of the range (inclusive)
+     * @param end zero-based end of the range (exclusive)
+     * @return list of bin numbers
+     */
+    public static List<Integer> getOverlappingBins(int start, int end) {
+        List<Integer> result = new ArrayList<Integer>();
+        start = Math.max(start, 0);
+        end = Math.max(end, start + 1);
+        if (start < STANDARD_MAX_END) {
+            addBins(result, BIN_OFFSETS, 0, start, Math.min(end, STANDARD_MAX_END));
+        }
+        if (end > STANDARD_MAX_END) {
+            // Features which extend beyond 512Mb are binned using the extended scheme.
+            addBins(result, BIN_OFFSETS_EXTENDED, BIN_OFFSET_OLD_TO_EXTENDED, start, end);
+        }
+        return result;
+    }
+
+    /**
+     * Get the overlapping bins as a comma-separated list suitable for an SQL <code>IN</code> clause.
+     */
+    public static String getOverlappingBinList(int start, int end) {
+        StringBuilder result = new StringBuilder();
+        for (Integer bin: getOverlappingBins(start, end)) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(bin);
+        }
+        return result.toString();
+    }
+
+    private static void addBins(List<Integer> result, int[] offsets, int base, int start, int end) {
+        int startBin = start >> BIN_FIRST_SHIFT;
+        int endBin = (end - 1) >> BIN_FIRST_SHIFT;
+        for (int offset: offsets) {
+            for (int b = startBin; b <= endBin; b++) {
+                result.add(base + offset + b);
+            }
+            startBin >>= BIN_NEXT_SHIFT;
+            endBin >>= BIN_NEXT_SHIFT;
+        }
+    }
+}
@@ -19,12 +19,12 @@
  */
 package savant.sql;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.URI;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import net.sf.samtools.util.SeekableStream;
 
@@ -33,6 +33,7 @@
 import savant.api.data.DataFormat;
 import savant.api.util.Resolution;
 import savant.data.types.GenericContinuousRecord;
+import savant.data.types.SummaryContinuousRecord;
 import savant.util.NetworkUtils;
 
 
@@ -41,81 +42,245 @@
  * data values are stored in an external Wib (binned Wig) file.  This is very idiosyncratic
  * to UCSC, so the class might more properly belong in the savant.ucsc plugin.
  *
+ * At high resolution, the Wib byte ranges for all the rows in the window are sorted
+ * and merged so that they can be fetched with a few large reads, which go through a
+ * shared block cache.  At low resolution, we don't touch the Wib file at all; instead
+ * we merge the summary statistics which UCSC stores with each row into power-of-two
+ * buckets, so that there is roughly one record per notional screen pixel.
+ *
  * @author tarkvara
  */
 public class WigSQLDataSource extends SQLDataSource<GenericContinuousRecord> {
+    /** Size of the blocks in which Wib data is cached. */
+    private static final int BLOCK_SIZE = 65536;
+
+    /** Maximum number of Wib blocks retained in the cache (16MB). */
+    private static final int MAX_CACHED_BLOCKS = 256;
+
+    /** Wib ranges separated by no more than this many bytes are fetched with a single read. */
+    private static final int MAX_GAP = 4096;
+
+    private static final int NOTIONAL_SCREEN_WIDTH = 2000;
+
+    /** UCSC summary columns: number of valid data points in the row, and their sum. */
+    private static final String VALID_COUNT = "validCount";
+    private static final String SUM_DATA = "sumData";
+
+    /** Wib blocks, keyed by URI and block number.  Shared by all Wig tracks. */
+    private static final Map<String, byte[]> BLOCK_CACHE = new LinkedHashMap<String, byte[]>(MAX_CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_CACHED_BLOCKS;
+        }
+    };
+
     private final String ucscDownloadURL;
 
+    /** Names of the summary columns, or null if the table doesn't have them. */
+    private String validCountColumn, sumDataColumn;
+
     WigSQLDataSource(MappedTable table, List<String> references, String ucsc) throws SQLException {
         super(table, references);
         ucscDownloadURL = ucsc;
+        for (Column c: table.getColumns()) {
+            if (c.name.equalsIgnoreCase(VALID_COUNT)) {
+                validCountColumn = c.name;
+            } else if (c.name.equalsIgnoreCase(SUM_DATA)) {
+                sumDataColumn = c.name;
+            }
+        }
     }
 
     @Override
-    public List<GenericContinuousRecord> getRecords(String reference, RangeAdapter range, Resolution resolution, RecordFilterAdapter filt) throws IOException {
-        if (resolution != Resolution.HIGH) {
-            throw new IOException("Zoom in to see data");
+    public List<GenericContinuousRecord> getRecords(String reference, RangeAdapter range, Resolution resolution, RecordFilterAdapter filt) throws IOException, InterruptedException {
+        try {
+            if (resolution == Resolution.HIGH) {
+                return getHighResolutionRecords(reference, range, filt);
+            } else {
+                return getSummaryRecords(reference, range, filt);
+            }
+        } catch (SQLException sqlx) {
+            LOG.error(sqlx);
+            throw new IOException(sqlx);
         }
-        // TODO: This is wrong.  We should be stuffing in NaNs, not zeroes.
-        List<GenericContinuousRecord> result = new ArrayList<GenericContinuousRecord>();
+    }
+
+    /**
+     * Fetch the actual data values from the Wib file, decoding them into a value array
+     * which covers the range.  Positions with no data are NaN.
+     */
+    private List<GenericContinuousRecord> getHighResolutionRecords(String reference, RangeAdapter range, RecordFilterAdapter filt) throws SQLException, IOException, InterruptedException {
+        int from = range.getFrom();
+        int to = range.getTo();
+
+        // Read all the rows first, so that the connection is released before we go off to fetch Wib data.
+        List<WibRow> rows = new ArrayList<WibRow>();
+        ResultSet rs = executeQuery(reference, from, to);
         try {
-            int nextPos = range.getFrom();
-            ResultSet rs = executeQuery(reference, range.getFrom(), range.getTo());
-            URI wibURI = null;
-            SeekableStream wibStream = null;
             while (rs.next()) {
-                int start = rs.getInt(columns.start) + 1;
-                if (nextPos < start) {
-                    result.add(GenericContinuousRecord.valueOf(reference, nextPos, Float.NaN));
-                    nextPos = start;
-                }
+                rows.add(new WibRow(rs.getInt(columns.start) + 1,
+                                    columns.span != null ? rs.getInt(columns.span) : 1,
+                                    rs.getInt(columns.count),
+                                    rs.getInt(columns.offset),
+                                    rs.getString(columns.file),
+                                    rs.getFloat(columns.lowerLimit),
+                                    rs.getFloat(columns.dataRange)));
+            }
+        } finally {
+            closeQuery(rs);
+        }
+
+        float[] values = new float[to - from + 1];
+        Arrays.fill(values, Float.NaN);
+
+        // Group the rows by file, and sort each group by offset so that adjacent byte ranges can be merged.
+        Map<String, List<WibRow>> byFile = new HashMap<String, List<WibRow>>();
+        for (WibRow row: rows) {
+            List<WibRow> fileRows = byFile.get(row.file);
+            if (fileRows == null) {
+                fileRows = new ArrayList<WibRow>();
+                byFile.put(row.file, fileRows);
+            }
+            fileRows.add(row);
+        }
+        for (Map.Entry<String, List<WibRow>> entry: byFile.entrySet()) {
+            URI wibURI = URI.create(ucscDownloadURL + entry.getKey());
+            List<WibRow> fileRows = entry.getValue();
+            Collections.sort(fileRows);
 
-                int span = columns.span != null ? rs.getInt(columns.span) : 1;
-                int count = rs.getInt(columns.count);
-                int offset = rs.getInt(columns.offset);
-                String file = rs.getString(columns.file);
-                float lowerLimit = rs.getFloat(columns.lowerLimit);
-                float dataRange = rs.getFloat(columns.dataRange);
-
-                // If the URI has changed, open a new stream.
-                URI newWibURI = URI.create(ucscDownloadURL + file);
-                if (!newWibURI.equals(wibURI)) {
-                    if (wibStream != null) {
-                        wibStream.close();
+            WibReader reader = new WibReader(wibURI);
+            try {
+                int i = 0;
+                while (i < fileRows.size()) {
+                    // Extend the run for as long as the next row's bytes are close to the current run.
+                    long runStart = fileRows.get(i).offset;
+                    long runEnd = runStart + fileRows.get(i).count;
+                    int j = i + 1;
+                    while (j < fileRows.size() && fileRows.get(j).offset <= runEnd + MAX_GAP) {
+                        runEnd = Math.max(runEnd, fileRows.get(j).offset + fileRows.get(j).count);
+                        j++;
+                    }
+                    byte[] buf = reader.read(runStart, (int)(runEnd - runStart));
+                    for (int k = i; k < j; k++) {
+                        fileRows.get(k).decode(buf, (int)(fileRows.get(k).offset - runStart), values, from);
+                    }
+                    i = j;
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
                     }
-                    wibURI = newWibURI;
-                    wibStream = NetworkUtils.getSeekableStreamForURI(wibURI);
                 }
+            } finally {
+                reader.close();
+            }
+        }
 
-                wibStream.seek(offset);
-                byte[] buf = new byte[count];
-                wibStream.read(buf);
-
-                int p = start;
-                for (int i = 0; i < count && nextPos < range.getTo(); i++) {
-                    for (int j = 0; j < span; j++) {
-                        if (p >= nextPos) {
-                            float value = Float.NaN;
-                            if (buf[i] >= 0) {
-                                value = lowerLimit + dataRange * buf[i] / 127.0F;
-                            }
-                            GenericContinuousRecord rec = GenericContinuousRecord.valueOf(reference, nextPos++, value);
-                            if (filt == null || filt.accept(rec)) {
-                                result.add(rec);
-                            }
-                        }
-                        p++;
+        List<GenericContinuousRecord> result = new ArrayList<GenericContinuousRecord>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            GenericContinuousRecord rec = GenericContinuousRecord.valueOf(reference, from + i, values[i]);
+            if (filt == null || filt.accept(rec)) {
+                result.add(rec);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * At low resolution, the rows of the table are merged into buckets, each of which
+     * becomes a single summary record.  A row's lowerLimit and dataRange give us its minimum
+     * and maximum, and (if the table has them) validCount and sumData give us its mean.  Rows
+     * which straddle a bucket boundary contribute to each bucket in proportion to their overlap.
+     */
+    private List<GenericContinuousRecord> getSummaryRecords(String reference, RangeAdapter range, RecordFilterAdapter filt) throws SQLException, InterruptedException {
+        int step = getBucketWidth(range.getLength());
+        int firstBucket = range.getFrom() / step;
+        int numBuckets = range.getTo() / step - firstBucket + 1;
+        float[] min = new float[numBuckets];
+        float[] max = new float[numBuckets];
+        double[] sum = new double[numBuckets];
+        double[] weight = new double[numBuckets];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+
+        ResultSet rs = executeQuery(reference, range.getFrom(), range.getTo());
+        try {
+            int startCol = rs.findColumn(columns.start);
+            int endCol = rs.findColumn(columns.end);
+            int lowerLimitCol = rs.findColumn(columns.lowerLimit);
+            int dataRangeCol = rs.findColumn(columns.dataRange);
+            int validCountCol = validCountColumn != null && sumDataColumn != null ? rs.findColumn(validCountColumn) : -1;
+            int sumDataCol = validCountCol > 0 ? rs.findColumn(sumDataColumn) : -1;
+            int n = 0;
+            while (rs.next()) {
+                // Rows cover the 1-based positions [rowStart, rowEnd).
+                int rowStart = rs.getInt(startCol) + 1;
+                int rowEnd = Math.max(rs.getInt(endCol) + 1, rowStart + 1);
+                float rowMin = rs.getFloat(lowerLimitCol);
+                float rowMax = rowMin + rs.getFloat(dataRangeCol);
+
+                // Weighted contribution of the whole row to the mean.
+                double rowSum, rowWeight;
+                if (validCountCol > 0) {
+                    rowWeight = rs.getInt(validCountCol);
+                    rowSum = rs.getDouble(sumDataCol);
+                } else {
+                    rowWeight = rowEnd - rowStart;
+                    rowSum = (rowMin + rowMax) * 0.5 * rowWeight;
+                }
+                if (rowWeight > 0) {
+                    int b0 = Math.max(rowStart / step - firstBucket, 0);
+                    int b1 = Math.min((rowEnd - 1) / step - firstBucket, numBuckets - 1);
+                    for (int b = b0; b <= b1; b++) {
+                        int bucketStart = (firstBucket + b) * step;
+                        double fraction = (double)(Math.min(rowEnd, bucketStart + step) - Math.max(rowStart, bucketStart)) / (rowEnd - rowStart);
+                        if (rowMin < min[b]) min[b] = rowMin;
+                        if (rowMax > max[b]) max[b] = rowMax;
+                        sum[b] += rowSum * fraction;
+                        weight[b] += rowWeight * fraction;
                     }
                 }
+                if ((++n & 0xFFFF) == 0 && Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            closeQuery(rs);
+        }
+
+        List<GenericContinuousRecord> result = new ArrayList<GenericContinuousRecord>(numBuckets);
+        for (int b = 0; b < numBuckets; b++) {
+            GenericContinuousRecord rec;
+            if (weight[b] > 0.0) {
+                rec = SummaryContinuousRecord.valueOf(reference, Math.max((firstBucket + b) * step, range.getFrom()), min[b], (float)(sum[b] / weight[b]), max[b]);
+            } else {
+                rec = SummaryContinuousRecord.valueOf(reference, Math.max((firstBucket + b) * step, range.getFrom()), Float.NaN, Float.NaN, Float.NaN);
+            }
+            if (filt == null || filt.accept(rec)) {
+                result.add(rec);
             }
-            rs.close();
-        } catch (SQLException sqlx) {
-            LOG.error(sqlx);
-            throw new IOException(sqlx);
         }
         return result;
     }
 
+    /**
+     * Width (in bases) of each bucket for the given range.  As with TDF files, we use powers
+     * of two so that the bucket grid stays put as the user pans.
+     */
+    private static int getBucketWidth(int rangeLen) {
+        int step = 1;
+        while (step < rangeLen / NOTIONAL_SCREEN_WIDTH) {
+            step <<= 1;
+        }
+        return step;
+    }
+
+    @Override
+    protected String getProjection() {
+        String result = super.getProjection();
+        if (validCountColumn != null && sumDataColumn != null) {
+            result += "," + validCountColumn + "," + sumDataColumn;
+        }
+        return result;
+    }
 
     @Override
     public DataFormat getDataFormat() {
@@ -126,4 +291,149 @@ public DataFormat getDataFormat() {
     public String[] getColumnNames() {
         return GenericContinuousRecord.COLUMN_NAMES;
     }
+
+    /**
+     * The fields from a single row of a wiggle table.
+     */
+    private static class WibRow implements Comparable<WibRow> {
+        final int start;
+        final int span;
+        final int count;
+        final long offset;
+        final String file;
+        final float lowerLimit;
+        final float dataRange;
+
+        WibRow(int start, int span, int count, long offset, String file, float lowerLimit, float dataRange) {
+            this.start = start;
+            this.span = span;
+            this.count = count;
+            this.offset = offset;
+            this.file = file;
+            this.lowerLimit = lowerLimit;
+            this.dataRange = dataRange;
+        }
+
+        /**
+         * Decode this row's bytes into the value array.  Bytes with the high bit set indicate no data.
+         */
+        void decode(byte[] buf, int bufOffset, float[] values, int from) {
+            int p = start;
+            for (int i = 0; i < count; i++) {
+                byte b = buf[bufOffset + i];
+                for (int j = 0; j < span; j++, p++) {
+                    int index = p - from;
+                    if (index >= 0 && index < values.length && b >= 0) {
+                        values[index] = lowerLimit + dataRange * b / 127.0F;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(WibRow t) {
+            return offset < t.offset ? -1 : (offset > t.offset ? 1 : 0);
+        }
+    }
+
+    /**
+     * Reads from a Wib file through the block cache.  The stream is only opened if
+     * we have a cache miss.
+     */
+    private static class WibReader {
+        private final URI uri;
+        private SeekableStream stream;
+
+        WibReader(URI uri) {
+            this.uri = uri;
+        }
+
+        byte[] read(long pos, int len) throws IOException {
+            byte[] result = new byte[len];
+            long firstBlock = pos / BLOCK_SIZE;
+            long lastBlock = (pos + len - 1) / BLOCK_SIZE;
+
+            // Gather whatever is already cached, noting the span of blocks which are missing.
+            byte[][] blocks = new byte[(int)(lastBlock - firstBlock + 1)][];
+            long firstMissing = -1, lastMissing = -1;
+            synchronized (BLOCK_CACHE) {
+                for (long b = firstBlock; b <= lastBlock; b++) {
+                    blocks[(int)(b - firstBlock)] = BLOCK_CACHE.get(uri + "#" + b);
+                    if (blocks[(int)(b - firstBlock)] == null) {
+                        if (firstMissing < 0) {
+                            firstMissing = b;
+                        }
+                        lastMissing = b;
+                    }
+                }
+            }
+
+            if (firstMissing >= 0) {
+                // Fetch all the missing blocks with a single read.
+                if (stream == null) {
+                    stream = NetworkUtils.getSeekableStreamForURI(uri);
+                }
+                long readStart = firstMissing * BLOCK_SIZE;
+                long readEnd = (lastMissing + 1) * BLOCK_SIZE;
+                if (stream.length() > 0 && readEnd > stream.length()) {
+                    readEnd = stream.length();
+                }
+                byte[] buf = new byte[(int)(readEnd - readStart)];
+                stream.seek(readStart);
+                int n = readFully(buf);
+                if (n < buf.length) {
+                    // Last block of the file.
+                    buf = Arrays.copyOf(buf, n);
+                }
+                synchronized (BLOCK_CACHE) {
+                    for (long b = firstMissing; b <= lastMissing; b++) {
+                        int blockStart = (int)((b - firstMissing) * BLOCK_SIZE);
+                        if (blockStart >= buf.length) {
+                            break;
+                        }
+                        byte[] block = Arrays.copyOfRange(buf, blockStart, Math.min(blockStart + BLOCK_SIZE, buf.length));
+                        blocks[(int)(b - firstBlock)] = block;
+                        BLOCK_CACHE.put(uri + "#" + b, block);
+                    }
+                }
+            }
+
+            // Assemble the requested bytes from the blocks.
+            int copied = 0;
+            for (long b = firstBlock; b <= lastBlock; b++) {
+                byte[] block = blocks[(int)(b - firstBlock)];
+                int blockOffset = b == firstBlock ? (int)(pos - firstBlock * BLOCK_SIZE) : 0;
+                int n = block != null ? Math.min(block.length - blockOffset, len - copied) : 0;
+                if (n <= 0) {
+                    throw new EOFException("Unexpected end of " + uri);
+                }
+                System.arraycopy(block, blockOffset, result, copied, n);
+                copied += n;
+            }
+            return result;
+        }
+
+        /**
+         * Fill the buffer, stopping early only if we hit the end of the file.
+         * @return the number of bytes read
+         */
+        private int readFully(byte[] buf) throws IOException {
+            int n = 0;
+            while (n < buf.length) {
+                int count = stream.read(buf, n, buf.length - n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+            return n;
+        }
+
+        void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
 }